@@ -0,0 +1,79 @@
+package com.example.consoledownloader.downloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a downloaded stream to a file: the JDK copy with the size of the file afterwards against the pooled
+ * buffer written through a channel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+    @Param({ "67108864" })
+    private int fileSize;
+
+    @Param({ "16384", "262144", "1048576" })
+    private int bufferSize;
+
+    private byte[] content;
+    private Path rootDirPath;
+    private Path path;
+    private BufferPool buffers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+
+        rootDirPath = Files.createTempDirectory("copy-benchmark");
+        path = rootDirPath.resolve("target");
+        buffers = new BufferPool(bufferSize, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(rootDirPath);
+    }
+
+    @Benchmark
+    public long filesCopy() throws IOException {
+        Files.copy(new ByteArrayInputStream(content), path, StandardCopyOption.REPLACE_EXISTING);
+
+        return Files.size(path);
+    }
+
+    @Benchmark
+    public long pooledChannelCopy() throws IOException {
+        Files.deleteIfExists(path);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            return buffers.copy(new ByteArrayInputStream(content), channel);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads the whole link file from memory, so the numbers show the cost of the pipeline itself:
+ * reading the links, scheduling, writing the files and reporting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DownloaderBenchmark {
+    private static final String LINK_PREFIX = "http://example.com/file";
+
+    @Param({ "1000" })
+    private int linkCount;
+
+    @Param({ "16384" })
+    private int fileSize;
+
+    @Param({ "1", "8" })
+    private int threads;
+
+    private Path rootDirPath;
+    private Options options;
+    private Downloader downloader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+
+        rootDirPath = Files.createTempDirectory("downloader-benchmark");
+        Path linksFilePath = rootDirPath.resolve("links");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < linkCount; i++) {
+            lines.add(String.format("%s%d file%d", LINK_PREFIX, i, i));
+        }
+        Files.write(linksFilePath, lines);
+
+        options = new Options.Builder(linksFilePath.toString())
+            .outputDir(rootDirPath.resolve("download").toString())
+            .threads(threads)
+            .build();
+        downloader = new Downloader(link -> new ByteArrayInputStream(content), DownloadListener.NONE, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(rootDirPath);
+    }
+
+    @Benchmark
+    public long download() {
+        return downloader.download(options).getByteCount();
+    }
+}
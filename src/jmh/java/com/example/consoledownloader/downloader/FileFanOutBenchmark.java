@@ -0,0 +1,101 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the duplicates of a downloaded file, the path which serves the repeated links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FileFanOutBenchmark {
+    @Param({ "16777216" })
+    private int fileSize;
+
+    @Param({ "4" })
+    private int copyCount;
+
+    @Param({ "COPY", "LINK" })
+    private Options.DuplicateMode mode;
+
+    @Param({ "1", "4" })
+    private int threads;
+
+    private Path rootDirPath;
+    private Path sourcePath;
+    private List<String> dests;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+
+        rootDirPath = Files.createTempDirectory("fanout-benchmark");
+        sourcePath = rootDirPath.resolve("source");
+        Files.write(sourcePath, content);
+
+        dests = new ArrayList<>();
+        for (int i = 0; i < copyCount; i++) {
+            dests.add("copy" + i);
+        }
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteCopies() throws IOException {
+        for (String dest : dests) {
+            Files.deleteIfExists(rootDirPath.resolve(dest));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdown();
+        BenchmarkFiles.deleteRecursively(rootDirPath);
+    }
+
+    @Benchmark
+    public int duplicate() throws IOException {
+        AtomicInteger failures = new AtomicInteger();
+        new FileFanOut(sourcePath, dests, rootDirPath::resolve, mode)
+            .run(executor, threads - 1, (dest, e) -> {
+                if (e != null) {
+                    failures.incrementAndGet();
+                }
+            });
+
+        if (failures.get() > 0) {
+            throw new IOException(String.format("%d copies failed", failures.get()));
+        }
+
+        return dests.size();
+    }
+}
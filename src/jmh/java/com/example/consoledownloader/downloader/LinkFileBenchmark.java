@@ -0,0 +1,96 @@
+package com.example.consoledownloader.downloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a large link file the way {@link Downloader} does: every line is parsed and grouped by its link.
+ * Every tenth line repeats one of the earlier links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkFileBenchmark {
+    private static final int DUPLICATE_EVERY = 10;
+
+    @Param({ "1000000" })
+    private int lineCount;
+
+    private Path linksFilePath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        linksFilePath = Files.createTempFile("links-benchmark", ".txt");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(linksFilePath, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lineCount; i++) {
+                int linkNumber = i % DUPLICATE_EVERY == DUPLICATE_EVERY - 1 ? random.nextInt(i) : i;
+                writer.write(String.format("http://example.com/files/%d/archive.tar.gz file%d.tar.gz", linkNumber, i));
+                writer.newLine();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(linksFilePath);
+    }
+
+    @Benchmark
+    public int readLines() throws IOException {
+        int count = 0;
+
+        try (LinkFileReader reader = new LinkFileReader(linksFilePath)) {
+            while (reader.next() != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Benchmark
+    public int readAndGroupLines() throws IOException {
+        int groupCount = 0;
+
+        try (LinkFileReader reader = new LinkFileReader(linksFilePath)) {
+            LinkDeduplicator deduplicator = new LinkDeduplicator(reader);
+            LinkDescription description;
+
+            while ((description = reader.next()) != null) {
+                LinkDeduplicator.Resolution resolution = deduplicator.resolve(description);
+
+                if (resolution.group != null) {
+                    groupCount++;
+                    resolution.group.seal(true);
+                    deduplicator.complete(resolution.group, true);
+                }
+            }
+        }
+
+        return groupCount;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads real HTTP responses from the loopback server whose connections are limited like the ones
+ * of a remote server, so the segmented download can be compared with the single stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackDownloadBenchmark {
+    @Param({ "8388608" })
+    private int fileSize;
+
+    @Param({ "1", "4" })
+    private int fileCount;
+
+    @Param({ "4" })
+    private int threads;
+
+    @Param({ "33554432" })
+    private long connectionBandwidth;
+
+    @Param({ "2" })
+    private long latencyMillis;
+
+    @Param({ "0", "1048576" })
+    private long segmentSize;
+
+    private LoopbackHttpServer server;
+    private Path rootDirPath;
+    private Options options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LoopbackHttpServer.Builder()
+            .file("/file", fileSize)
+            .bandwidth(connectionBandwidth)
+            .latency(latencyMillis)
+            .start();
+
+        rootDirPath = Files.createTempDirectory("loopback-benchmark");
+        Path linksFilePath = rootDirPath.resolve("links");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            lines.add(String.format("%s?n=%d file%d", server.url("/file"), i, i));
+        }
+        Files.write(linksFilePath, lines);
+
+        options = new Options.Builder(linksFilePath.toString())
+            .outputDir(rootDirPath.resolve("download").toString())
+            .threads(threads)
+            .segmentSize(segmentSize)
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+        BenchmarkFiles.deleteRecursively(rootDirPath);
+    }
+
+    @Benchmark
+    public long download() {
+        return new Downloader(new DefaultLinkDownloader(), DownloadListener.NONE, false)
+            .download(options)
+            .getByteCount();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.ArgsParserJCommander;
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import com.example.consoledownloader.utils.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads many small files with a long latency, where the time goes to waiting in the blocked threads,
+ * from the fixed pool of platform threads and from the virtual threads with the same concurrency limit.
+ * The virtual trials fail in the setup when the JVM is older than Java 21.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadKindBenchmark {
+    @Param({ "platform", "virtual" })
+    private String threadKind;
+
+    @Param({ "16", "256" })
+    private int threads;
+
+    @Param({ "1024" })
+    private int fileCount;
+
+    @Param({ "16384" })
+    private int fileSize;
+
+    @Param({ "20" })
+    private long latencyMillis;
+
+    private LoopbackHttpServer server;
+    private Path rootDirPath;
+    private Options options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Options.ThreadKind kind = new ArgsParserJCommander.ThreadKindConverter().convert(threadKind);
+        if (kind == Options.ThreadKind.VIRTUAL && !VirtualThreads.isSupported()) {
+            throw new IllegalStateException("The JVM has no virtual threads");
+        }
+
+        server = new LoopbackHttpServer.Builder()
+            .file("/file", fileSize)
+            .latency(latencyMillis)
+            .start();
+
+        rootDirPath = Files.createTempDirectory("thread-kind-benchmark");
+        Path linksFilePath = rootDirPath.resolve("links");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            lines.add(String.format("%s?n=%d file%d", server.url("/file"), i, i));
+        }
+        Files.write(linksFilePath, lines);
+
+        options = new Options.Builder(linksFilePath.toString())
+            .outputDir(rootDirPath.resolve("download").toString())
+            .threads(threads)
+            .threadKind(kind)
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+            BenchmarkFiles.deleteRecursively(rootDirPath);
+        }
+    }
+
+    @Benchmark
+    public long download() {
+        return new Downloader(new DefaultLinkDownloader(), DownloadListener.NONE, false)
+            .download(options)
+            .getByteCount();
+    }
+}
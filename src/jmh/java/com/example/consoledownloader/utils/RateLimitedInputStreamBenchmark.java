@@ -0,0 +1,86 @@
+package com.example.consoledownloader.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead of the speed limit on reads which never wait: the limits are far above the memory bandwidth,
+ * so only the charging is measured. The threads share the global bucket like the download tasks do.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(4)
+public class RateLimitedInputStreamBenchmark {
+    private static final int CONTENT_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final long UNREACHABLE_LIMIT = Long.MAX_VALUE / 4;
+
+    @State(Scope.Benchmark)
+    public static class SharedBuckets {
+        final BandwidthBucket global = new BandwidthBucket(UNREACHABLE_LIMIT);
+        final BandwidthBucket host = new BandwidthBucket(UNREACHABLE_LIMIT);
+    }
+
+    @State(Scope.Thread)
+    public static class Stream {
+        final byte[] content = new byte[CONTENT_SIZE];
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        List<BandwidthBucket> globalOnly;
+        List<BandwidthBucket> hierarchy;
+
+        @Setup(Level.Trial)
+        public void setUp(SharedBuckets buckets) {
+            globalOnly = Collections.singletonList(buckets.global);
+            hierarchy = Arrays.asList(buckets.global, buckets.host, new BandwidthBucket(UNREACHABLE_LIMIT));
+        }
+    }
+
+    @Benchmark
+    public long unlimited(Stream stream) throws IOException {
+        return drain(new ByteArrayInputStream(stream.content), stream.buffer);
+    }
+
+    @Benchmark
+    public long globalLimit(Stream stream) throws IOException {
+        return drain(new RateLimitedInputStream(new ByteArrayInputStream(stream.content), stream.globalOnly),
+            stream.buffer);
+    }
+
+    @Benchmark
+    public long globalHostAndFileLimits(Stream stream) throws IOException {
+        return drain(new RateLimitedInputStream(new ByteArrayInputStream(stream.content), stream.hierarchy),
+            stream.buffer);
+    }
+
+    private static long drain(InputStream input, byte[] buffer) throws IOException {
+        long total = 0;
+        int read;
+
+        while ((read = input.read(buffer)) != -1) {
+            total += read;
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.consoledownloader;
+
+import com.example.consoledownloader.downloader.DownloadListener;
+import com.example.consoledownloader.downloader.DownloaderLogRecord;
+import com.example.consoledownloader.utils.ByteSizeFormatter;
+import com.example.consoledownloader.utils.ElapsedTimeFormatter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Shows the speed, the counts and the ETA of the run while it goes. The download threads only add to the lock-free
+ * counters, the dashboard thread reads them a few times per second and draws them. On a terminal the dashboard
+ * is redrawn in place below the log, otherwise a status line is printed now and then. The listener's lines are
+ * buffered, the dashboard is erased only when there are some and it's drawn again below them at once.
+ * <p>
+ * The speed is the moving average over the last seconds, the ETA takes the average size of the finished files for
+ * the links which have been read so far.
+ */
+public class ConsoleDashboard implements DownloadListener, AutoCloseable {
+    static final long TERMINAL_INTERVAL_MILLIS = 250;
+    static final long LOG_INTERVAL_MILLIS = 10 * 1000;
+    static final int MAX_TRANSFER_LINES = 5;
+    private static final double AVERAGE_SECONDS = 5.0;
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final String ERASE_LINES = "\033[%dF\033[J";
+
+    private final PrintStream out;
+    private final ByteArrayOutputStream logBuffer = new ByteArrayOutputStream();
+    private final PrintStream logOut = new PrintStream(logBuffer, true);
+    private final DownloadListener listener;
+    private final boolean terminal;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Transfer> transfers = new ConcurrentHashMap<>();
+    private final LongAdder byteCount = new LongAdder();
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder startedCount = new LongAdder();
+    private final LongAdder succeededCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder finishedByteCount = new LongAdder();
+    private final ByteSizeFormatter sizeFormatter = new ByteSizeFormatter();
+    private final ElapsedTimeFormatter timeFormatter = new ElapsedTimeFormatter();
+    private final long startNanos;
+    private ScheduledExecutorService scheduler;
+    private long lastNanos;
+    private long lastByteCount;
+    private double averageSpeed;
+    private List<String> drawnLines = Collections.emptyList();
+    private int drawnLineCount;
+
+    /**
+     * @param listenerFactory makes the listener which gets the events as well, it prints to the given stream
+     * @param terminal        whether the output is a terminal, where the dashboard is redrawn in place
+     */
+    public ConsoleDashboard(PrintStream out, Function<PrintStream, DownloadListener> listenerFactory,
+                            boolean terminal) {
+        this(out, listenerFactory, terminal, System::nanoTime);
+    }
+
+    ConsoleDashboard(PrintStream out, Function<PrintStream, DownloadListener> listenerFactory, boolean terminal,
+                     LongSupplier nanoClock) {
+        this.out = out;
+        this.listener = listenerFactory.apply(logOut);
+        this.terminal = terminal;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.lastNanos = startNanos;
+    }
+
+    public void start() {
+        long intervalMillis = terminal ? TERMINAL_INTERVAL_MILLIS : LOG_INTERVAL_MILLIS;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "console-dashboard");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the refreshes and erases the dashboard, so the summary of the run follows the log.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        synchronized (this) {
+            erase();
+            printLog();
+        }
+    }
+
+    @Override
+    public void onQueued(String link, String dest) {
+        if (transfers.putIfAbsent(link, new Transfer(dest)) == null) {
+            queuedCount.increment();
+        }
+        listener.onQueued(link, dest);
+    }
+
+    @Override
+    public void onStart(String link, String dest) {
+        Transfer transfer = transfers.get(link);
+        if (transfer != null && transfer.startNanos == 0) {
+            transfer.startNanos = nanoClock.getAsLong();
+            startedCount.increment();
+        }
+        listener.onStart(link, dest);
+    }
+
+    @Override
+    public void onProgress(String link, long byteCount) {
+        this.byteCount.add(byteCount);
+
+        Transfer transfer = transfers.get(link);
+        if (transfer != null) {
+            transfer.byteCount.add(byteCount);
+        }
+        listener.onProgress(link, byteCount);
+    }
+
+    @Override
+    public void onSuccess(String link, long byteCount, DownloaderLogRecord logRecord) {
+        if (finish(link)) {
+            succeededCount.increment();
+            finishedByteCount.add(byteCount);
+        }
+
+        synchronized (this) {
+            listener.onSuccess(link, byteCount, logRecord);
+            printLog();
+        }
+    }
+
+    @Override
+    public void onFailure(String link, DownloaderLogRecord logRecord) {
+        if (finish(link)) {
+            failedCount.increment();
+        }
+
+        synchronized (this) {
+            listener.onFailure(link, logRecord);
+            printLog();
+        }
+    }
+
+    @Override
+    public synchronized void onCopy(String link, DownloaderLogRecord logRecord) {
+        listener.onCopy(link, logRecord);
+        printLog();
+    }
+
+    @Override
+    public synchronized void onSystemError(DownloaderLogRecord logRecord) {
+        listener.onSystemError(logRecord);
+        printLog();
+    }
+
+    synchronized void refresh() {
+        printLog();
+        drawnLines = render(nanoClock.getAsLong());
+
+        if (terminal) {
+            erase();
+            draw();
+        } else {
+            out.println(drawnLines.get(0));
+        }
+        out.flush();
+    }
+
+    /**
+     * Samples the counters: the first line is the run, the next ones are the fastest transfers.
+     */
+    synchronized List<String> render(long nowNanos) {
+        double seconds = (nowNanos - lastNanos) / 1e9;
+        long currentByteCount = byteCount.sum();
+        if (seconds > 0) {
+            averageSpeed = average(averageSpeed, (currentByteCount - lastByteCount) / seconds, seconds);
+        }
+        lastNanos = nowNanos;
+        lastByteCount = currentByteCount;
+
+        long started = startedCount.sum();
+        long succeeded = succeededCount.sum();
+        long failed = failedCount.sum();
+        long queued = queuedCount.sum() - started;
+        long active = started - succeeded - failed;
+        double totalSeconds = (nowNanos - startNanos) / 1e9;
+
+        List<Transfer> activeTransfers = new ArrayList<>();
+        for (Transfer transfer : transfers.values()) {
+            if (transfer.startNanos != 0) {
+                transfer.sample(nowNanos, seconds);
+                activeTransfers.add(transfer);
+            }
+        }
+        activeTransfers.sort(Comparator.comparingDouble((Transfer transfer) -> transfer.speed).reversed());
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%s/s, %s/s on average | %s | %d active, %d queued, %d done, %d failed | ETA %s",
+            sizeFormatter.format((long) averageSpeed),
+            sizeFormatter.format(totalSeconds > 0 ? (long) (currentByteCount / totalSeconds) : 0L),
+            sizeFormatter.format(currentByteCount), active, queued, succeeded, failed,
+            formatEta(queued + active, activeTransfers)));
+
+        activeTransfers.stream()
+            .limit(MAX_TRANSFER_LINES)
+            .map(transfer -> formatTransfer(transfer, nowNanos))
+            .forEach(lines::add);
+        if (activeTransfers.size() > MAX_TRANSFER_LINES) {
+            lines.add(String.format("  ... and %d more", activeTransfers.size() - MAX_TRANSFER_LINES));
+        }
+
+        return lines;
+    }
+
+    private boolean finish(String link) {
+        Transfer transfer = transfers.remove(link);
+        if (transfer != null && transfer.startNanos == 0) {
+            startedCount.increment();
+        }
+
+        return transfer != null;
+    }
+
+    private String formatEta(long remainingCount, List<Transfer> activeTransfers) {
+        long finishedCount = succeededCount.sum();
+        if (remainingCount == 0 || finishedCount == 0 || averageSpeed < 1) {
+            return "--";
+        }
+
+        long activeByteCount = activeTransfers.stream().mapToLong(transfer -> transfer.byteCount.sum()).sum();
+        long remainingByteCount = Math.max(0,
+            remainingCount * (finishedByteCount.sum() / finishedCount) - activeByteCount);
+
+        return timeFormatter.format(Duration.ofSeconds((long) (remainingByteCount / averageSpeed)));
+    }
+
+    private String formatTransfer(Transfer transfer, long nowNanos) {
+        long idleNanos = nowNanos - transfer.lastProgressNanos;
+        String speed = idleNanos >= STALL_NANOS
+            ? "stalled for " + timeFormatter.format(Duration.ofNanos(idleNanos))
+            : sizeFormatter.format((long) transfer.speed) + "/s";
+
+        return String.format("  %s  %s  %s", transfer.dest, speed, sizeFormatter.format(transfer.byteCount.sum()));
+    }
+
+    /**
+     * Prints the listener's lines above the dashboard, which is erased and drawn again only if there are some.
+     */
+    private void printLog() {
+        byte[] log;
+        synchronized (logOut) {
+            log = logBuffer.toByteArray();
+            logBuffer.reset();
+        }
+        if (log.length == 0) {
+            return;
+        }
+
+        boolean drawn = drawnLineCount > 0;
+        erase();
+        out.write(log, 0, log.length);
+        if (drawn) {
+            draw();
+        }
+        out.flush();
+    }
+
+    private void draw() {
+        drawnLines.forEach(out::println);
+        drawnLineCount = drawnLines.size();
+    }
+
+    private void erase() {
+        if (drawnLineCount > 0) {
+            out.printf(ERASE_LINES, drawnLineCount);
+            drawnLineCount = 0;
+        }
+    }
+
+    /**
+     * The exponential moving average, the older samples weigh less with time rather than with their number,
+     * so the refresh interval doesn't change it.
+     */
+    private static double average(double average, double sample, double seconds) {
+        double weight = 1 - Math.exp(-seconds / AVERAGE_SECONDS);
+
+        return average + weight * (sample - average);
+    }
+
+    /**
+     * The counter of one link, the download threads add to it, the sampled fields belong to the dashboard thread.
+     */
+    private static class Transfer {
+        final String dest;
+        final LongAdder byteCount = new LongAdder();
+        volatile long startNanos;
+        long lastByteCount;
+        long lastProgressNanos;
+        double speed;
+
+        Transfer(String dest) {
+            this.dest = dest;
+        }
+
+        void sample(long nowNanos, double seconds) {
+            long currentByteCount = byteCount.sum();
+            if (lastProgressNanos == 0 || currentByteCount != lastByteCount) {
+                lastProgressNanos = nowNanos;
+            }
+            if (seconds > 0) {
+                speed = average(speed, (currentByteCount - lastByteCount) / seconds, seconds);
+            }
+            lastByteCount = currentByteCount;
+        }
+    }
+}
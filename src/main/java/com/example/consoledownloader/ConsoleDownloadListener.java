@@ -0,0 +1,51 @@
+package com.example.consoledownloader;
+
+import com.example.consoledownloader.downloader.DownloadListener;
+import com.example.consoledownloader.downloader.DownloaderLogRecord;
+
+import java.io.PrintStream;
+
+public class ConsoleDownloadListener implements DownloadListener {
+    private final PrintStream out;
+    private final boolean verbose;
+
+    public ConsoleDownloadListener(PrintStream out, boolean verbose) {
+        this.out = out;
+        this.verbose = verbose;
+    }
+
+    @Override
+    public void onSuccess(String link, long byteCount, DownloaderLogRecord logRecord) {
+        print(logRecord);
+    }
+
+    @Override
+    public void onFailure(String link, DownloaderLogRecord logRecord) {
+        print(logRecord);
+    }
+
+    @Override
+    public void onCopy(String link, DownloaderLogRecord logRecord) {
+        print(logRecord);
+    }
+
+    @Override
+    public void onSystemError(DownloaderLogRecord logRecord) {
+        print(logRecord);
+    }
+
+    private void print(DownloaderLogRecord logRecord) {
+        if (verbose || logRecord.getType() == DownloaderLogRecord.Type.SYSTEM_ERROR) {
+            out.println(format(logRecord));
+        }
+    }
+
+    /**
+     * The record is followed by the timings of its download if they are known.
+     */
+    static String format(DownloaderLogRecord logRecord) {
+        String line = String.format("%s %s", logRecord.getType().toPretty(), logRecord.getMessage());
+
+        return logRecord.getTimings().isKnown() ? line + " [" + logRecord.getTimings().format() + "]" : line;
+    }
+}
@@ -3,16 +3,26 @@ package com.example.consoledownloader;
 import com.example.consoledownloader.argsparser.ArgsParseException;
 import com.example.consoledownloader.argsparser.ArgsParser;
 import com.example.consoledownloader.argsparser.ArgsParserJCommander;
+import com.example.consoledownloader.cluster.BatchResult;
+import com.example.consoledownloader.cluster.Coordinator;
+import com.example.consoledownloader.cluster.Worker;
 import com.example.consoledownloader.downloader.DefaultLinkDownloader;
+import com.example.consoledownloader.downloader.DownloadListener;
 import com.example.consoledownloader.downloader.Downloader;
-import com.example.consoledownloader.downloader.DownloaderLogRecord;
+import com.example.consoledownloader.downloader.LinkDownloader;
+import com.example.consoledownloader.nio.NioLinkDownloader;
 import com.example.consoledownloader.utils.ElapsedTimeFormatter;
 import com.example.consoledownloader.argsparser.Options;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 
 public class ConsoleDownloader {
+    private static final String HTTP_MAX_CONNECTIONS_PROPERTY = "http.maxConnections";
+
     public static void main(String... args) {
         Options options;
 
@@ -31,20 +41,151 @@ public class ConsoleDownloader {
             return;
         }
 
+        if (options.getCoordinatorPort() > 0) {
+            coordinate(options);
+
+            return;
+        }
+
         Instant startTime = Instant.now();
+        LinkDownloader linkDownloader;
+
+        try {
+            linkDownloader = createLinkDownloader(options);
+        } catch (IOException e) {
+            System.out.printf("Cannot start the download engine: %s%n", e.getMessage());
+
+            return;
+        }
+
+        DownloadListener listener = new ConsoleDownloadListener(System.out, options.isVerbose());
+        ConsoleDashboard dashboard = null;
+        if (options.isProgress()) {
+            dashboard = new ConsoleDashboard(System.out, out -> new ConsoleDownloadListener(out, options.isVerbose()),
+                System.console() != null);
+            dashboard.start();
+            listener = dashboard;
+        }
 
-        Downloader downloader = new Downloader(new DefaultLinkDownloader());
+        if (!options.getWorker().isEmpty()) {
+            Worker worker = new Worker(linkDownloader, listener);
+            BatchResult workerResult = work(options, worker);
+            closeLinkDownloader(linkDownloader);
+            if (dashboard != null) {
+                dashboard.close();
+            }
+
+            if (workerResult != null) {
+                System.out.printf("Time elapsed: %s | Downloaded: %d bytes%n",
+                    new ElapsedTimeFormatter().format(Duration.between(startTime, Instant.now())),
+                    workerResult.getByteCount());
+                printBatchResult(workerResult);
+                printDetails(options, worker.getDownloadResult());
+            }
+
+            return;
+        }
+
+        Downloader downloader = new Downloader(linkDownloader, listener, false);
         Downloader.Result downloadResult = downloader.download(options);
+        closeLinkDownloader(linkDownloader);
+        if (dashboard != null) {
+            dashboard.close();
+        }
 
         Duration duration = Duration.between(startTime, Instant.now());
 
         System.out.printf("Time elapsed: %s | Downloaded: %d bytes%n",
             new ElapsedTimeFormatter().format(duration),
             downloadResult.getByteCount());
-        downloadResult.getLog().stream()
-            .filter(logRecord -> options.isVerbose() || logRecord.getType() == DownloaderLogRecord.Type.SYSTEM_ERROR)
-            .map(logRecord -> String.format("%s %s", logRecord.getType().toPretty(), logRecord.getMessage()))
-            .forEach(System.out::println);
+        printDetails(options, downloadResult);
+
+        if (options.isVerbose() && linkDownloader instanceof NioLinkDownloader) {
+            System.out.println(((NioLinkDownloader) linkDownloader).getConnectionStats());
+        }
+    }
+
+    private static void printDetails(Options options, Downloader.Result downloadResult) {
+        if (options.isCompressed()) {
+            System.out.printf("Received over the wire: %d bytes%n", downloadResult.getWireByteCount());
+        }
+
+        if (!options.getCacheDir().isEmpty()) {
+            System.out.printf("Cache: %d hits, %d misses%n", downloadResult.getCacheHitCount(),
+                downloadResult.getCacheMissCount());
+        }
+
+        if (options.getSlowest() > 0) {
+            System.out.println("The slowest downloads:");
+            downloadResult.getSlowest().forEach(logRecord ->
+                System.out.printf("  %s%n", ConsoleDownloadListener.format(logRecord)));
+        }
+    }
+
+    /**
+     * Serves the batches of the links to the workers and waits for their results, nothing is downloaded here.
+     */
+    private static void coordinate(Options options) {
+        Instant startTime = Instant.now();
+
+        try (Coordinator coordinator = Coordinator.start(Paths.get(options.getLinksFile()), options.getBatchCount(),
+            options.getCoordinatorPort(), message -> {
+                if (options.isVerbose()) {
+                    System.out.println(message);
+                }
+            })) {
+
+            System.out.printf("Serving %d batches to the workers on port %d%n", coordinator.getBatchCount(),
+                coordinator.getPort());
+            BatchResult result = coordinator.awaitCompletion();
+
+            System.out.printf("Time elapsed: %s | Downloaded by the workers: %d bytes%n",
+                new ElapsedTimeFormatter().format(Duration.between(startTime, Instant.now())), result.getByteCount());
+            printBatchResult(result);
+        } catch (IOException e) {
+            System.out.printf("The coordinator has failed: %s%n", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.printf("The coordinator has been interrupted: %s%n", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the result of the worker's batches or {@code null} if the worker has failed
+     */
+    private static BatchResult work(Options options, Worker worker) {
+        try {
+            return worker.run(options.getWorker(), options);
+        } catch (IOException e) {
+            System.out.printf("The worker has failed: %s%n", e.getMessage());
+
+            return null;
+        }
+    }
+
+    private static void printBatchResult(BatchResult result) {
+        System.out.printf("Succeeded: %d | Failed: %d%n", result.getSucceededCount(), result.getFailedCount());
+    }
+
+    private static LinkDownloader createLinkDownloader(Options options) throws IOException {
+        switch (options.getEngine()) {
+            case NIO:
+                return new NioLinkDownloader(NioLinkDownloader.DEFAULT_LOOP_COUNT, options.getMaxConnectionsPerHost());
+            default:
+                // HttpURLConnection keeps alive its connections in the JDK cache, which reads the limit once
+                System.setProperty(HTTP_MAX_CONNECTIONS_PROPERTY, String.valueOf(options.getMaxConnectionsPerHost()));
+                return new DefaultLinkDownloader();
+        }
+    }
+
+    private static void closeLinkDownloader(LinkDownloader linkDownloader) {
+        if (linkDownloader instanceof Closeable) {
+            try {
+                ((Closeable) linkDownloader).close();
+            } catch (IOException e) {
+                System.out.printf("Cannot stop the download engine: %s%n", e.getMessage());
+            }
+        }
     }
 
     private static ArgsParser createArgsParser() {
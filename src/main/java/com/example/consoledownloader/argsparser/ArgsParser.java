@@ -6,14 +6,72 @@ public interface ArgsParser {
     default String usage() {
         String newLine = System.lineSeparator();
         return "Usage: console-downloader -f FILE [OPTIONS]" + newLine
+            + "       console-downloader --worker=HOST:PORT [OPTIONS]" + newLine
             + newLine
             + "The options:" + newLine
-            + "  -f, --link-file=FILE                a file with links for download" + newLine
+            + "  -f, --link-file=FILE                a file with links for download, a line is the link," + newLine
+            + "                                      the file name and optionally sha256:HEX to verify" + newLine
+            + "                                      and size:BYTES for --largest-first" + newLine
             + "  -o, --output-dir=DIRECTORY          an output directory for downloaded files" + newLine
-            + "  -n, --thread-number=NUMBER          the number of threads" + newLine
+            + "  -n, --thread-number=NUMBER          the number of threads (the number of concurrent transfers" + newLine
+            + "                                      for the nio engine)" + newLine
+            + "  -a, --adaptive                      tune the number of concurrent downloads by the throughput," + newLine
+            + "                                      -n is the ceiling then (32 by default)" + newLine
+            + "  -t, --threads=KIND                  the kind of threads: platform (by default) or virtual (one" + newLine
+            + "                                      thread per transfer, -n bounds them, needs Java 21)" + newLine
             + "  -l, --speed-limit                   the download speed limit in bytes, kilobytes (e.g., 10k)" + newLine
             + "                                      or megabytes (e.g., 10m)" + newLine
+            + "      --host-speed-limit              the speed limit of every host (e.g., 512k)" + newLine
+            + "      --file-speed-limit              the speed limit of every file (e.g., 256k)" + newLine
+            + "  -s, --segment-size=SIZE             download files larger than SIZE in parallel segments" + newLine
+            + "                                      when the server supports range requests (e.g., 8m)" + newLine
+            + "  -r, --resume                        continue partially downloaded files using their journals" + newLine
+            + "      --retries=NUMBER                retry the links after transient failures (timeouts, resets, 5xx)," + newLine
+            + "                                      continuing from the last received byte if possible" + newLine
+            + "      --retry-delay=MILLIS            the delay before the first retry, it doubles for every next one" + newLine
+            + "                                      (500 by default)" + newLine
+            + "      --cache-dir=DIRECTORY           keep the downloaded files in the cache, the next runs ask" + newLine
+            + "                                      the server whether they have changed" + newLine
+            + "      --cache-size=SIZE               the cache size, the least recently used files are evicted" + newLine
+            + "                                      (1g by default)" + newLine
+            + "      --dedup-content                 replace the downloads with the same content by hard links" + newLine
+            + "                                      to one file" + newLine
+            + "      --manifest=FILE                 the known hashes of the files in the sha256sum format, with" + newLine
+            + "                                      --dedup-content the same content is downloaded once" + newLine
+            + "      --buffer-size=SIZE              the size of the copy buffers (256k by default)" + newLine
+            + "      --preallocate                   reserve the file by its Content-Length before it's written" + newLine
+            + "      --compressed                    ask for gzip or deflate transfer of the whole files, they are" + newLine
+            + "                                      decoded while written, the speed limits count the sent bytes" + newLine
+            + "  -e, --engine=ENGINE                 the HTTP engine: default (blocking) or nio (non-blocking," + newLine
+            + "                                      used for plain HTTP links without speed limits, -s, -r," + newLine
+            + "                                      the cache and --compressed)" + newLine
+            + "  -c, --connections-per-host=NUMBER   the maximum number of concurrent downloads and kept alive" + newLine
+            + "                                      connections of one host (8 by default), the hosts take turns" + newLine
+            + "      --largest-first                 start the largest files first, by size:BYTES of the link" + newLine
+            + "                                      file or by a HEAD request, to shorten the tail of the run" + newLine
+            + "      --max-memory=SIZE               bound the memory of the queued links, the copy buffers and" + newLine
+            + "                                      the results (e.g., 32m), the reading of the link file waits" + newLine
+            + "                                      for it, the seen links are kept outside the heap" + newLine
+            + "  -d, --duplicates=MODE               how the repeated links are saved: copy (by default), link" + newLine
+            + "                                      (hard links) or tee (written while downloading)" + newLine
             + "  -v, --verbose                       turn on the verbose mode" + newLine
+            + "  -p, --progress                      show the speed, the active transfers and the ETA while" + newLine
+            + "                                      downloading (a status line every 10s if not on a terminal)" + newLine
+            + "      --slowest=NUMBER                list the NUMBER slowest downloads with the times of their" + newLine
+            + "                                      phases (dns, connect, wait, transfer) at the end" + newLine
+            + "      --metrics-file=FILE             write the metrics of the run to FILE during the run and" + newLine
+            + "                                      at its end (bytes, latencies, errors, queue, limiter waits)" + newLine
+            + "      --metrics-format=FORMAT         the format of the metrics: prometheus (the text format for" + newLine
+            + "                                      the textfile collector, by default) or json" + newLine
+            + "      --metrics-interval=SECONDS      the interval between the writes of the metrics (15 by default)" + newLine
+            + "      --shard=I/N                     download only the I-th of N parts of the links, the lines" + newLine
+            + "                                      of a link are in the same part (e.g., 2/4)" + newLine
+            + "      --coordinator=PORT              serve the links to the workers on PORT in batches instead" + newLine
+            + "                                      of downloading them, wait for the results of all batches" + newLine
+            + "      --batches=NUMBER                the number of the shards of the coordinator (16 by default), a shard" + newLine
+            + "                                      of more than 50000 lines is served in smaller batches, a batch" + newLine
+            + "                                      is downloaded again from the start if its worker goes" + newLine
+            + "      --worker=HOST:PORT              download the batches of the coordinator on HOST:PORT" + newLine
             + "  -h, --help                          show help" + newLine
             + newLine
             + "The example of the link file:" + newLine
@@ -24,7 +82,7 @@ public interface ArgsParser {
 
     String LINK_FILE_SHORT = "-f";
     String LINK_FILE_LONG = "--link-file";
-    boolean LINK_FILE_REQUIRED = true;
+    boolean LINK_FILE_REQUIRED = false;
 
     String OUTPUT_DIR_SHORT = "-o";
     String OUTPUT_DIR_LONG = "--output-dir";
@@ -34,13 +92,101 @@ public interface ArgsParser {
     String THREAD_NUMBER_LONG = "--thread-number";
     boolean THREAD_NUMBER_REQUIRED = false;
 
+    String ADAPTIVE_SHORT = "-a";
+    String ADAPTIVE_LONG = "--adaptive";
+
+    String THREAD_KIND_SHORT = "-t";
+    String THREAD_KIND_LONG = "--threads";
+    boolean THREAD_KIND_REQUIRED = false;
+
     String SPEED_LIMIT_SHORT = "-l";
     String SPEED_LIMIT_LONG = "--speed-limit";
     boolean SPEED_LIMIT_REQUIRED = false;
 
+    String HOST_SPEED_LIMIT_LONG = "--host-speed-limit";
+    boolean HOST_SPEED_LIMIT_REQUIRED = false;
+
+    String FILE_SPEED_LIMIT_LONG = "--file-speed-limit";
+    boolean FILE_SPEED_LIMIT_REQUIRED = false;
+
+    String SEGMENT_SIZE_SHORT = "-s";
+    String SEGMENT_SIZE_LONG = "--segment-size";
+    boolean SEGMENT_SIZE_REQUIRED = false;
+
+    String RESUME_SHORT = "-r";
+    String RESUME_LONG = "--resume";
+
+    String RETRIES_LONG = "--retries";
+    boolean RETRIES_REQUIRED = false;
+
+    String RETRY_DELAY_LONG = "--retry-delay";
+    boolean RETRY_DELAY_REQUIRED = false;
+
+    String CACHE_DIR_LONG = "--cache-dir";
+    boolean CACHE_DIR_REQUIRED = false;
+
+    String CACHE_SIZE_LONG = "--cache-size";
+    boolean CACHE_SIZE_REQUIRED = false;
+
+    String DEDUP_CONTENT_LONG = "--dedup-content";
+
+    String MANIFEST_LONG = "--manifest";
+    boolean MANIFEST_REQUIRED = false;
+
+    String BUFFER_SIZE_LONG = "--buffer-size";
+    boolean BUFFER_SIZE_REQUIRED = false;
+
+    String PREALLOCATE_LONG = "--preallocate";
+
+    String LARGEST_FIRST_LONG = "--largest-first";
+
+    String MAX_MEMORY_LONG = "--max-memory";
+    boolean MAX_MEMORY_REQUIRED = false;
+
+    String COMPRESSED_LONG = "--compressed";
+
+    String ENGINE_SHORT = "-e";
+    String ENGINE_LONG = "--engine";
+    boolean ENGINE_REQUIRED = false;
+
+    String CONNECTIONS_PER_HOST_SHORT = "-c";
+    String CONNECTIONS_PER_HOST_LONG = "--connections-per-host";
+    boolean CONNECTIONS_PER_HOST_REQUIRED = false;
+
+    String DUPLICATES_SHORT = "-d";
+    String DUPLICATES_LONG = "--duplicates";
+    boolean DUPLICATES_REQUIRED = false;
+
     String VERBOSE_SHORT = "-v";
     String VERBOSE_LONG = "--verbose";
 
+    String PROGRESS_SHORT = "-p";
+    String PROGRESS_LONG = "--progress";
+
+    String SLOWEST_LONG = "--slowest";
+    boolean SLOWEST_REQUIRED = false;
+
+    String METRICS_FILE_LONG = "--metrics-file";
+    boolean METRICS_FILE_REQUIRED = false;
+
+    String METRICS_FORMAT_LONG = "--metrics-format";
+    boolean METRICS_FORMAT_REQUIRED = false;
+
+    String METRICS_INTERVAL_LONG = "--metrics-interval";
+    boolean METRICS_INTERVAL_REQUIRED = false;
+
+    String SHARD_LONG = "--shard";
+    boolean SHARD_REQUIRED = false;
+
+    String COORDINATOR_LONG = "--coordinator";
+    boolean COORDINATOR_REQUIRED = false;
+
+    String BATCHES_LONG = "--batches";
+    boolean BATCHES_REQUIRED = false;
+
+    String WORKER_LONG = "--worker";
+    boolean WORKER_REQUIRED = false;
+
     String HELP_SHORT = "-h";
     String HELP_LONG = "--help";
 }
@@ -5,6 +5,7 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -21,13 +22,108 @@ public class ArgsParserJCommander implements ArgsParser {
     @Parameter(names = {THREAD_NUMBER_SHORT, THREAD_NUMBER_LONG}, required = THREAD_NUMBER_REQUIRED)
     private int threads;
 
+    @Parameter(names = { ADAPTIVE_SHORT, ADAPTIVE_LONG })
+    private boolean adaptive;
+
+    @Parameter(names = { THREAD_KIND_SHORT, THREAD_KIND_LONG }, required = THREAD_KIND_REQUIRED,
+        converter = ThreadKindConverter.class)
+    private Options.ThreadKind threadKind;
+
     @Parameter(names = { SPEED_LIMIT_SHORT, SPEED_LIMIT_LONG }, required = SPEED_LIMIT_REQUIRED,
         converter = SpeedLimitConverter.class)
     private long limit;
 
+    @Parameter(names = { HOST_SPEED_LIMIT_LONG }, required = HOST_SPEED_LIMIT_REQUIRED,
+        converter = SpeedLimitConverter.class)
+    private long hostLimit;
+
+    @Parameter(names = { FILE_SPEED_LIMIT_LONG }, required = FILE_SPEED_LIMIT_REQUIRED,
+        converter = SpeedLimitConverter.class)
+    private long fileLimit;
+
+    @Parameter(names = { SEGMENT_SIZE_SHORT, SEGMENT_SIZE_LONG }, required = SEGMENT_SIZE_REQUIRED,
+        converter = SegmentSizeConverter.class)
+    private long segmentSize;
+
+    @Parameter(names = { RESUME_SHORT, RESUME_LONG })
+    private boolean resume;
+
+    @Parameter(names = { RETRIES_LONG }, required = RETRIES_REQUIRED)
+    private int retries;
+
+    @Parameter(names = { RETRY_DELAY_LONG }, required = RETRY_DELAY_REQUIRED)
+    private long retryDelay;
+
+    @Parameter(names = { CACHE_DIR_LONG }, required = CACHE_DIR_REQUIRED)
+    private String cacheDir;
+
+    @Parameter(names = { CACHE_SIZE_LONG }, required = CACHE_SIZE_REQUIRED, converter = CacheSizeConverter.class)
+    private long cacheSize;
+
+    @Parameter(names = { DEDUP_CONTENT_LONG })
+    private boolean dedupContent;
+
+    @Parameter(names = { MANIFEST_LONG }, required = MANIFEST_REQUIRED)
+    private String manifest;
+
+    @Parameter(names = { BUFFER_SIZE_LONG }, required = BUFFER_SIZE_REQUIRED, converter = BufferSizeConverter.class)
+    private int bufferSize;
+
+    @Parameter(names = { PREALLOCATE_LONG })
+    private boolean preallocate;
+
+    @Parameter(names = { LARGEST_FIRST_LONG })
+    private boolean largestFirst;
+
+    @Parameter(names = { MAX_MEMORY_LONG }, required = MAX_MEMORY_REQUIRED, converter = MaxMemoryConverter.class)
+    private long maxMemory;
+
+    @Parameter(names = { COMPRESSED_LONG })
+    private boolean compressed;
+
+    @Parameter(names = { ENGINE_SHORT, ENGINE_LONG }, required = ENGINE_REQUIRED,
+        converter = EngineConverter.class)
+    private Options.Engine engine;
+
+    @Parameter(names = { CONNECTIONS_PER_HOST_SHORT, CONNECTIONS_PER_HOST_LONG },
+        required = CONNECTIONS_PER_HOST_REQUIRED)
+    private int connectionsPerHost;
+
+    @Parameter(names = { DUPLICATES_SHORT, DUPLICATES_LONG }, required = DUPLICATES_REQUIRED,
+        converter = DuplicateModeConverter.class)
+    private Options.DuplicateMode duplicateMode;
+
     @Parameter(names = { VERBOSE_SHORT, VERBOSE_LONG })
     private boolean verbose;
 
+    @Parameter(names = { PROGRESS_SHORT, PROGRESS_LONG })
+    private boolean progress;
+
+    @Parameter(names = { SLOWEST_LONG }, required = SLOWEST_REQUIRED)
+    private int slowest;
+
+    @Parameter(names = { METRICS_FILE_LONG }, required = METRICS_FILE_REQUIRED)
+    private String metricsFile;
+
+    @Parameter(names = { METRICS_FORMAT_LONG }, required = METRICS_FORMAT_REQUIRED,
+        converter = MetricsFormatConverter.class)
+    private Options.MetricsFormat metricsFormat;
+
+    @Parameter(names = { METRICS_INTERVAL_LONG }, required = METRICS_INTERVAL_REQUIRED)
+    private long metricsInterval;
+
+    @Parameter(names = { SHARD_LONG }, required = SHARD_REQUIRED, converter = ShardConverter.class)
+    private Options.Shard shard;
+
+    @Parameter(names = { COORDINATOR_LONG }, required = COORDINATOR_REQUIRED)
+    private int coordinatorPort;
+
+    @Parameter(names = { BATCHES_LONG }, required = BATCHES_REQUIRED)
+    private int batchCount;
+
+    @Parameter(names = { WORKER_LONG }, required = WORKER_REQUIRED)
+    private String worker;
+
     @Parameter(names = { HELP_SHORT, HELP_LONG }, help = true)
     private boolean help;
 
@@ -42,40 +138,180 @@ public class ArgsParserJCommander implements ArgsParser {
             throw new ArgsParseException(e.getMessage(), e);
         }
 
+        // The worker takes its links from the coordinator
+        if (this.input == null && this.worker == null && !this.help) {
+            throw new ArgsParseException(String.format("The following option is required: %s, %s",
+                LINK_FILE_SHORT, LINK_FILE_LONG));
+        }
+
         return new Options.Builder(this.input)
             .outputDir(this.output)
             .limit(this.limit)
+            .hostLimit(this.hostLimit)
+            .fileLimit(this.fileLimit)
             .threads(this.threads)
+            .adaptive(this.adaptive)
+            .threadKind(this.threadKind)
+            .segmentSize(this.segmentSize)
+            .resume(this.resume)
+            .retryCount(this.retries)
+            .retryDelay(this.retryDelay)
+            .cacheDir(this.cacheDir)
+            .cacheSize(this.cacheSize)
+            .dedupContent(this.dedupContent)
+            .manifest(this.manifest)
+            .bufferSize(this.bufferSize)
+            .preallocate(this.preallocate)
+            .largestFirst(this.largestFirst)
+            .maxMemory(this.maxMemory)
+            .compressed(this.compressed)
+            .engine(this.engine)
+            .maxConnectionsPerHost(this.connectionsPerHost)
+            .duplicateMode(this.duplicateMode)
             .verbose(this.verbose)
+            .progress(this.progress)
+            .slowest(this.slowest)
+            .metricsFile(this.metricsFile)
+            .metricsFormat(this.metricsFormat)
+            .metricsInterval(this.metricsInterval)
+            .shard(this.shard)
+            .coordinatorPort(this.coordinatorPort)
+            .batchCount(this.batchCount)
+            .worker(this.worker)
             .help(this.help)
             .build();
     }
 
-    public static class SpeedLimitConverter implements IStringConverter<Integer> {
+    public static class SpeedLimitConverter implements IStringConverter<Long> {
+        @Override
+        public Long convert(String value) {
+            return parseSize(value, "speed limit");
+        }
+    }
 
-        static final Pattern PATTERN = Pattern.compile("^(\\d+)([km]?)$");
-        static final Map<String, Integer> MULTIPLIERS;
+    public static class SegmentSizeConverter implements IStringConverter<Long> {
+        @Override
+        public Long convert(String value) {
+            return parseSize(value, "segment size");
+        }
+    }
 
-        static {
-            MULTIPLIERS = new HashMap<>();
-            MULTIPLIERS.put("", 1);
-            MULTIPLIERS.put("k", 1024);
-            MULTIPLIERS.put("m", 1024 * 1024);
+    public static class CacheSizeConverter implements IStringConverter<Long> {
+        @Override
+        public Long convert(String value) {
+            return parseSize(value, "cache size");
         }
+    }
+
+    public static class BufferSizeConverter implements IStringConverter<Integer> {
+        private static final long MAX_BUFFER_SIZE = 64L * 1024L * 1024L;
 
         @Override
         public Integer convert(String value) {
-            Matcher matcher = PATTERN.matcher(value.toLowerCase());
+            long size = parseSize(value, "buffer size");
 
-            if (!matcher.matches()) {
+            if (size > MAX_BUFFER_SIZE) {
                 throw new ParameterException(String.format(
-                    "The value \"%s\" doesn't match the speed limit pattern", value));
+                    "The buffer size \"%s\" is larger than 64m", value));
             }
 
-            String rawLimit = matcher.group(1);
-            String suffix = matcher.group(2);
+            return (int) size;
+        }
+    }
+
+    public static class MaxMemoryConverter implements IStringConverter<Long> {
+        @Override
+        public Long convert(String value) {
+            return parseSize(value, "memory size");
+        }
+    }
+
+    public static class EngineConverter implements IStringConverter<Options.Engine> {
+        @Override
+        public Options.Engine convert(String value) {
+            return Arrays.stream(Options.Engine.values())
+                .filter(engine -> engine.getName().equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new ParameterException(String.format(
+                    "The value \"%s\" isn't a known engine", value)));
+        }
+    }
+
+    public static class ThreadKindConverter implements IStringConverter<Options.ThreadKind> {
+        @Override
+        public Options.ThreadKind convert(String value) {
+            return Arrays.stream(Options.ThreadKind.values())
+                .filter(kind -> kind.getName().equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new ParameterException(String.format(
+                    "The value \"%s\" isn't a known kind of threads", value)));
+        }
+    }
 
-            return Integer.parseInt(rawLimit) * MULTIPLIERS.get(suffix);
+    public static class DuplicateModeConverter implements IStringConverter<Options.DuplicateMode> {
+        @Override
+        public Options.DuplicateMode convert(String value) {
+            return Arrays.stream(Options.DuplicateMode.values())
+                .filter(mode -> mode.getName().equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new ParameterException(String.format(
+                    "The value \"%s\" isn't a known duplicate mode", value)));
         }
     }
+
+    public static class MetricsFormatConverter implements IStringConverter<Options.MetricsFormat> {
+        @Override
+        public Options.MetricsFormat convert(String value) {
+            return Arrays.stream(Options.MetricsFormat.values())
+                .filter(format -> format.getName().equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new ParameterException(String.format(
+                    "The value \"%s\" isn't a known metrics format", value)));
+        }
+    }
+
+    public static class ShardConverter implements IStringConverter<Options.Shard> {
+        @Override
+        public Options.Shard convert(String value) {
+            Matcher matcher = SHARD_PATTERN.matcher(value);
+
+            if (matcher.matches()) {
+                int number = Integer.parseInt(matcher.group(1));
+                int count = Integer.parseInt(matcher.group(2));
+
+                if (number >= 1 && number <= count) {
+                    return new Options.Shard(number - 1, count);
+                }
+            }
+
+            throw new ParameterException(String.format(
+                "The value \"%s\" isn't a shard, I/N with I from 1 to N is expected", value));
+        }
+    }
+
+    static final Pattern SHARD_PATTERN = Pattern.compile("^(\\d{1,9})/(\\d{1,9})$");
+    static final Pattern SIZE_PATTERN = Pattern.compile("^(\\d+)([kmg]?)$");
+    static final Map<String, Long> SIZE_MULTIPLIERS;
+
+    static {
+        SIZE_MULTIPLIERS = new HashMap<>();
+        SIZE_MULTIPLIERS.put("", 1L);
+        SIZE_MULTIPLIERS.put("k", 1024L);
+        SIZE_MULTIPLIERS.put("m", 1024L * 1024L);
+        SIZE_MULTIPLIERS.put("g", 1024L * 1024L * 1024L);
+    }
+
+    static long parseSize(String value, String name) {
+        Matcher matcher = SIZE_PATTERN.matcher(value.toLowerCase());
+
+        if (!matcher.matches()) {
+            throw new ParameterException(String.format(
+                "The value \"%s\" doesn't match the %s pattern", value, name));
+        }
+
+        String rawSize = matcher.group(1);
+        String suffix = matcher.group(2);
+
+        return Long.parseLong(rawSize) * SIZE_MULTIPLIERS.get(suffix);
+    }
 }
@@ -3,20 +3,93 @@ package com.example.consoledownloader.argsparser;
 import com.google.common.base.Strings;
 
 public class Options {
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+    public static final int DEFAULT_ADAPTIVE_THREAD_NUMBER = 32;
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 500;
+    public static final long DEFAULT_CACHE_SIZE = 1024L * 1024L * 1024L;
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final long DEFAULT_METRICS_INTERVAL_SECONDS = 15;
+    public static final int DEFAULT_BATCH_COUNT = 16;
 
     private final String linksFile;
     private final String outputDir;
     private final int threadNumber;
+    private final boolean adaptive;
+    private final ThreadKind threadKind;
     private final long limit;
+    private final long hostLimit;
+    private final long fileLimit;
+    private final long segmentSize;
+    private final boolean resume;
+    private final int retryCount;
+    private final long retryDelay;
+    private final String cacheDir;
+    private final long cacheSize;
+    private final boolean dedupContent;
+    private final String manifest;
+    private final int bufferSize;
+    private final boolean preallocate;
+    private final boolean largestFirst;
+    private final long maxMemory;
+    private final boolean compressed;
+    private final Engine engine;
+    private final int maxConnectionsPerHost;
+    private final DuplicateMode duplicateMode;
     private final boolean verbose;
+    private final boolean progress;
+    private final int slowest;
+    private final String metricsFile;
+    private final MetricsFormat metricsFormat;
+    private final long metricsInterval;
+    private final Shard shard;
+    private final int coordinatorPort;
+    private final int batchCount;
+    private final String worker;
     private final boolean help;
 
     private Options(Builder builder) {
         this.linksFile = Strings.nullToEmpty(builder.linksFile);
         this.outputDir = Strings.nullToEmpty(builder.outputDir);
-        this.threadNumber = builder.threadNumber == 0 ? 1 : builder.threadNumber;
+        this.adaptive = builder.adaptive;
+        if (builder.threadNumber != 0) {
+            this.threadNumber = builder.threadNumber;
+        } else {
+            this.threadNumber = builder.adaptive ? DEFAULT_ADAPTIVE_THREAD_NUMBER : 1;
+        }
+        this.threadKind = builder.threadKind == null ? ThreadKind.PLATFORM : builder.threadKind;
         this.limit = builder.limit;
+        this.hostLimit = builder.hostLimit;
+        this.fileLimit = builder.fileLimit;
+        this.segmentSize = builder.segmentSize;
+        this.resume = builder.resume;
+        this.retryCount = builder.retryCount;
+        this.retryDelay = builder.retryDelay == 0 ? DEFAULT_RETRY_DELAY_MILLIS : builder.retryDelay;
+        this.cacheDir = Strings.nullToEmpty(builder.cacheDir);
+        this.cacheSize = builder.cacheSize == 0 ? DEFAULT_CACHE_SIZE : builder.cacheSize;
+        this.dedupContent = builder.dedupContent;
+        this.manifest = Strings.nullToEmpty(builder.manifest);
+        this.bufferSize = builder.bufferSize == 0 ? DEFAULT_BUFFER_SIZE : builder.bufferSize;
+        this.preallocate = builder.preallocate;
+        this.largestFirst = builder.largestFirst;
+        this.maxMemory = builder.maxMemory;
+        this.compressed = builder.compressed;
+        this.engine = builder.engine == null ? Engine.DEFAULT : builder.engine;
+        this.maxConnectionsPerHost = builder.maxConnectionsPerHost == 0
+            ? DEFAULT_MAX_CONNECTIONS_PER_HOST
+            : builder.maxConnectionsPerHost;
+        this.duplicateMode = builder.duplicateMode == null ? DuplicateMode.COPY : builder.duplicateMode;
         this.verbose = builder.verbose;
+        this.progress = builder.progress;
+        this.slowest = builder.slowest;
+        this.metricsFile = Strings.nullToEmpty(builder.metricsFile);
+        this.metricsFormat = builder.metricsFormat == null ? MetricsFormat.PROMETHEUS : builder.metricsFormat;
+        this.metricsInterval = builder.metricsInterval == 0
+            ? DEFAULT_METRICS_INTERVAL_SECONDS
+            : builder.metricsInterval;
+        this.shard = builder.shard == null ? Shard.ALL : builder.shard;
+        this.coordinatorPort = builder.coordinatorPort;
+        this.batchCount = builder.batchCount == 0 ? DEFAULT_BATCH_COUNT : builder.batchCount;
+        this.worker = Strings.nullToEmpty(builder.worker);
         this.help = builder.help;
     }
 
@@ -24,10 +97,129 @@ public class Options {
         return threadNumber;
     }
 
+    /**
+     * @return whether the number of active transfers is tuned at runtime, the thread number is its ceiling then
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public ThreadKind getThreadKind() {
+        return threadKind;
+    }
+
     public long getLimit() {
         return limit;
     }
 
+    public long getHostLimit() {
+        return hostLimit;
+    }
+
+    public long getFileLimit() {
+        return fileLimit;
+    }
+
+    public boolean isSpeedLimited() {
+        return limit > 0 || hostLimit > 0 || fileLimit > 0;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * @return the maximum number of retries of one link after transient failures, 0 if they aren't retried
+     */
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * @return the delay before the first retry in milliseconds, it doubles with every next retry
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * @return the directory of the cache between runs, it's empty if the cache is off
+     */
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @return whether the downloads with the same content are replaced with hard links to one file
+     */
+    public boolean isDedupContent() {
+        return dedupContent;
+    }
+
+    /**
+     * @return the file with the known hashes of the destinations, it's empty if there is none
+     */
+    public String getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @return the size of the buffers which copy the downloads to the files
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return whether the file of a whole download takes its Content-Length on disk before the content is written
+     */
+    public boolean isPreallocate() {
+        return preallocate;
+    }
+
+    /**
+     * @return whether the downloads start in the order of their expected sizes, the largest first
+     */
+    public boolean isLargestFirst() {
+        return largestFirst;
+    }
+
+    /**
+     * @return the memory in bytes which the queued tasks, the copy buffers and the kept results of the run share,
+     * 0 if it isn't bounded
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @return whether the whole downloads accept the gzip and deflate encodings, the content is decoded
+     * while it's written
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public DuplicateMode getDuplicateMode() {
+        return duplicateMode;
+    }
+
     public String getOutputDir() {
         return outputDir;
     }
@@ -40,6 +232,67 @@ public class Options {
         return verbose;
     }
 
+    /**
+     * @return whether the speed, the counts and the ETA are shown while the files are downloaded
+     */
+    public boolean isProgress() {
+        return progress;
+    }
+
+    /**
+     * @return the number of the slowest downloads which are listed with their timings at the end, 0 if none
+     */
+    public int getSlowest() {
+        return slowest;
+    }
+
+    /**
+     * @return the file which the metrics of the run are written to or an empty string if they aren't collected
+     */
+    public String getMetricsFile() {
+        return metricsFile;
+    }
+
+    public MetricsFormat getMetricsFormat() {
+        return metricsFormat;
+    }
+
+    /**
+     * @return the interval in seconds between the writes of the metrics file during the run
+     */
+    public long getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    /**
+     * @return the part of the links which is downloaded, all of them by default
+     */
+    public Shard getShard() {
+        return shard;
+    }
+
+    /**
+     * @return the port which the links are served to the workers on or 0 if the links are downloaded
+     */
+    public int getCoordinatorPort() {
+        return coordinatorPort;
+    }
+
+    /**
+     * @return the number of the shards which the coordinator splits the links into, a large shard is served in
+     * several batches
+     */
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return the HOST:PORT of the coordinator whose batches are downloaded or an empty string if it isn't a worker
+     */
+    public String getWorker() {
+        return worker;
+    }
+
     public boolean isHelpNeeded() {
         return help;
     }
@@ -48,8 +301,37 @@ public class Options {
         private String linksFile;
         private String outputDir;
         private int threadNumber;
+        private boolean adaptive;
+        private ThreadKind threadKind;
         private long limit;
+        private long hostLimit;
+        private long fileLimit;
+        private long segmentSize;
+        private boolean resume;
+        private int retryCount;
+        private long retryDelay;
+        private String cacheDir;
+        private long cacheSize;
+        private boolean dedupContent;
+        private String manifest;
+        private int bufferSize;
+        private boolean preallocate;
+        private boolean largestFirst;
+        private long maxMemory;
+        private boolean compressed;
+        private Engine engine;
+        private int maxConnectionsPerHost;
+        private DuplicateMode duplicateMode;
         private boolean verbose;
+        private boolean progress;
+        private int slowest;
+        private String metricsFile;
+        private MetricsFormat metricsFormat;
+        private long metricsInterval;
+        private Shard shard;
+        private int coordinatorPort;
+        private int batchCount;
+        private String worker;
         private boolean help;
 
         public Builder(String linksFile) {
@@ -66,16 +348,161 @@ public class Options {
             return this;
         }
 
+        public Builder adaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+            return this;
+        }
+
+        public Builder threadKind(ThreadKind threadKind) {
+            this.threadKind = threadKind;
+            return this;
+        }
+
         public Builder limit(long limit) {
             this.limit = limit;
             return this;
         }
 
+        public Builder hostLimit(long hostLimit) {
+            this.hostLimit = hostLimit;
+            return this;
+        }
+
+        public Builder fileLimit(long fileLimit) {
+            this.fileLimit = fileLimit;
+            return this;
+        }
+
+        public Builder segmentSize(long segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        public Builder resume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        public Builder retryCount(int retryCount) {
+            this.retryCount = retryCount;
+            return this;
+        }
+
+        public Builder retryDelay(long retryDelay) {
+            this.retryDelay = retryDelay;
+            return this;
+        }
+
+        public Builder cacheDir(String cacheDir) {
+            this.cacheDir = cacheDir;
+            return this;
+        }
+
+        public Builder cacheSize(long cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public Builder dedupContent(boolean dedupContent) {
+            this.dedupContent = dedupContent;
+            return this;
+        }
+
+        public Builder manifest(String manifest) {
+            this.manifest = manifest;
+            return this;
+        }
+
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Builder preallocate(boolean preallocate) {
+            this.preallocate = preallocate;
+            return this;
+        }
+
+        public Builder largestFirst(boolean largestFirst) {
+            this.largestFirst = largestFirst;
+            return this;
+        }
+
+        public Builder maxMemory(long maxMemory) {
+            this.maxMemory = maxMemory;
+            return this;
+        }
+
+        public Builder compressed(boolean compressed) {
+            this.compressed = compressed;
+            return this;
+        }
+
+        public Builder engine(Engine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        public Builder duplicateMode(DuplicateMode duplicateMode) {
+            this.duplicateMode = duplicateMode;
+            return this;
+        }
+
         public Builder verbose(boolean verbose) {
             this.verbose = verbose;
             return this;
         }
 
+        public Builder progress(boolean progress) {
+            this.progress = progress;
+            return this;
+        }
+
+        public Builder slowest(int slowest) {
+            this.slowest = slowest;
+            return this;
+        }
+
+        public Builder metricsFile(String metricsFile) {
+            this.metricsFile = metricsFile;
+            return this;
+        }
+
+        public Builder metricsFormat(MetricsFormat metricsFormat) {
+            this.metricsFormat = metricsFormat;
+            return this;
+        }
+
+        public Builder metricsInterval(long metricsInterval) {
+            this.metricsInterval = metricsInterval;
+            return this;
+        }
+
+        public Builder shard(Shard shard) {
+            this.shard = shard;
+            return this;
+        }
+
+        public Builder coordinatorPort(int coordinatorPort) {
+            this.coordinatorPort = coordinatorPort;
+            return this;
+        }
+
+        public Builder batchCount(int batchCount) {
+            this.batchCount = batchCount;
+            return this;
+        }
+
+        public Builder worker(String worker) {
+            this.worker = worker;
+            return this;
+        }
+
         public Options build() {
             return new Options(this);
         }
@@ -85,4 +512,83 @@ public class Options {
             return this;
         }
     }
+
+    public enum Engine {
+        DEFAULT("default"), NIO("nio");
+        private final String name;
+
+        Engine(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public enum ThreadKind {
+        PLATFORM("platform"), VIRTUAL("virtual");
+        private final String name;
+
+        ThreadKind(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public enum DuplicateMode {
+        COPY("copy"), LINK("link"), TEE("tee");
+        private final String name;
+
+        DuplicateMode(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public enum MetricsFormat {
+        PROMETHEUS("prometheus"), JSON("json");
+        private final String name;
+
+        MetricsFormat(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * The index-th part from 0 of the count parts of the links.
+     */
+    public static class Shard {
+        public static final Shard ALL = new Shard(0, 1);
+
+        private final int index;
+        private final int count;
+
+        public Shard(int index, int count) {
+            this.index = index;
+            this.count = count;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean isAll() {
+            return count == 1;
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package com.example.consoledownloader.cluster;
+
+/**
+ * The counts of the downloads and the copies of the batches, the failures include the checksum mismatches
+ * and the invalid lines.
+ */
+public class BatchResult {
+    public static final BatchResult EMPTY = new BatchResult(0L, 0L, 0L);
+
+    private final long succeededCount;
+    private final long failedCount;
+    private final long byteCount;
+
+    public BatchResult(long succeededCount, long failedCount, long byteCount) {
+        this.succeededCount = succeededCount;
+        this.failedCount = failedCount;
+        this.byteCount = byteCount;
+    }
+
+    public long getSucceededCount() {
+        return succeededCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    public BatchResult plus(BatchResult other) {
+        return new BatchResult(succeededCount + other.succeededCount, failedCount + other.failedCount,
+            byteCount + other.byteCount);
+    }
+}
@@ -0,0 +1,371 @@
+package com.example.consoledownloader.cluster;
+
+import com.example.consoledownloader.downloader.LinkSharding;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Splits the link file into batches and serves them to the workers which ask for them over TCP, see
+ * {@link Protocol}. The batches are the shards of the links, so the lines of a link are in one batch and it's
+ * downloaded once. A shard of more than the batch lines is split into the parts by another hash of the link,
+ * so the batches stay small: a batch is downloaded again from the start if its worker goes, and the idle workers
+ * don't wait for the one with a large shard. The link file is read once, the batches are spooled to
+ * the temporary files. A batch of a worker which has gone before its result is served to the next worker.
+ */
+public class Coordinator implements Closeable {
+    static final int MAX_BATCH_LINES = 50_000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    private final Path spoolDir;
+    private final Deque<Batch> pending;
+    private final int batchCount;
+    private final Consumer<String> log;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "coordinator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private BatchResult total = BatchResult.EMPTY;
+    private int completedCount;
+    private boolean closed;
+
+    private Coordinator(Path spoolDir, Deque<Batch> pending, int port, Consumer<String> log) throws IOException {
+        this.spoolDir = spoolDir;
+        this.pending = pending;
+        this.batchCount = pending.size();
+        this.log = log;
+        this.serverSocket = new ServerSocket(port);
+
+        executor.execute(this::accept);
+    }
+
+    /**
+     * @param shardCount the number of the shards of the links, the empty ones aren't served, the ones of more than
+     *                   {@link #MAX_BATCH_LINES} lines are served in several batches
+     * @param port       the port to listen on, 0 for any free one
+     * @param log        gets the messages about the workers and the results of the batches
+     */
+    public static Coordinator start(Path linksFile, int shardCount, int port, Consumer<String> log)
+        throws IOException {
+
+        return start(linksFile, shardCount, MAX_BATCH_LINES, port, log);
+    }
+
+    /**
+     * @param maxBatchLines the lines of a shard which is served as one batch, a larger one is split
+     */
+    static Coordinator start(Path linksFile, int shardCount, int maxBatchLines, int port, Consumer<String> log)
+        throws IOException {
+
+        Path spoolDir = Files.createTempDirectory("consoledownloader-batches");
+
+        try {
+            return new Coordinator(spoolDir, spool(linksFile, shardCount, maxBatchLines, spoolDir), port, log);
+        } catch (IOException | RuntimeException e) {
+            deleteSpool(spoolDir);
+            throw e;
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of the batches which have lines
+     */
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Waits until all the batches have their results.
+     *
+     * @return the sum of the results
+     */
+    public synchronized BatchResult awaitCompletion() throws InterruptedException {
+        while (completedCount < batchCount) {
+            wait();
+        }
+
+        return total;
+    }
+
+    /**
+     * Stops accepting the workers, lets the connected ones get their answers and deletes the batches.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+
+        try {
+            serverSocket.close();
+            executor.shutdown();
+
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                sockets.forEach(Coordinator::closeQuietly);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sockets.forEach(Coordinator::closeQuietly);
+            executor.shutdownNow();
+        } finally {
+            deleteSpool(spoolDir);
+        }
+    }
+
+    private static Deque<Batch> spool(Path linksFile, int shardCount, int maxBatchLines, Path spoolDir)
+        throws IOException {
+
+        BufferedWriter[] writers = new BufferedWriter[shardCount];
+        int[] lineCounts = new int[shardCount];
+
+        try (BufferedReader reader = Files.newBufferedReader(linksFile, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                String link = LinkSharding.linkOf(line);
+                if (link == null) {
+                    continue;
+                }
+
+                int shard = LinkSharding.shardOf(link, shardCount);
+                if (writers[shard] == null) {
+                    writers[shard] = Files.newBufferedWriter(shardFile(spoolDir, shard), StandardCharsets.UTF_8);
+                }
+
+                Protocol.writeLine(writers[shard], line);
+                lineCounts[shard]++;
+            }
+        } finally {
+            for (BufferedWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+
+        Deque<Batch> batches = new ArrayDeque<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (lineCounts[shard] > maxBatchLines) {
+                split(shardFile(spoolDir, shard), (lineCounts[shard] - 1) / maxBatchLines + 1, spoolDir, batches);
+            } else if (lineCounts[shard] > 0) {
+                addBatch(shardFile(spoolDir, shard), lineCounts[shard], spoolDir, batches);
+            }
+        }
+
+        return batches;
+    }
+
+    /**
+     * Spools the parts of the shard as the next batches and deletes the shard's file.
+     */
+    private static void split(Path shardFile, int partCount, Path spoolDir, Deque<Batch> batches)
+        throws IOException {
+
+        BufferedWriter[] writers = new BufferedWriter[partCount];
+        Path[] files = new Path[partCount];
+        int[] lineCounts = new int[partCount];
+
+        try (BufferedReader reader = Files.newBufferedReader(shardFile, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                int part = LinkSharding.partOf(LinkSharding.linkOf(line), partCount);
+                if (writers[part] == null) {
+                    files[part] = Files.createTempFile(spoolDir, "part", null);
+                    writers[part] = Files.newBufferedWriter(files[part], StandardCharsets.UTF_8);
+                }
+
+                Protocol.writeLine(writers[part], line);
+                lineCounts[part]++;
+            }
+        } finally {
+            for (BufferedWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+
+        for (int part = 0; part < partCount; part++) {
+            if (lineCounts[part] > 0) {
+                addBatch(files[part], lineCounts[part], spoolDir, batches);
+            }
+        }
+        Files.delete(shardFile);
+    }
+
+    private static void addBatch(Path file, int lineCount, Path spoolDir, Deque<Batch> batches) throws IOException {
+        int id = batches.size() + 1;
+        Path batchFile = spoolDir.resolve(String.format("batch-%d", id));
+
+        Files.move(file, batchFile);
+        batches.add(new Batch(id, batchFile, lineCount));
+    }
+
+    private static Path shardFile(Path spoolDir, int shard) {
+        return spoolDir.resolve(String.format("shard-%d", shard + 1));
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+
+            sockets.add(socket);
+            try {
+                executor.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                closeQuietly(socket);
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        String worker = String.valueOf(socket.getRemoteSocketAddress());
+        Batch batch = null;
+
+        try (BufferedReader in = Protocol.reader(socket);
+             BufferedWriter out = Protocol.writer(socket)) {
+
+            String message;
+            while ((message = in.readLine()) != null) {
+                if (batch != null) {
+                    long[] numbers = Protocol.parse(message, Protocol.RESULT, 4);
+                    if (numbers[0] != batch.id) {
+                        throw new ProtocolException(String.format("The result of the batch %d is expected: %s",
+                            batch.id, message));
+                    }
+
+                    complete(batch, new BatchResult(numbers[1], numbers[2], numbers[3]), worker);
+                    batch = null;
+                } else if (message.equals(Protocol.NEXT)) {
+                    batch = take();
+                    if (batch == null) {
+                        Protocol.writeLine(out, Protocol.DONE);
+                        out.flush();
+                        return;
+                    }
+
+                    send(batch, out);
+                } else {
+                    throw new ProtocolException(String.format("%s is expected: %s", Protocol.NEXT, message));
+                }
+            }
+        } catch (IOException e) {
+            log.accept(String.format("The connection of the worker %s has failed: %s", worker, e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(socket);
+            sockets.remove(socket);
+
+            if (batch != null) {
+                requeue(batch);
+                log.accept(String.format("The worker %s has gone, the batch %d is served again", worker, batch.id));
+            }
+        }
+    }
+
+    private static void send(Batch batch, BufferedWriter out) throws IOException {
+        Protocol.writeLine(out, Protocol.formatBatch(batch.id, batch.lineCount));
+
+        try (BufferedReader reader = Files.newBufferedReader(batch.file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Protocol.writeLine(out, line);
+            }
+        }
+
+        out.flush();
+    }
+
+    /**
+     * @return the next batch or {@code null} if all the batches have their results
+     */
+    private synchronized Batch take() throws InterruptedException {
+        // A batch in progress may come back if its worker goes
+        while (pending.isEmpty() && completedCount < batchCount && !closed) {
+            wait();
+        }
+
+        return pending.poll();
+    }
+
+    private synchronized void complete(Batch batch, BatchResult result, String worker) {
+        total = total.plus(result);
+        completedCount++;
+        notifyAll();
+
+        log.accept(String.format("The batch %d (%d/%d) is done by %s: %d succeeded, %d failed, %d bytes",
+            batch.id, completedCount, batchCount, worker, result.getSucceededCount(), result.getFailedCount(),
+            result.getByteCount()));
+    }
+
+    private synchronized void requeue(Batch batch) {
+        pending.addFirst(batch);
+        notifyAll();
+    }
+
+    private static void deleteSpool(Path spoolDir) throws IOException {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        Files.deleteIfExists(spoolDir);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // The socket is being closed anyway
+        }
+    }
+
+    private static class Batch {
+        final int id;
+        final Path file;
+        final int lineCount;
+
+        Batch(int id, Path file, int lineCount) {
+            this.id = id;
+            this.file = file;
+            this.lineCount = lineCount;
+        }
+    }
+}
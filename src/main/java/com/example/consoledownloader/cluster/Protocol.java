@@ -0,0 +1,75 @@
+package com.example.consoledownloader.cluster;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The line-based protocol between the coordinator and its workers, in UTF-8:
+ * <ul>
+ * <li>the worker asks for a batch with {@code NEXT}</li>
+ * <li>the coordinator answers {@code BATCH <id> <line count>} followed by the lines of the batch,
+ * or {@code DONE} if all the batches have their results</li>
+ * <li>the worker reports the downloaded batch with {@code RESULT <id> <succeeded> <failed> <bytes>}</li>
+ * </ul>
+ */
+final class Protocol {
+    static final String NEXT = "NEXT";
+    static final String BATCH = "BATCH";
+    static final String RESULT = "RESULT";
+    static final String DONE = "DONE";
+    private static final String DELIMITER = " ";
+
+    private Protocol() {
+    }
+
+    static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    static BufferedWriter writer(Socket socket) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    static void writeLine(Writer writer, String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    static String formatBatch(int id, int lineCount) {
+        return String.join(DELIMITER, BATCH, String.valueOf(id), String.valueOf(lineCount));
+    }
+
+    static String formatResult(int id, BatchResult result) {
+        return String.join(DELIMITER, RESULT, String.valueOf(id), String.valueOf(result.getSucceededCount()),
+            String.valueOf(result.getFailedCount()), String.valueOf(result.getByteCount()));
+    }
+
+    /**
+     * @return the numbers which follow the command of the message, their count is checked
+     */
+    static long[] parse(String message, String command, int numberCount) throws ProtocolException {
+        String[] parts = message.split(DELIMITER);
+
+        if (parts.length != numberCount + 1 || !parts[0].equals(command)) {
+            throw new ProtocolException(String.format("%s is expected: %s", command, message));
+        }
+
+        long[] numbers = new long[numberCount];
+        try {
+            for (int i = 0; i < numberCount; i++) {
+                numbers[i] = Long.parseLong(parts[i + 1]);
+            }
+        } catch (NumberFormatException e) {
+            throw new ProtocolException(String.format("Invalid %s message: %s", command, message));
+        }
+
+        return numbers;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.consoledownloader.cluster;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.downloader.DownloadListener;
+import com.example.consoledownloader.downloader.Downloader;
+import com.example.consoledownloader.downloader.DownloaderLogRecord;
+import com.example.consoledownloader.downloader.LinkDownloader;
+import com.google.common.net.HostAndPort;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Downloads the batches of a coordinator one by one until it has no more. A batch is a link file for
+ * the downloader, so all the options of the worker apply to it except the link file. The batches are one
+ * download session, so the metrics file, the slowest downloads and the cache counts are of the whole run.
+ */
+public class Worker {
+    private final LinkDownloader linkDownloader;
+    private final DownloadListener listener;
+    private Downloader.Result downloadResult;
+
+    public Worker(LinkDownloader linkDownloader, DownloadListener listener) {
+        this.linkDownloader = linkDownloader;
+        this.listener = listener;
+    }
+
+    /**
+     * @param coordinator the HOST:PORT of the coordinator
+     * @return the sum of the results of the batches which the worker has downloaded
+     */
+    public BatchResult run(String coordinator, Options options) throws IOException {
+        HostAndPort address;
+        try {
+            address = HostAndPort.fromString(coordinator);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("Invalid address of the coordinator: %s", coordinator), e);
+        }
+        if (!address.hasPort()) {
+            throw new IOException(String.format("The address of the coordinator has no port: %s", coordinator));
+        }
+
+        BatchResult total = BatchResult.EMPTY;
+        CountingListener countingListener = new CountingListener(listener);
+
+        try (Downloader.Session session = new Downloader(linkDownloader, countingListener, false)
+                 .openSession(options);
+             Socket socket = new Socket(address.getHost(), address.getPort());
+             BufferedReader in = Protocol.reader(socket);
+             BufferedWriter out = Protocol.writer(socket)) {
+
+            downloadResult = session.getResult();
+
+            while (true) {
+                Protocol.writeLine(out, Protocol.NEXT);
+                out.flush();
+
+                String message = in.readLine();
+                if (message == null) {
+                    throw new EOFException("The coordinator has closed the connection");
+                } else if (message.equals(Protocol.DONE)) {
+                    return total;
+                }
+
+                long[] numbers = Protocol.parse(message, Protocol.BATCH, 2);
+                int id = (int) numbers[0];
+                Path batchFile = Files.createTempFile("consoledownloader-batch", ".links");
+
+                try {
+                    receive(in, numbers[1], batchFile);
+                    BatchResult result = download(session, countingListener, batchFile);
+                    total = total.plus(result);
+
+                    Protocol.writeLine(out, Protocol.formatResult(id, result));
+                } finally {
+                    Files.deleteIfExists(batchFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the result of all the batches of the last run, e.g. its slowest downloads, or {@code null} if
+     * the worker hasn't run
+     */
+    public Downloader.Result getDownloadResult() {
+        return downloadResult;
+    }
+
+    private static void receive(BufferedReader in, long lineCount, Path batchFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(batchFile, StandardCharsets.UTF_8)) {
+            for (long i = 0; i < lineCount; i++) {
+                String line = in.readLine();
+                if (line == null) {
+                    throw new EOFException("The coordinator has closed the connection in the middle of a batch");
+                }
+
+                Protocol.writeLine(writer, line);
+            }
+        }
+    }
+
+    /**
+     * @return the result of the batch alone, the counts of the session are the sums of all the batches so far
+     */
+    private static BatchResult download(Downloader.Session session, CountingListener countingListener,
+                                        Path batchFile) {
+        long previousByteCount = session.getResult().getByteCount();
+        Downloader.Result result = session.download(batchFile);
+
+        return new BatchResult(countingListener.succeededCount.sumThenReset(),
+            countingListener.failedCount.sumThenReset(), result.getByteCount() - previousByteCount);
+    }
+
+    private static class CountingListener implements DownloadListener {
+        private final DownloadListener delegate;
+        private final LongAdder succeededCount = new LongAdder();
+        private final LongAdder failedCount = new LongAdder();
+
+        CountingListener(DownloadListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onQueued(String link, String dest) {
+            delegate.onQueued(link, dest);
+        }
+
+        @Override
+        public void onStart(String link, String dest) {
+            delegate.onStart(link, dest);
+        }
+
+        @Override
+        public void onProgress(String link, long byteCount) {
+            delegate.onProgress(link, byteCount);
+        }
+
+        @Override
+        public void onSuccess(String link, long byteCount, DownloaderLogRecord logRecord) {
+            succeededCount.increment();
+            delegate.onSuccess(link, byteCount, logRecord);
+        }
+
+        @Override
+        public void onFailure(String link, DownloaderLogRecord logRecord) {
+            failedCount.increment();
+            delegate.onFailure(link, logRecord);
+        }
+
+        @Override
+        public void onCopy(String link, DownloaderLogRecord logRecord) {
+            if (logRecord.getType() == DownloaderLogRecord.Type.DOWNLOAD_SUCCESS) {
+                succeededCount.increment();
+            } else {
+                failedCount.increment();
+            }
+            delegate.onCopy(link, logRecord);
+        }
+
+        @Override
+        public void onSystemError(DownloaderLogRecord logRecord) {
+            failedCount.increment();
+            delegate.onSystemError(logRecord);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.consoledownloader.downloader;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+
+/**
+ * A link downloader which writes files without occupying a thread per transfer.
+ */
+public interface AsyncLinkDownloader extends LinkDownloader {
+    boolean isAsyncSupported(String link);
+
+    /**
+     * Starts downloading the link into the file.
+     *
+     * @param timings gets the phases which the downloader measures, e.g. the dns
+     * @return the future of the number of bytes written to the file, it completes exceptionally
+     * with an {@link java.io.IOException} if the download fails
+     */
+    CompletableFuture<Long> downloadTo(String link, Path path, LongConsumer progressConsumer,
+                                       LinkTimings.Builder timings);
+
+    default CompletableFuture<Long> downloadTo(String link, Path path, LongConsumer progressConsumer) {
+        return downloadTo(link, path, progressConsumer, new LinkTimings.Builder());
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The copy buffers which the download threads share, a released buffer is taken by the next copy, so a run
+ * allocates no more buffers than it copies at once. At most {@code maxPooled} idle buffers are kept.
+ * A bounded pool also limits the buffers which are taken at once, a copy beyond them waits for a released one,
+ * so the transfers slow down instead of taking more memory.
+ * <p>
+ * The buffers are on the heap: the blocking engine gives an input stream, which reads only into an array.
+ * A write of a heap buffer to a file channel goes through the temporary direct buffer which the JDK keeps
+ * per thread, so a direct buffer here would add a copy rather than save one.
+ */
+class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> idleBuffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicLong allocatedCount = new AtomicLong();
+    private final Semaphore permits;
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this(bufferSize, maxPooled, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxAcquired the buffers which are taken at once
+     */
+    BufferPool(int bufferSize, int maxPooled, int maxAcquired) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.permits = new Semaphore(maxAcquired);
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return the number of the buffers allocated since the pool was created
+     */
+    long getAllocatedCount() {
+        return allocatedCount.get();
+    }
+
+    ByteBuffer acquire() throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a copy buffer");
+        }
+
+        ByteBuffer buffer = idleBuffers.poll();
+
+        if (buffer == null) {
+            allocatedCount.incrementAndGet();
+            return ByteBuffer.allocate(bufferSize);
+        }
+
+        idleCount.decrementAndGet();
+        buffer.clear();
+
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (idleCount.incrementAndGet() <= maxPooled) {
+            idleBuffers.offer(buffer);
+        } else {
+            idleCount.decrementAndGet();
+        }
+
+        permits.release();
+    }
+
+    /**
+     * Copies the input to the channel from its position, the buffer is filled before it's written, so a large
+     * buffer takes a few large writes.
+     *
+     * @return the number of copied bytes
+     */
+    long copy(InputStream input, FileChannel channel) throws IOException {
+        ByteBuffer buffer = acquire();
+        long byteCount = 0;
+
+        try {
+            while (fill(input, buffer)) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byteCount += channel.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            release(buffer);
+        }
+
+        return byteCount;
+    }
+
+    /**
+     * @return the number of copied bytes
+     */
+    long copy(InputStream input, OutputStream output) throws IOException {
+        ByteBuffer buffer = acquire();
+        long byteCount = 0;
+
+        try {
+            while (fill(input, buffer)) {
+                output.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+                byteCount += buffer.position();
+                buffer.clear();
+            }
+        } finally {
+            release(buffer);
+        }
+
+        return byteCount;
+    }
+
+    /**
+     * Reads until the buffer is full or the input ends.
+     *
+     * @return {@code false} if the input has ended and nothing has been read
+     */
+    static boolean fill(InputStream input, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = input.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read < 0) {
+                break;
+            }
+            buffer.position(buffer.position() + read);
+        }
+
+        return buffer.position() > 0;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.consoledownloader.downloader;
+
+class ByteRange {
+    final long start;
+    final long end;
+
+    ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    long length() {
+        return end - start + 1;
+    }
+
+    @Override
+    public String toString() {
+        return start + "-" + end;
+    }
+}
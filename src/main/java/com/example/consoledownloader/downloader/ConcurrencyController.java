@@ -0,0 +1,218 @@
+package com.example.consoledownloader.downloader;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of active transfers and tunes the limit from the measured throughput and errors, like TCP
+ * congestion control. The limit doubles while the throughput grows, then grows by one. When a step up doesn't
+ * gain {@link #MIN_GAIN}, the limit steps back to where it was and holds there for a while before probing again.
+ * Errors cut the limit by a quarter. The limit never exceeds the ceiling and isn't raised while the transfers
+ * already reach the speed limit or don't use the current limit.
+ */
+class ConcurrencyController implements DownloadListener, AutoCloseable {
+    static final double MIN_GAIN = 0.05;
+    static final double MAX_ERROR_RATE = 0.1;
+    static final double SPEED_LIMIT_USAGE = 0.95;
+    static final int HOLD_TICKS = 10;
+    private static final int INITIAL_LIMIT = 2;
+
+    private final int ceiling;
+    private final long speedLimit;
+    private final ResizableSemaphore permits;
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger maxActiveCount = new AtomicInteger();
+    private final LongAdder byteCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final ScheduledExecutorService scheduler;
+    private final long intervalNanos;
+    private volatile Runnable limitListener = () -> { };
+    private long lastTickNanos = System.nanoTime();
+    private volatile int limit;
+    private double previousThroughput;
+    private boolean slowStart = true;
+    private boolean probing;
+    private int probeBase;
+    private int holdTicks;
+
+    private ConcurrencyController(int ceiling, int initialLimit, long speedLimit, long intervalMillis,
+                                  boolean scheduled) {
+        this.ceiling = Math.max(1, ceiling);
+        this.speedLimit = speedLimit;
+        this.limit = Math.max(1, Math.min(initialLimit, this.ceiling));
+        this.permits = new ResizableSemaphore(limit);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+
+        if (scheduled) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "concurrency-controller");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.scheduler.scheduleAtFixedRate(this::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * @param ceiling    the hard limit of active transfers
+     * @param speedLimit the global speed limit in bytes per second or 0
+     */
+    static ConcurrencyController start(int ceiling, long speedLimit, long intervalMillis) {
+        return new ConcurrencyController(ceiling, INITIAL_LIMIT, speedLimit, intervalMillis, true);
+    }
+
+    /**
+     * The controller which never blocks, for the runs with the fixed number of threads.
+     */
+    static ConcurrencyController unlimited() {
+        return new ConcurrencyController(Integer.MAX_VALUE, Integer.MAX_VALUE, 0, 1000, false);
+    }
+
+    /**
+     * The controller which isn't tuned by the timer, the tests drive it through {@link #adjust}.
+     */
+    static ConcurrencyController manual(int ceiling, long speedLimit) {
+        return new ConcurrencyController(ceiling, INITIAL_LIMIT, speedLimit, 1000, false);
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limitListener is called after the limit has been raised, so the waiting transfers may start
+     */
+    void setLimitListener(Runnable limitListener) {
+        this.limitListener = limitListener;
+    }
+
+    /**
+     * Blocks until the number of active transfers is below the limit.
+     */
+    void acquire() throws InterruptedException {
+        permits.acquire();
+        countActive();
+    }
+
+    /**
+     * @return false if the number of active transfers has reached the limit
+     */
+    boolean tryAcquire() {
+        if (!permits.tryAcquire()) {
+            return false;
+        }
+
+        countActive();
+        return true;
+    }
+
+    private void countActive() {
+        int active = activeCount.incrementAndGet();
+        maxActiveCount.accumulateAndGet(active, Math::max);
+    }
+
+    void release() {
+        activeCount.decrementAndGet();
+        permits.release();
+    }
+
+    @Override
+    public void onProgress(String link, long byteCount) {
+        this.byteCount.add(byteCount);
+    }
+
+    @Override
+    public void onSuccess(String link, long byteCount, DownloaderLogRecord logRecord) {
+        completedCount.increment();
+    }
+
+    @Override
+    public void onFailure(String link, DownloaderLogRecord logRecord) {
+        errorCount.increment();
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastTickNanos, intervalNanos) / 1e9;
+        lastTickNanos = now;
+
+        long errors = errorCount.sumThenReset();
+        long completed = completedCount.sumThenReset();
+        double errorRate = errors == 0 ? 0.0 : (double) errors / (errors + completed);
+        boolean saturated = maxActiveCount.getAndSet(activeCount.get()) >= limit;
+
+        int previousLimit = limit;
+        adjust(byteCount.sumThenReset() / seconds, errorRate, saturated);
+
+        if (limit > previousLimit) {
+            limitListener.run();
+        }
+    }
+
+    /**
+     * @param throughput the bytes per second since the previous adjustment
+     * @param saturated  whether the transfers have used the whole limit since the previous adjustment
+     */
+    synchronized void adjust(double throughput, double errorRate, boolean saturated) {
+        if (errorRate > MAX_ERROR_RATE) {
+            setLimit(limit - Math.max(1, limit / 4));
+            slowStart = false;
+            probing = false;
+            holdTicks = HOLD_TICKS;
+        } else if (holdTicks > 0) {
+            holdTicks--;
+        } else if (probing && throughput < previousThroughput * (1 + MIN_GAIN)) {
+            setLimit(probeBase);
+            slowStart = false;
+            probing = false;
+            holdTicks = HOLD_TICKS;
+        } else if (saturated && limit < ceiling
+            && (speedLimit <= 0 || throughput < speedLimit * SPEED_LIMIT_USAGE)) {
+            probeBase = limit;
+            setLimit(slowStart ? limit * 2 : limit + 1);
+            probing = true;
+        } else {
+            probing = false;
+        }
+
+        previousThroughput = throughput;
+    }
+
+    private void setLimit(int newLimit) {
+        int bounded = Math.max(1, Math.min(ceiling, newLimit));
+        int difference = bounded - limit;
+
+        if (difference > 0) {
+            permits.release(difference);
+        } else if (difference < 0) {
+            permits.reducePermits(-difference);
+        }
+
+        limit = bounded;
+    }
+
+    private static class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
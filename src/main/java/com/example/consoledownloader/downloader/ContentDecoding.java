@@ -0,0 +1,71 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.UnknownServiceException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes the body which the server has sent in gzip or deflate. The decoder reads the encoded body, so
+ * the streams beneath it, e.g. the speed limits and the progress, count the bytes which came over the wire.
+ */
+class ContentDecoding {
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+    private ContentDecoding() {
+    }
+
+    /**
+     * @param encoding the Content-Encoding of the body or an empty string if the body isn't encoded
+     * @return the decoded body, it closes the given one
+     * @throws UnknownServiceException if the encoding isn't gzip or deflate
+     */
+    static InputStream decode(String link, String encoding, InputStream input) throws IOException {
+        if (encoding.isEmpty()) {
+            return input;
+        } else if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+            return new GZIPInputStream(input, INPUT_BUFFER_SIZE);
+        } else if (encoding.equalsIgnoreCase("deflate")) {
+            return inflate(input);
+        }
+
+        throw new UnknownServiceException(String.format("%s: the content encoding \"%s\" isn't supported",
+            link, encoding));
+    }
+
+    /**
+     * The deflate encoding is the zlib format, but some servers send the raw deflate data, so the zlib header
+     * is checked.
+     */
+    private static InputStream inflate(InputStream input) throws IOException {
+        PushbackInputStream pushbackInput = new PushbackInputStream(input, 2);
+        byte[] header = new byte[2];
+        int read = 0;
+
+        while (read < header.length) {
+            int n = pushbackInput.read(header, read, header.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        pushbackInput.unread(header, 0, read);
+
+        boolean zlibWrapped = read == header.length && (header[0] & 0x0f) == 8
+            && ((header[0] & 0xff) << 8 | header[1] & 0xff) % 31 == 0;
+
+        return new InflaterInputStream(pushbackInput, new Inflater(!zlibWrapped), INPUT_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The files of a run by the SHA-256 of their contents. A download whose content is already on disk is replaced
+ * with a hard link to the earlier file. A destination whose hash is known up front claims the hash before
+ * the download, so the following destinations with the same hash wait for it instead of transferring
+ * the same content again.
+ */
+class ContentIndex {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final ConcurrentMap<String, CompletableFuture<Path>> contents = new ConcurrentHashMap<>();
+    private final ContentManifest manifest;
+    private final boolean enabled;
+
+    private ContentIndex(ContentManifest manifest, boolean enabled) {
+        this.manifest = manifest;
+        this.enabled = enabled;
+    }
+
+    static ContentIndex disabled() {
+        return new ContentIndex(ContentManifest.empty(), false);
+    }
+
+    static ContentIndex enabled(ContentManifest manifest) {
+        return new ContentIndex(manifest, true);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the claim of the link's known hash, it's {@code null} if the hash is unknown or the index is disabled
+     */
+    Claim claim(LinkDescription description) {
+        String hash = description.checksum.isEmpty() ? manifest.hashOf(description.dest) : description.checksum;
+        if (!enabled || hash.isEmpty()) {
+            return null;
+        }
+
+        CompletableFuture<Path> owned = new CompletableFuture<>();
+        CompletableFuture<Path> earlier = contents.putIfAbsent(hash, owned);
+
+        return earlier == null ? new Claim(hash, owned, null) : new Claim(hash, null, earlier);
+    }
+
+    /**
+     * Adds the downloaded file under the hash of its content.
+     *
+     * @return the earlier file with the same content or {@code null}
+     */
+    Path record(String hash, Path file) {
+        if (!enabled) {
+            return null;
+        }
+
+        CompletableFuture<Path> earlier = contents.putIfAbsent(hash, CompletableFuture.completedFuture(file));
+        if (earlier == null || !earlier.isDone()) {
+            return null;
+        }
+
+        Path earlierFile = earlier.join();
+        return earlierFile == null || earlierFile.equals(file) ? null : earlierFile;
+    }
+
+    /**
+     * Replaces the target with a hard link to the existing file, the target is kept if the link can't be made,
+     * e.g. on another file system.
+     *
+     * @return whether the target has been replaced
+     */
+    static boolean link(Path existing, Path target) {
+        Path tempPath = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+
+        try {
+            Files.createLink(tempPath, existing);
+            Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException ignored) {
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * The first claim of a hash owns it and completes it when its download ends, the others get the file of
+     * the owner or download by themselves if the owner has failed.
+     */
+    class Claim {
+        final String hash;
+        private final CompletableFuture<Path> owned;
+        private final CompletableFuture<Path> earlier;
+
+        private Claim(String hash, CompletableFuture<Path> owned, CompletableFuture<Path> earlier) {
+            this.hash = hash;
+            this.owned = owned;
+            this.earlier = earlier;
+        }
+
+        boolean isOwner() {
+            return owned != null;
+        }
+
+        /**
+         * @return the future of the owner's file, it completes with {@code null} if the owner has failed
+         */
+        CompletableFuture<Path> getEarlier() {
+            return earlier;
+        }
+
+        /**
+         * @param file the downloaded file or {@code null} if the download failed or its content has another hash
+         */
+        void complete(Path file) {
+            if (owned == null) {
+                return;
+            }
+
+            if (file == null) {
+                contents.remove(hash, owned);
+            }
+            owned.complete(file);
+        }
+    }
+}
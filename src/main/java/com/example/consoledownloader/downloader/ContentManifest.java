@@ -0,0 +1,62 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The known SHA-256 hashes of the destinations in the output of sha256sum: the hash, a space, a space or
+ * an asterisk and the file name.
+ */
+class ContentManifest {
+    private static final Pattern LINE_PATTERN = Pattern.compile("^([0-9a-fA-F]{64}) [ *](.+)$");
+
+    private final Map<String, String> hashes;
+
+    private ContentManifest(Map<String, String> hashes) {
+        this.hashes = hashes;
+    }
+
+    static ContentManifest empty() {
+        return new ContentManifest(Collections.emptyMap());
+    }
+
+    static ContentManifest read(Path path) throws IOException {
+        Map<String, String> hashes = new HashMap<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                Matcher matcher = LINE_PATTERN.matcher(line);
+                if (!matcher.matches()) {
+                    throw new LinkFormatException(String.format("%s:%d: \"%s\" isn't a hash and a file name",
+                        path, lineNumber, line));
+                }
+                hashes.put(matcher.group(2), matcher.group(1).toLowerCase());
+            }
+        }
+
+        return new ContentManifest(hashes);
+    }
+
+    /**
+     * @return the hash of the destination or the empty string if it's unknown
+     */
+    String hashOf(String dest) {
+        return hashes.getOrDefault(dest, "");
+    }
+}
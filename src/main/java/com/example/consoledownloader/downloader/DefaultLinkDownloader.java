@@ -2,12 +2,136 @@ package com.example.consoledownloader.downloader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 
 public class DefaultLinkDownloader implements LinkDownloader {
+    private static final String ACCEPT_RANGES_BYTES = "bytes";
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+    private static final String IDENTITY_ENCODING = "identity";
+
     @Override
     public InputStream download(String link) throws IOException {
-        URL url = new URL(link);
-        return url.openStream();
+        URLConnection connection = new URL(link).openConnection();
+
+        if (connection instanceof HttpURLConnection) {
+            checkStatus(link, (HttpURLConnection) connection);
+        }
+
+        return connection.getInputStream();
+    }
+
+    @Override
+    public LinkInfo probe(String link) throws IOException {
+        URLConnection connection = new URL(link).openConnection();
+
+        if (!(connection instanceof HttpURLConnection)) {
+            return LinkInfo.unknown();
+        }
+
+        HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        httpConnection.setRequestMethod("HEAD");
+
+        try {
+            int code = httpConnection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException(String.format("%s: HEAD request failed with HTTP code %d", link, code));
+            }
+
+            return readInfo(httpConnection);
+        } finally {
+            httpConnection.disconnect();
+        }
+    }
+
+    @Override
+    public LinkResponse open(LinkRequest request) throws IOException {
+        URLConnection connection = new URL(request.getLink()).openConnection();
+
+        if (!(connection instanceof HttpURLConnection)) {
+            return LinkDownloader.super.open(request);
+        }
+
+        HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        if (request.hasRange()) {
+            httpConnection.setRequestProperty("Range", formatRange(request));
+
+            if (!request.getRangeValidator().isEmpty()) {
+                httpConnection.setRequestProperty("If-Range", request.getRangeValidator());
+            }
+        }
+
+        if (request.isCompressionAccepted()) {
+            httpConnection.setRequestProperty("Accept-Encoding", ACCEPTED_ENCODINGS);
+        }
+        if (!request.getIfNoneMatch().isEmpty()) {
+            httpConnection.setRequestProperty("If-None-Match", request.getIfNoneMatch());
+        }
+        if (!request.getIfModifiedSince().isEmpty()) {
+            httpConnection.setRequestProperty("If-Modified-Since", request.getIfModifiedSince());
+        }
+
+        LinkTimings.Builder timings = new LinkTimings.Builder();
+        long phaseStartNanos = System.nanoTime();
+
+        // HttpURLConnection resolves the host and makes the TLS handshake inside the connect, so the dns phase
+        // stays unknown and the connect one has them all
+        httpConnection.connect();
+        long nowNanos = System.nanoTime();
+        timings.connect(nowNanos - phaseStartNanos);
+        phaseStartNanos = nowNanos;
+
+        checkStatus(request.getLink(), httpConnection);
+        InputStream input = httpConnection.getInputStream();
+        int code = httpConnection.getResponseCode();
+        timings.serverWait(System.nanoTime() - phaseStartNanos);
+
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            input.close();
+            return LinkResponse.notModified(readInfo(httpConnection), timings.build());
+        }
+
+        if (request.hasRange() && code != HttpURLConnection.HTTP_PARTIAL) {
+            input.close();
+            throw new RangeIgnoredException(request.getLink(), code);
+        }
+
+        return new LinkResponse(input, readInfo(httpConnection, request.isCompressionAccepted()),
+            timings.build());
+    }
+
+    private static void checkStatus(String link, HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+
+        if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            throw new HttpStatusException(link, code,
+                HttpStatusException.parseRetryAfter(connection.getHeaderField("Retry-After")));
+        }
+    }
+
+    private static String formatRange(LinkRequest request) {
+        String end = request.getRangeEnd() == LinkRequest.NO_RANGE ? "" : String.valueOf(request.getRangeEnd());
+        return String.format("bytes=%d-%s", request.getRangeStart(), end);
+    }
+
+    private static LinkInfo readInfo(HttpURLConnection connection) {
+        return readInfo(connection, false);
+    }
+
+    /**
+     * @param compressionAccepted whether the Content-Encoding is taken, otherwise the body is saved as is,
+     *                            as some servers label compressed files with it
+     */
+    private static LinkInfo readInfo(HttpURLConnection connection, boolean compressionAccepted) {
+        String encoding = compressionAccepted ? connection.getHeaderField("Content-Encoding") : null;
+
+        return new LinkInfo.Builder()
+            .contentLength(connection.getHeaderFieldLong("Content-Length", LinkInfo.UNKNOWN_LENGTH))
+            .rangeSupported(ACCEPT_RANGES_BYTES.equalsIgnoreCase(connection.getHeaderField("Accept-Ranges")))
+            .etag(connection.getHeaderField("ETag"))
+            .lastModified(connection.getHeaderField("Last-Modified"))
+            .contentEncoding(IDENTITY_ENCODING.equalsIgnoreCase(encoding) ? null : encoding)
+            .build();
     }
 }
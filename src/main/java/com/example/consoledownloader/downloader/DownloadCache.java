@@ -0,0 +1,271 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The downloaded files which are kept between runs. Every file is stored once under the SHA-256 of its content,
+ * the entry of a link keeps its validators and the hash of its content. The least recently used files are evicted
+ * when the cache grows larger than its size, the last use of a file is its modification time, so the order
+ * survives the restarts. The entries of the evicted files are dropped when they are looked up.
+ */
+class DownloadCache {
+    private static final String OBJECTS_DIR = "objects";
+    private static final String ENTRIES_DIR = "entries";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String HEADER = "console-downloader-cache 1";
+    private static final String LINK_KEY = "link";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "last-modified";
+    private static final String HASH_KEY = "sha256";
+
+    private final Path objectsDir;
+    private final Path entriesDir;
+    private final long maxSize;
+    private final LinkedHashMap<String, Long> objectSizes = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private DownloadCache(Path dir, long maxSize) {
+        this.objectsDir = dir == null ? null : dir.resolve(OBJECTS_DIR);
+        this.entriesDir = dir == null ? null : dir.resolve(ENTRIES_DIR);
+        this.maxSize = maxSize;
+    }
+
+    static DownloadCache disabled() {
+        return new DownloadCache(null, 0);
+    }
+
+    static DownloadCache open(Options options) throws IOException {
+        if (options.getCacheDir().isEmpty()) {
+            return disabled();
+        }
+
+        DownloadCache cache = new DownloadCache(Paths.get(options.getCacheDir()), options.getCacheSize());
+        Files.createDirectories(cache.objectsDir);
+        Files.createDirectories(cache.entriesDir);
+        cache.loadObjects();
+
+        return cache;
+    }
+
+    boolean isEnabled() {
+        return objectsDir != null;
+    }
+
+    /**
+     * @return the entry of the link or {@code null} if the link or its content isn't cached
+     */
+    Entry lookup(String link) throws IOException {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Path entryPath = entriesDir.resolve(hashOf(link));
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(entryPath, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        Entry entry = Entry.parse(lines);
+        if (entry == null || !entry.link.equals(link) || !contains(entry.hash)) {
+            Files.deleteIfExists(entryPath);
+            return null;
+        }
+
+        return entry;
+    }
+
+    synchronized boolean contains(String hash) {
+        return objectSizes.containsKey(hash);
+    }
+
+    /**
+     * Makes the target from the cached content, the target is replaced. A hard link is made only if it's
+     * the duplicate mode, otherwise a change of the target would change the cache.
+     *
+     * @return {@code false} if the content has been evicted
+     */
+    boolean materialize(String hash, Path target, Options.DuplicateMode mode) throws IOException {
+        Path objectPath = objectsDir.resolve(hash);
+
+        try {
+            touch(hash, objectPath);
+            Files.deleteIfExists(target);
+            FileFanOut.duplicate(objectPath, target,
+                mode == Options.DuplicateMode.LINK ? Options.DuplicateMode.LINK : Options.DuplicateMode.COPY);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Deletes the target before it's downloaded again, it may be a hard link to the cached content which
+     * mustn't be written through. The partially downloaded target is kept for the resume.
+     */
+    void detach(Path target) throws IOException {
+        if (isEnabled() && !Files.exists(DownloadJournal.pathFor(target))) {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    /**
+     * Stores the downloaded file under its hash and points the link's entry to it.
+     */
+    void store(String link, LinkInfo info, String hash, Path file) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+
+        if (!contains(hash)) {
+            Path tempPath = objectsDir.resolve(UUID.randomUUID() + TEMP_SUFFIX);
+            try {
+                FileFanOut.duplicate(file, tempPath, Options.DuplicateMode.COPY);
+                Files.move(tempPath, objectsDir.resolve(hash), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+            add(hash, Files.size(objectsDir.resolve(hash)));
+        } else {
+            touch(hash, objectsDir.resolve(hash));
+        }
+
+        Path tempEntryPath = entriesDir.resolve(UUID.randomUUID() + TEMP_SUFFIX);
+        Files.write(tempEntryPath, new Entry(link, info.getEtag(), info.getLastModified(), hash).format(),
+            StandardCharsets.UTF_8);
+        Files.move(tempEntryPath, entriesDir.resolve(hashOf(link)), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the input which computes the hash of the content, it's complete after the input has been read
+     */
+    static HashingInputStream hashing(InputStream input) {
+        return new HashingInputStream(Hashing.sha256(), input);
+    }
+
+    static String hashOf(Path file) throws IOException {
+        try (HashingInputStream input = hashing(Files.newInputStream(file))) {
+            ByteStreams.exhaust(input);
+
+            return input.hash().toString();
+        }
+    }
+
+    private static String hashOf(String link) {
+        return Hashing.sha256().hashString(link, StandardCharsets.UTF_8).toString();
+    }
+
+    private void loadObjects() throws IOException {
+        List<Path> objects = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(objectsDir)) {
+            for (Path object : stream) {
+                if (object.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(object);
+                } else {
+                    objects.add(object);
+                }
+            }
+        }
+
+        Map<Path, FileTime> useTimes = new LinkedHashMap<>();
+        for (Path object : objects) {
+            useTimes.put(object, Files.getLastModifiedTime(object));
+        }
+        objects.sort(Comparator.comparing(useTimes::get));
+
+        for (Path object : objects) {
+            add(object.getFileName().toString(), Files.size(object));
+        }
+    }
+
+    private synchronized void add(String hash, long objectSize) throws IOException {
+        if (objectSizes.put(hash, objectSize) == null) {
+            size += objectSize;
+        }
+
+        Iterator<Map.Entry<String, Long>> eldest = objectSizes.entrySet().iterator();
+        while (size > maxSize && objectSizes.size() > 1 && eldest.hasNext()) {
+            Map.Entry<String, Long> object = eldest.next();
+            if (object.getKey().equals(hash)) {
+                continue;
+            }
+
+            Files.deleteIfExists(objectsDir.resolve(object.getKey()));
+            size -= object.getValue();
+            eldest.remove();
+        }
+    }
+
+    private void touch(String hash, Path objectPath) throws IOException {
+        synchronized (this) {
+            objectSizes.get(hash);
+        }
+        Files.setLastModifiedTime(objectPath, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    static class Entry {
+        final String link;
+        final String etag;
+        final String lastModified;
+        final String hash;
+
+        Entry(String link, String etag, String lastModified, String hash) {
+            this.link = link;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        private static Entry parse(List<String> lines) {
+            if (lines.size() != 5 || !HEADER.equals(lines.get(0))) {
+                return null;
+            }
+
+            String[] values = new String[4];
+            String[] keys = { LINK_KEY, ETAG_KEY, LAST_MODIFIED_KEY, HASH_KEY };
+            for (int i = 0; i < keys.length; i++) {
+                String line = lines.get(i + 1);
+                if (!line.startsWith(keys[i] + " ")) {
+                    return null;
+                }
+                values[i] = line.substring(keys[i].length() + 1);
+            }
+
+            return new Entry(values[0], values[1], values[2], values[3]);
+        }
+
+        private List<String> format() {
+            return Arrays.asList(HEADER,
+                LINK_KEY + " " + link,
+                ETAG_KEY + " " + etag,
+                LAST_MODIFIED_KEY + " " + lastModified,
+                HASH_KEY + " " + hash);
+        }
+    }
+}
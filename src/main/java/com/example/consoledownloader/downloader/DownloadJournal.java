@@ -0,0 +1,206 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The sidecar file next to a partially downloaded file. It keeps the validators of the remote file
+ * and the byte ranges which are already on disk, one appended line per completed range.
+ */
+class DownloadJournal implements Closeable {
+    private static final String SUFFIX = ".journal";
+    private static final String HEADER = "console-downloader-journal 1";
+    private static final String LENGTH_KEY = "length";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "last-modified";
+    private static final String RANGE_KEY = "range";
+
+    private final Path journalPath;
+    private final long contentLength;
+    private final String etag;
+    private final String lastModified;
+    private final TreeMap<Long, Long> completedRanges = new TreeMap<>();
+    private final boolean restarted;
+    private boolean continued;
+    private BufferedWriter writer;
+
+    private DownloadJournal(Path journalPath, long contentLength, String etag, String lastModified,
+                            boolean restarted) {
+        this.journalPath = journalPath;
+        this.contentLength = contentLength;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.restarted = restarted;
+    }
+
+    static boolean isResumable(LinkInfo info) {
+        return info.isRangeSupported() && info.isLengthKnown() && info.hasValidator();
+    }
+
+    static Path pathFor(Path file) {
+        return Paths.get(file.toString() + SUFFIX);
+    }
+
+    static void deleteFor(Path file) throws IOException {
+        Files.deleteIfExists(pathFor(file));
+    }
+
+    /**
+     * Continues the existing journal if the remote file is still the same, otherwise starts a new one.
+     */
+    static DownloadJournal open(Path file, LinkInfo info) throws IOException {
+        Path journalPath = pathFor(file);
+        boolean journalExists = Files.isRegularFile(journalPath);
+
+        if (journalExists && Files.isRegularFile(file)) {
+            DownloadJournal journal = read(journalPath);
+
+            if (journal != null && journal.matches(info)) {
+                journal.continued = true;
+                journal.openWriter(StandardOpenOption.APPEND);
+                return journal;
+            }
+        }
+
+        DownloadJournal journal = new DownloadJournal(journalPath, info.getContentLength(), info.getEtag(),
+            info.getLastModified(), journalExists);
+        journal.openWriter(StandardOpenOption.TRUNCATE_EXISTING);
+        journal.writeLine(HEADER);
+        journal.writeLine(LENGTH_KEY + " " + journal.contentLength);
+        journal.writeLine(ETAG_KEY + " " + journal.etag);
+        journal.writeLine(LAST_MODIFIED_KEY + " " + journal.lastModified);
+
+        return journal;
+    }
+
+    private static DownloadJournal read(Path journalPath) throws IOException {
+        List<String> lines = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+
+        if (lines.size() < 4 || !HEADER.equals(lines.get(0))) {
+            return null;
+        }
+
+        try {
+            DownloadJournal journal = new DownloadJournal(journalPath,
+                Long.parseLong(readValue(lines.get(1), LENGTH_KEY)),
+                readValue(lines.get(2), ETAG_KEY),
+                readValue(lines.get(3), LAST_MODIFIED_KEY),
+                false);
+
+            for (String line : lines.subList(4, lines.size())) {
+                String[] parts = readValue(line, RANGE_KEY).split(" ");
+                if (parts.length == 2) {
+                    journal.addRange(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                }
+            }
+
+            return journal;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String readValue(String line, String key) {
+        if (!line.startsWith(key + " ")) {
+            throw new IllegalArgumentException(String.format("The journal line \"%s\" has no key %s", line, key));
+        }
+
+        return line.substring(key.length() + 1);
+    }
+
+    boolean isRestarted() {
+        return restarted;
+    }
+
+    /**
+     * @return whether the journal is of the partial file which is there, otherwise the file is downloaded anew
+     */
+    boolean isContinued() {
+        return continued;
+    }
+
+    synchronized long getCompletedByteCount() {
+        return completedRanges.entrySet().stream()
+            .mapToLong(entry -> entry.getValue() - entry.getKey() + 1)
+            .sum();
+    }
+
+    synchronized List<ByteRange> getMissingRanges() {
+        List<ByteRange> missing = new ArrayList<>();
+        long position = 0;
+
+        for (Map.Entry<Long, Long> range : completedRanges.entrySet()) {
+            if (range.getKey() > position) {
+                missing.add(new ByteRange(position, range.getKey() - 1));
+            }
+            position = Math.max(position, range.getValue() + 1);
+        }
+
+        if (position < contentLength) {
+            missing.add(new ByteRange(position, contentLength - 1));
+        }
+
+        return missing;
+    }
+
+    synchronized void markCompleted(long start, long end) throws IOException {
+        addRange(start, end);
+        writeLine(String.format("%s %d %d", RANGE_KEY, start, end));
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(journalPath);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private boolean matches(LinkInfo info) {
+        return contentLength == info.getContentLength()
+            && etag.equals(info.getEtag())
+            && lastModified.equals(info.getLastModified());
+    }
+
+    private void addRange(long start, long end) {
+        Map.Entry<Long, Long> previous = completedRanges.floorEntry(start);
+        if (previous != null && previous.getValue() + 1 >= start) {
+            start = previous.getKey();
+            end = Math.max(end, previous.getValue());
+        }
+
+        Map.Entry<Long, Long> next;
+        while ((next = completedRanges.ceilingEntry(start + 1)) != null && next.getKey() <= end + 1) {
+            end = Math.max(end, next.getValue());
+            completedRanges.remove(next.getKey());
+        }
+
+        completedRanges.put(start, end);
+    }
+
+    private void openWriter(StandardOpenOption mode) throws IOException {
+        writer = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, mode);
+    }
+
+    private void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+        writer.flush();
+    }
+}
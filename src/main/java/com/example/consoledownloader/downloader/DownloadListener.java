@@ -0,0 +1,34 @@
+package com.example.consoledownloader.downloader;
+
+/**
+ * Receives the events of a download run as they happen. The methods are called from the download threads
+ * concurrently, so an implementation must be thread-safe.
+ */
+public interface DownloadListener {
+    DownloadListener NONE = new DownloadListener() {
+    };
+
+    /**
+     * The link has been read from the file and waits for its turn, it's started later.
+     */
+    default void onQueued(String link, String dest) {
+    }
+
+    default void onStart(String link, String dest) {
+    }
+
+    default void onProgress(String link, long byteCount) {
+    }
+
+    default void onSuccess(String link, long byteCount, DownloaderLogRecord logRecord) {
+    }
+
+    default void onFailure(String link, DownloaderLogRecord logRecord) {
+    }
+
+    default void onCopy(String link, DownloaderLogRecord logRecord) {
+    }
+
+    default void onSystemError(DownloaderLogRecord logRecord) {
+    }
+}
@@ -0,0 +1,428 @@
+package com.example.consoledownloader.downloader;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The counters and histograms of one run. The download threads only add to them, the exporter reads them,
+ * so a sample of the run is consistent per counter rather than across them.
+ * <p>
+ * The latencies of a link are measured from its start, not from its queueing: the time to the first byte
+ * of the body and the time to the end of the download. The throughput of a link is its bytes received over
+ * the wire per second of the download.
+ */
+class DownloadMetrics {
+    static final String PREFIX = "consoledownloader_";
+    static final double[] SECONDS_BUCKETS = { 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300 };
+    static final double[] SPEED_BUCKETS = { 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024,
+        16 * 1024 * 1024, 64 * 1024 * 1024, 256 * 1024 * 1024 };
+    private static final String SYSTEM_ERROR = "system";
+    private static final String CHECKSUM_ERROR = "checksum";
+    private static final String OTHER_ERROR = "other";
+    private static final DownloadMetrics DISABLED = new DownloadMetrics(false, System::nanoTime);
+
+    private final boolean enabled;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final ConcurrentMap<String, LinkTiming> timings = new ConcurrentHashMap<>();
+    private final LongAdder receivedByteCount = new LongAdder();
+    private final LongAdder writtenByteCount = new LongAdder();
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder startedCount = new LongAdder();
+    private final LongAdder successCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder checksumMismatchCount = new LongAdder();
+    private final LongAdder copySuccessCount = new LongAdder();
+    private final LongAdder copyFailureCount = new LongAdder();
+    private final LongAdder cacheHitCount = new LongAdder();
+    private final LongAdder cacheMissCount = new LongAdder();
+    private final LongAdder rateLimitWaitNanos = new LongAdder();
+    private final Map<String, LongAdder> errorCounts = new LinkedHashMap<>();
+    private final Map<RetryPolicy.ErrorClass, LongAdder> retryCounts = new EnumMap<>(RetryPolicy.ErrorClass.class);
+    private final Histogram timeToFirstByte = new Histogram(SECONDS_BUCKETS);
+    private final Histogram downloadTime = new Histogram(SECONDS_BUCKETS);
+    private final Histogram throughput = new Histogram(SPEED_BUCKETS);
+
+    DownloadMetrics(boolean enabled, LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+
+        for (RetryPolicy.ErrorClass errorClass : RetryPolicy.ErrorClass.values()) {
+            errorCounts.put(errorClass.name().toLowerCase(Locale.ROOT), new LongAdder());
+            retryCounts.put(errorClass, new LongAdder());
+        }
+        errorCounts.put(CHECKSUM_ERROR, new LongAdder());
+        errorCounts.put(SYSTEM_ERROR, new LongAdder());
+        errorCounts.put(OTHER_ERROR, new LongAdder());
+    }
+
+    static DownloadMetrics disabled() {
+        return DISABLED;
+    }
+
+    static DownloadMetrics enabled() {
+        return new DownloadMetrics(true, System::nanoTime);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void queued(String link) {
+        if (enabled && timings.putIfAbsent(link, new LinkTiming()) == null) {
+            queuedCount.increment();
+        }
+    }
+
+    /**
+     * The copies and the other destinations of a link start it again, only the first start is taken.
+     */
+    void started(String link) {
+        LinkTiming timing = enabled ? timings.get(link) : null;
+
+        if (timing != null && timing.startNanos == 0) {
+            timing.startNanos = nanoClock.getAsLong();
+            startedCount.increment();
+        }
+    }
+
+    void received(String link, long byteCount) {
+        if (!enabled) {
+            return;
+        }
+
+        receivedByteCount.add(byteCount);
+
+        LinkTiming timing = timings.get(link);
+        if (timing != null) {
+            if (timing.firstByteNanos == 0) {
+                timing.firstByteNanos = nanoClock.getAsLong();
+            }
+            timing.byteCount.add(byteCount);
+        }
+    }
+
+    void succeeded(String link, long byteCount) {
+        if (enabled) {
+            writtenByteCount.add(byteCount);
+            successCount.increment();
+            finish(link);
+        }
+    }
+
+    /**
+     * @param errorClass the class of the last failure or {@code null} if it's not an I/O failure
+     */
+    void failed(String link, RetryPolicy.ErrorClass errorClass) {
+        if (enabled) {
+            failureCount.increment();
+            errorCounts.get(errorClass == null ? OTHER_ERROR : errorClass.name().toLowerCase(Locale.ROOT))
+                .increment();
+            finish(link);
+        }
+    }
+
+    void checksumMismatched(String link, long byteCount) {
+        if (enabled) {
+            writtenByteCount.add(byteCount);
+            checksumMismatchCount.increment();
+            errorCounts.get(CHECKSUM_ERROR).increment();
+            finish(link);
+        }
+    }
+
+    void copied(boolean success) {
+        if (enabled) {
+            (success ? copySuccessCount : copyFailureCount).increment();
+        }
+    }
+
+    void systemError() {
+        if (enabled) {
+            errorCounts.get(SYSTEM_ERROR).increment();
+        }
+    }
+
+    void retried(RetryPolicy.ErrorClass errorClass) {
+        if (enabled) {
+            retryCounts.get(errorClass).increment();
+        }
+    }
+
+    void cacheHit() {
+        if (enabled) {
+            cacheHitCount.increment();
+        }
+    }
+
+    void cacheMiss() {
+        if (enabled) {
+            cacheMissCount.increment();
+        }
+    }
+
+    /**
+     * @param nanos the time which a read waited for the speed limits
+     */
+    void rateLimitWaited(long nanos) {
+        if (enabled && nanos > 0) {
+            rateLimitWaitNanos.add(nanos);
+        }
+    }
+
+    private void finish(String link) {
+        LinkTiming timing = timings.remove(link);
+        if (timing == null) {
+            return;
+        }
+        if (timing.startNanos == 0) {
+            startedCount.increment();
+            return;
+        }
+
+        long nowNanos = nanoClock.getAsLong();
+        double seconds = toSeconds(nowNanos - timing.startNanos);
+        downloadTime.observe(seconds);
+
+        if (timing.firstByteNanos != 0) {
+            timeToFirstByte.observe(toSeconds(timing.firstByteNanos - timing.startNanos));
+        }
+        if (seconds > 0 && timing.byteCount.sum() > 0) {
+            throughput.observe(timing.byteCount.sum() / seconds);
+        }
+    }
+
+    /**
+     * @return the metrics at the moment, in the order of the export
+     */
+    List<Family> collect() {
+        long started = startedCount.sum();
+        Map<String, Number> downloads = new LinkedHashMap<>();
+        downloads.put("success", successCount.sum());
+        downloads.put("failure", failureCount.sum());
+        downloads.put("checksum_mismatch", checksumMismatchCount.sum());
+        Map<String, Number> copies = new LinkedHashMap<>();
+        copies.put("success", copySuccessCount.sum());
+        copies.put("failure", copyFailureCount.sum());
+        Map<String, Number> cache = new LinkedHashMap<>();
+        cache.put("hit", cacheHitCount.sum());
+        cache.put("miss", cacheMissCount.sum());
+        Map<String, Number> errors = new LinkedHashMap<>();
+        errorCounts.forEach((errorClass, count) -> errors.put(errorClass, count.sum()));
+        Map<String, Number> retries = new LinkedHashMap<>();
+        retryCounts.forEach((errorClass, count) -> retries.put(errorClass.name().toLowerCase(Locale.ROOT),
+            count.sum()));
+
+        List<Family> families = new ArrayList<>();
+        families.add(Family.gauge("run_seconds", "The time since the start of the run.",
+            toSeconds(nanoClock.getAsLong() - startNanos)));
+        families.add(Family.counter("received_bytes_total", "The bytes received over the wire.",
+            receivedByteCount.sum()));
+        families.add(Family.counter("written_bytes_total", "The bytes of the downloaded files.",
+            writtenByteCount.sum()));
+        families.add(Family.counter("downloads_total", "The finished downloads by their result.", "result",
+            downloads));
+        families.add(Family.counter("copies_total", "The copies of the repeated links by their result.", "result",
+            copies));
+        families.add(Family.counter("cache_lookups_total", "The downloads by whether the cache had the content.",
+            "result", cache));
+        families.add(Family.counter("errors_total", "The failed downloads and the system errors by their class.",
+            "class", errors));
+        families.add(Family.counter("retries_total", "The retries by the class of the failure.", "class",
+            retries));
+        families.add(Family.gauge("queued_links", "The links which wait for their turn.",
+            queuedCount.sum() - started));
+        families.add(Family.gauge("active_downloads", "The links which are being downloaded.",
+            started - successCount.sum() - failureCount.sum() - checksumMismatchCount.sum()));
+        families.add(Family.counter("rate_limit_wait_seconds_total", "The time the reads waited for the speed limits.",
+            toSeconds(rateLimitWaitNanos.sum())));
+        families.add(Family.histogram("time_to_first_byte_seconds", "The time from the start of a download to "
+            + "the first byte of the body.", timeToFirstByte));
+        families.add(Family.histogram("download_seconds", "The time from the start of a download to its end.",
+            downloadTime));
+        families.add(Family.histogram("throughput_bytes_per_second", "The bytes received per second of a download.",
+            throughput));
+
+        return families;
+    }
+
+    /**
+     * The Prometheus text format, the one which the textfile collector of the node exporter reads.
+     */
+    String formatPrometheus() {
+        StringBuilder text = new StringBuilder();
+
+        for (Family family : collect()) {
+            String name = PREFIX + family.name;
+            text.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+            if (family.histogram != null) {
+                Histogram histogram = family.histogram;
+                long[] counts = histogram.cumulativeCounts();
+                for (int i = 0; i < histogram.bounds.length; i++) {
+                    text.append(String.format("%s_bucket{le=\"%s\"} %d\n", name,
+                        formatNumber(histogram.bounds[i]), counts[i]));
+                }
+                text.append(String.format("%s_bucket{le=\"+Inf\"} %d\n", name, counts[counts.length - 1]));
+                text.append(String.format("%s_sum %s\n", name, formatNumber(histogram.sum.sum())));
+                text.append(String.format("%s_count %d\n", name, counts[counts.length - 1]));
+            } else if (family.label == null) {
+                text.append(String.format("%s %s\n", name, formatNumber(family.values.get(""))));
+            } else {
+                family.values.forEach((labelValue, value) -> text.append(String.format("%s{%s=\"%s\"} %s\n",
+                    name, family.label, labelValue, formatNumber(value))));
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * One object, the metrics are its fields by their Prometheus names without the prefix.
+     */
+    String formatJson() {
+        List<String> fields = new ArrayList<>();
+
+        for (Family family : collect()) {
+            String value;
+
+            if (family.histogram != null) {
+                Histogram histogram = family.histogram;
+                long[] counts = histogram.cumulativeCounts();
+                List<String> buckets = new ArrayList<>();
+                for (int i = 0; i < histogram.bounds.length; i++) {
+                    buckets.add(String.format("\"%s\": %d", formatNumber(histogram.bounds[i]), counts[i]));
+                }
+                buckets.add(String.format("\"+Inf\": %d", counts[counts.length - 1]));
+                value = String.format("{\"count\": %d, \"sum\": %s, \"buckets\": {%s}}", counts[counts.length - 1],
+                    formatNumber(histogram.sum.sum()), String.join(", ", buckets));
+            } else if (family.label == null) {
+                value = formatNumber(family.values.get(""));
+            } else {
+                List<String> labelled = new ArrayList<>();
+                family.values.forEach((labelValue, number) -> labelled.add(String.format("\"%s\": %s",
+                    labelValue, formatNumber(number))));
+                value = "{" + String.join(", ", labelled) + "}";
+            }
+
+            fields.add(String.format("  \"%s\": %s", family.name, value));
+        }
+
+        return "{\n" + String.join(",\n", fields) + "\n}\n";
+    }
+
+    private static double toSeconds(long nanos) {
+        return (double) nanos / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static String formatNumber(Number number) {
+        double value = number.doubleValue();
+
+        if (number instanceof Long || value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            return String.valueOf(number.longValue());
+        }
+
+        return String.valueOf(value);
+    }
+
+    private static class LinkTiming {
+        final LongAdder byteCount = new LongAdder();
+        volatile long startNanos;
+        volatile long firstByteNanos;
+    }
+
+    static class Histogram {
+        final double[] bounds;
+        private final LongAdder[] counts;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.counts = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+
+            counts[bucket].increment();
+            sum.add(value);
+        }
+
+        /**
+         * @return the number of the values up to every bound, the last one is the number of all values
+         */
+        long[] cumulativeCounts() {
+            long[] cumulative = new long[counts.length];
+            long total = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                total += counts[i].sum();
+                cumulative[i] = total;
+            }
+
+            return cumulative;
+        }
+    }
+
+    /**
+     * A metric with its values by the value of its label, an unlabelled metric has one value by the empty string.
+     */
+    static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final String label;
+        final Map<String, Number> values;
+        final Histogram histogram;
+
+        private Family(String name, String help, String type, String label, Map<String, Number> values,
+                       Histogram histogram) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.label = label;
+            this.values = values;
+            this.histogram = histogram;
+        }
+
+        static Family counter(String name, String help, Number value) {
+            return new Family(name, help, "counter", null, single(value), null);
+        }
+
+        static Family counter(String name, String help, String label, Map<String, Number> values) {
+            return new Family(name, help, "counter", label, values, null);
+        }
+
+        static Family gauge(String name, String help, Number value) {
+            return new Family(name, help, "gauge", null, single(value), null);
+        }
+
+        static Family histogram(String name, String help, Histogram histogram) {
+            return new Family(name, help, "histogram", null, null, histogram);
+        }
+
+        private static Map<String, Number> single(Number value) {
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put("", value);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.consoledownloader.downloader;
+
+/**
+ * Passes the events of one download run to the listener and sums them up into the result.
+ */
+class DownloadReport {
+    private final DownloadListener listener;
+    private final Downloader.Result result;
+    private final DownloadMetrics metrics;
+    private volatile DownloadListener observer = DownloadListener.NONE;
+
+    /**
+     * @param slowestCount the number of the slowest downloads which the result keeps
+     */
+    DownloadReport(DownloadListener listener, boolean logRetained, int slowestCount, DownloadMetrics metrics) {
+        this.listener = listener;
+        this.result = new Downloader.Result(logRetained, slowestCount);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the internal listener of the run, e.g. the concurrency controller, which sees the transfer events
+     * before the user's listener.
+     */
+    void setObserver(DownloadListener observer) {
+        this.observer = observer;
+    }
+
+    void queue(String link, String dest) {
+        metrics.queued(link);
+        listener.onQueued(link, dest);
+    }
+
+    void start(String link, String dest) {
+        metrics.started(link);
+        listener.onStart(link, dest);
+    }
+
+    /**
+     * @param byteCount the number of the bytes received over the wire
+     */
+    void progress(String link, long byteCount) {
+        result.addWireBytes(byteCount);
+        metrics.received(link, byteCount);
+        observer.onProgress(link, byteCount);
+        listener.onProgress(link, byteCount);
+    }
+
+    void success(String link, long byteCount, String message, LinkTimings timings) {
+        DownloaderLogRecord logRecord = DownloaderLogRecord.create(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS,
+            message, timings);
+        result.add(byteCount, logRecord);
+        metrics.succeeded(link, byteCount);
+        observer.onSuccess(link, byteCount, logRecord);
+        listener.onSuccess(link, byteCount, logRecord);
+    }
+
+    /**
+     * @param errorClass the class of the last failure or {@code null} if it's not an I/O failure
+     */
+    void failure(String link, String message, RetryPolicy.ErrorClass errorClass, LinkTimings timings) {
+        DownloaderLogRecord logRecord = DownloaderLogRecord.create(DownloaderLogRecord.Type.DOWNLOAD_FAIL, message,
+            timings);
+        result.add(0L, logRecord);
+        metrics.failed(link, errorClass);
+        observer.onFailure(link, logRecord);
+        listener.onFailure(link, logRecord);
+    }
+
+    /**
+     * The content has been downloaded, but its checksum isn't the expected one, so it's a failure for the user.
+     */
+    void checksumMismatch(String link, long byteCount, String message, LinkTimings timings) {
+        DownloaderLogRecord logRecord = DownloaderLogRecord.create(DownloaderLogRecord.Type.CHECKSUM_MISMATCH,
+            message, timings);
+        result.add(byteCount, logRecord);
+        metrics.checksumMismatched(link, byteCount);
+        observer.onSuccess(link, byteCount, logRecord);
+        listener.onFailure(link, logRecord);
+    }
+
+    void copy(String link, DownloaderLogRecord.Type type, String message) {
+        DownloaderLogRecord logRecord = DownloaderLogRecord.create(type, message);
+        result.add(0L, logRecord);
+        metrics.copied(type == DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+        listener.onCopy(link, logRecord);
+    }
+
+    void systemError(String message) {
+        DownloaderLogRecord logRecord = DownloaderLogRecord.create(DownloaderLogRecord.Type.SYSTEM_ERROR, message);
+        result.add(0L, logRecord);
+        metrics.systemError();
+        listener.onSystemError(logRecord);
+    }
+
+    void cacheHit() {
+        result.addCacheHit();
+        metrics.cacheHit();
+    }
+
+    void cacheMiss() {
+        result.addCacheMiss();
+        metrics.cacheMiss();
+    }
+
+    void retry(RetryPolicy.ErrorClass errorClass) {
+        metrics.retried(errorClass);
+    }
+
+    /**
+     * @param nanos the time which a read waited for the speed limits
+     */
+    void rateLimitWait(long nanos) {
+        metrics.rateLimitWaited(nanos);
+    }
+
+    Downloader.Result getResult() {
+        return result;
+    }
+}
@@ -1,256 +1,1036 @@
 package com.example.consoledownloader.downloader;
 
 import com.example.consoledownloader.argsparser.Options;
-import com.example.consoledownloader.utils.RateLimitedInputStream;
-import com.google.common.util.concurrent.RateLimiter;
+import com.example.consoledownloader.utils.ProgressInputStream;
+import com.example.consoledownloader.utils.VirtualThreads;
+import com.google.common.hash.HashingInputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UncheckedIOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collector;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class Downloader {
-    private static final String LINK_LINE_DELIMITER = " ";
+    private static final int QUEUED_TASKS_PER_THREAD = 2;
+    private static final long ADAPTIVE_INTERVAL_MILLIS = 1000;
+    private static final int MIN_SCHEDULING_WINDOW = 1024;
+    private static final int PROBE_THREADS = 8;
     private final LinkDownloader linkDownloader;
+    private final DownloadListener listener;
+    private final boolean logRetained;
 
     public Downloader(LinkDownloader linkDownloader) {
+        this(linkDownloader, DownloadListener.NONE, true);
+    }
+
+    /**
+     * @param logRetained whether the log records are collected into {@link Result#getLog()}, a long run
+     *                    without the retained log takes the constant amount of memory
+     */
+    public Downloader(LinkDownloader linkDownloader, DownloadListener listener, boolean logRetained) {
         this.linkDownloader = linkDownloader;
+        this.listener = listener;
+        this.logRetained = logRetained;
     }
 
     public Result download(Options options) {
-        boolean outputDirIsNeeded = !options.getOutputDir().isEmpty();
-        if (outputDirIsNeeded) {
-            try {
-                Files.createDirectories(Paths.get(options.getOutputDir()));
+        return download(Paths.get(options.getLinksFile()), options);
+    }
+
+    /**
+     * Downloads the links of the given file rather than of the options' one.
+     */
+    public Result download(Path linksFile, Options options) {
+        try (Session session = openSession(options)) {
+            return session.download(linksFile);
+        }
+    }
+
+    /**
+     * Starts a run which downloads several link files one after another, e.g. the batches of a worker.
+     */
+    public Session openSession(Options options) {
+        return new Session(options);
+    }
+
+    /**
+     * A run of several link files, the metrics file, the slowest downloads and the counts of the result are
+     * of all of them.
+     */
+    public class Session implements AutoCloseable {
+        private final Options options;
+        private final MemoryBudget budget;
+        private final DownloadReport report;
+        private final MetricsExporter exporter;
+
+        private Session(Options options) {
+            DownloadMetrics metrics = options.getMetricsFile().isEmpty()
+                ? DownloadMetrics.disabled()
+                : DownloadMetrics.enabled();
+            this.options = options;
+            this.budget = MemoryBudget.of(options);
+            this.report = new DownloadReport(listener, budget.isLogRetained(logRetained),
+                budget.slowestCount(options.getSlowest()), metrics);
+            this.exporter = MetricsExporter.start(options, metrics, report::systemError);
+        }
+
+        /**
+         * @return the result of the session so far
+         */
+        public Result download(Path linksFile) {
+            boolean outputDirIsNeeded = !options.getOutputDir().isEmpty();
+            if (outputDirIsNeeded) {
+                try {
+                    Files.createDirectories(Paths.get(options.getOutputDir()));
+                } catch (IOException e) {
+                    return makeFailedResult(report, "Cannot create the output directory: %s", e);
+                }
+            }
+
+            try (LinkFileReader reader = new LinkFileReader(linksFile)) {
+                return Downloader.this.download(reader, options, budget, report);
             } catch (IOException e) {
-                return makeFailedResult("Cannot create the output directory: %s", e);
+                return makeFailedResult(report, "Cannot read the file with links: %s", e);
             }
         }
 
-        Map<String, List<String>> linksMap;
+        public Result getResult() {
+            return report.getResult();
+        }
+
+        /**
+         * Writes the final metrics.
+         */
+        @Override
+        public void close() {
+            exporter.close();
+        }
+    }
+
+    private Result download(LinkFileReader reader, Options options, MemoryBudget budget, DownloadReport report) {
+        int threadNumber = options.getThreadNumber();
+        ExecutorService executor;
+        DownloadCache cache;
+        ContentIndex contentIndex;
+        LinkFingerprints fingerprints;
+
+        try {
+            cache = DownloadCache.open(options);
+        } catch (IOException e) {
+            return makeFailedResult(report, "Cannot open the cache: %s", e);
+        }
+
+        try {
+            contentIndex = makeContentIndex(options);
+        } catch (IOException e) {
+            return makeFailedResult(report, "Cannot read the manifest: %s", e);
+        }
+
         try {
-            linksMap = readLinksToMap(options);
+            fingerprints = budget.newFingerprints();
         } catch (IOException e) {
-            return makeFailedResult("Cannot read the file with links: %s", e);
+            return makeFailedResult(report, "Cannot create the index of the links: %s", e);
         }
 
-        return download(linksMap, options);
+        try {
+            executor = makeExecutor(options);
+        } catch (IllegalStateException e) {
+            return makeFailedResult(report, "Cannot start the download threads: %s", e);
+        }
+
+        try (ConcurrencyController controller = options.isAdaptive()
+            ? ConcurrencyController.start(threadNumber, options.getLimit(), ADAPTIVE_INTERVAL_MILLIS)
+            : ConcurrencyController.unlimited()) {
+
+            HostScheduler scheduler = new HostScheduler(executor, threadNumber,
+                budget.windowSize(Math.max(MIN_SCHEDULING_WINDOW, threadNumber * QUEUED_TASKS_PER_THREAD),
+                    threadNumber),
+                options.getMaxConnectionsPerHost(), controller, options.isLargestFirst());
+
+            try (RetryPolicy retryPolicy = new RetryPolicy(options, e -> scheduler.pause(
+                HostScheduler.hostOf(e.getLink()), TimeUnit.NANOSECONDS.toMillis(RetryPolicy.getRetryAfterNanos(e))))) {
+
+                retryPolicy.setRetryListener(report::retry);
+                report.setObserver(controller);
+                return download(reader, options, scheduler, retryPolicy, cache, contentIndex,
+                    new LinkDeduplicator(reader, fingerprints), makeBufferPool(options, budget), report);
+            }
+        }
+    }
+
+    private static ContentIndex makeContentIndex(Options options) throws IOException {
+        if (!options.isDedupContent()) {
+            return ContentIndex.disabled();
+        }
+
+        return ContentIndex.enabled(options.getManifest().isEmpty()
+            ? ContentManifest.empty()
+            : ContentManifest.read(Paths.get(options.getManifest())));
+    }
+
+    /**
+     * The scheduler runs at most the thread number of tasks at once, so the virtual threads need no pool.
+     * In the largest first order the pool steals work: the helpers of a segmented download are queued by its
+     * thread, and the threads which have finished their files take them at the end of the run.
+     * The asynchronous engine gets the thread number too, its transfers hold no thread, but the links which
+     * it doesn't serve, the segments and the copies do.
+     */
+    private ExecutorService makeExecutor(Options options) {
+        int threadNumber = options.getThreadNumber();
+
+        if (options.getThreadKind() == Options.ThreadKind.VIRTUAL) {
+            return VirtualThreads.newExecutor();
+        }
+
+        return options.isLargestFirst()
+            ? Executors.newWorkStealingPool(threadNumber)
+            : Executors.newFixedThreadPool(threadNumber);
     }
 
-    private Result download(Map<String, List<String>> linksMap, Options options) {
-        ExecutorService pool = Executors.newFixedThreadPool(options.getThreadNumber());
-        List<Callable<Result>> tasks = transformLinksMapToDownloadTasks(linksMap, options);
+    /**
+     * With the bounded memory the buffers are smaller if all threads' ones wouldn't fit, and a transfer waits
+     * for a buffer when the segments of the segmented downloads have taken them.
+     */
+    private static BufferPool makeBufferPool(Options options, MemoryBudget budget) {
+        int bufferSize = budget.bufferSize(options.getBufferSize(), options.getThreadNumber());
 
-        Result result;
+        return new BufferPool(bufferSize, options.getThreadNumber(), budget.maxBuffers(bufferSize));
+    }
 
+    private Result download(LinkFileReader reader, Options options, HostScheduler scheduler,
+                            RetryPolicy retryPolicy, DownloadCache cache, ContentIndex contentIndex,
+                            LinkDeduplicator deduplicator, BufferPool buffers, DownloadReport report) {
         try {
-            result = pool.invokeAll(tasks).stream()
-                .map(future -> {
-                    try {
-                        return future.get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        DownloaderLogRecord logRecord = DownloaderLogRecord.create(
-                            DownloaderLogRecord.Type.SYSTEM_ERROR, e.getMessage());
-                        return new Result(0L, Collections.singletonList(logRecord));
-                    }
-                })
-                .collect(Collector.of(Result::new, Result::addResult, Result::addResult));
+            submitTasks(reader, options, scheduler, retryPolicy, cache, contentIndex, deduplicator, buffers,
+                report);
+        } catch (IOException e) {
+            makeFailedResult(report, "Cannot read the file with links: %s", e);
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+
+            return makeFailedResult(report, "Download process failed: %s", e);
+        }
+
+        try {
+            scheduler.awaitCompletion();
         } catch (InterruptedException e) {
-            result = makeFailedResult("Download process failed: %s", e);
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+
+            return makeFailedResult(report, "Download process failed: %s", e);
         }
 
-        pool.shutdown();
+        scheduler.shutdown();
 
-        return result;
+        return report.getResult();
     }
 
-    private List<Callable<Result>> transformLinksMapToDownloadTasks(Map<String, List<String>> linksMap,
-                                                                    Options options) {
-        Function<InputStream, InputStream> inputWrapper = makeInputWrapper(options);
+    /**
+     * The downloads are queued by their hosts, the copies don't need the network and share the local queue.
+     * A download whose known content is being downloaded by another link waits for it and goes to the local queue
+     * to be linked, or to its host if the other download has failed. The links of the other shards are skipped.
+     */
+    private void submitTasks(LinkFileReader reader, Options options, HostScheduler scheduler,
+                             RetryPolicy retryPolicy, DownloadCache cache, ContentIndex contentIndex,
+                             LinkDeduplicator deduplicator, BufferPool buffers, DownloadReport report)
+        throws IOException, InterruptedException {
+
+        RateLimits rateLimits = new RateLimits(options, report::rateLimitWait);
+        Options.Shard shard = options.getShard();
+        ExecutorService probes = options.isLargestFirst() ? makeProbeExecutor() : null;
 
-        return linksMap.keySet().stream()
-            .collect(
-                ArrayList::new,
-                (tasks, link) -> {
-                    List<String> fileNames = linksMap.get(link);
-                    Callable<Result> task = makeDownloadTask(link, fileNames, options, inputWrapper);
-                    tasks.add(task);
-                },
-                ArrayList::addAll);
+        try {
+            while (true) {
+                LinkDescription description;
+
+                try {
+                    description = reader.next();
+                } catch (LinkFormatException e) {
+                    makeFailedResult(report, "Invalid line in the file with links: %s", e);
+                    continue;
+                }
+
+                if (description == null) {
+                    return;
+                }
+
+                if (!shard.isAll()
+                    && LinkSharding.shardOf(description.link, shard.getCount()) != shard.getIndex()) {
+                    continue;
+                }
+
+                LinkDeduplicator.Resolution resolution = deduplicator.resolve(description);
+                Runnable task;
+                String host;
+
+                if (resolution.group != null) {
+                    report.queue(resolution.group.link, resolution.group.first.dest);
+                }
+
+                if (resolution.group != null && isAsync(resolution.group, options)) {
+                    LinkGroup group = resolution.group;
+                    scheduler.submitAsync(HostScheduler.hostOf(group.link), group.first.size,
+                        () -> startAsyncDownload(group, deduplicator, options, retryPolicy, scheduler.unbounded(),
+                            report));
+                    continue;
+                } else if (resolution.group != null) {
+                    ContentIndex.Claim claim = contentIndex.claim(resolution.group.first);
+                    task = makeDownloadTask(resolution.group, deduplicator, options, rateLimits, buffers,
+                        retryPolicy, cache, contentIndex, claim, scheduler.unbounded(), report);
+                    host = HostScheduler.hostOf(resolution.group.link);
+
+                    if (claim != null && !claim.isOwner()) {
+                        String linkHost = host;
+                        scheduler.submitAfter(claim.getEarlier().handle((file, e) -> file == null
+                            ? linkHost
+                            : HostScheduler.LOCAL_HOST), () -> run(task, report));
+                        continue;
+                    }
+
+                    submitDownload(resolution.group, host, () -> run(task, report), options, scheduler, probes);
+                    continue;
+                } else if (resolution.copySource != null) {
+                    task = makeCopyTask(description, resolution.copySource, options, scheduler.unbounded(), report);
+                    host = HostScheduler.LOCAL_HOST;
+                } else {
+                    continue;
+                }
+
+                scheduler.submit(host, () -> run(task, report));
+            }
+        } finally {
+            if (probes != null) {
+                probes.shutdown();
+            }
+        }
     }
 
-    private Function<InputStream, InputStream> makeInputWrapper(Options options) {
-        if (options.getLimit() > 0) {
-            RateLimiter rateLimiter = RateLimiter.create(options.getLimit());
+    /**
+     * In the largest first order the download is queued by the size declared in the link file or, without it,
+     * by the size which a HEAD request finds out.
+     */
+    private void submitDownload(LinkGroup group, String host, Runnable task, Options options,
+                                HostScheduler scheduler, Executor probes) throws InterruptedException {
+        long size = group.first.size;
 
-            return in -> new RateLimitedInputStream(in, rateLimiter);
-        } else {
-            return Function.identity();
+        if (!options.isLargestFirst() || size != LinkDescription.UNKNOWN_SIZE) {
+            scheduler.submit(host, size, task);
+            return;
         }
+
+        scheduler.submit(host, CompletableFuture.supplyAsync(() -> probeSize(group.link), probes), task);
+    }
+
+    private long probeSize(String link) {
+        try {
+            LinkInfo info = this.linkDownloader.probe(link);
+
+            return info.isLengthKnown() ? info.getContentLength() : HostScheduler.UNKNOWN_SIZE;
+        } catch (IOException e) {
+            return HostScheduler.UNKNOWN_SIZE;
+        }
+    }
+
+    private static ExecutorService makeProbeExecutor() {
+        return Executors.newFixedThreadPool(PROBE_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "size-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void run(Runnable task, DownloadReport report) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            report.systemError(e.getMessage());
+        }
+    }
+
+    private boolean isAsync(LinkGroup group, Options options) {
+        return this.linkDownloader instanceof AsyncLinkDownloader
+            && !options.isSpeedLimited()
+            && options.getSegmentSize() <= 0
+            && !options.isResume()
+            && options.getCacheDir().isEmpty()
+            && !options.isDedupContent()
+            && !options.isCompressed()
+            && group.first.checksum.isEmpty()
+            && ((AsyncLinkDownloader) this.linkDownloader).isAsyncSupported(group.link);
     }
 
-    private Callable<Result> makeDownloadTask(String link, List<String> fileNames, Options options,
-                                              Function<InputStream, InputStream> inputWrapper) {
+    private Runnable makeDownloadTask(LinkGroup group, LinkDeduplicator deduplicator, Options options,
+                                      RateLimits rateLimits, BufferPool buffers, RetryPolicy retryPolicy,
+                                      DownloadCache cache,
+                                      ContentIndex contentIndex, ContentIndex.Claim claim, Executor pool,
+                                      DownloadReport report) {
         return () -> {
-            String firstFileName = fileNames.get(0);
-            Path firstPath = makeFilePath(firstFileName, options);
+            DownloadLinkResult downloadResult = null;
+            TeeDestinations tee = options.getDuplicateMode() == Options.DuplicateMode.TEE
+                ? new TeeDestinations(group.drainPendingDests(), dest -> makeFilePath(dest, options))
+                : TeeDestinations.none();
+
+            try {
+                String link = group.link;
+                String firstFileName = group.first.dest;
+                Path firstPath = makeFilePath(firstFileName, options);
+                Function<InputStream, InputStream> linkInputWrapper = rateLimits.forLink(link)
+                    .andThen(in -> new ProgressInputStream(in, byteCount -> report.progress(link, byteCount)));
 
-            DownloadLinkResult downloadResult = downloadLink(link, firstFileName, firstPath, inputWrapper);
+                report.start(link, firstFileName);
+                tee.getDests().forEach(dest -> report.start(link, dest));
 
-            if (!downloadResult.success) {
-                return new Result(0L, downloadResult.log);
+                Path earlierPath = claim == null || claim.isOwner() ? null : claim.getEarlier().join();
+                if (earlierPath != null && ContentIndex.link(earlierPath, firstPath)) {
+                    downloadResult = new DownloadLinkResult(true, 0L, String.format(
+                        "%s (the same content as %s, linked)", firstFileName, earlierPath), claim.hash);
+                } else {
+                    boolean hashed = contentIndex.isEnabled() || !group.first.checksum.isEmpty();
+                    downloadResult = linkSameContent(downloadLink(link, firstFileName, firstPath, options,
+                        linkInputWrapper, tee, buffers, retryPolicy, cache, hashed, pool, report), firstPath,
+                        contentIndex);
+                }
+                downloadResult = verifyChecksum(group.first, downloadResult);
+            } finally {
+                if (claim != null) {
+                    boolean claimed = downloadResult != null && downloadResult.success
+                        && claim.hash.equals(downloadResult.contentHash);
+                    claim.complete(claimed ? makeFilePath(group.first.dest, options) : null);
+                }
+                completeDownload(group, deduplicator, options, downloadResult, tee, pool, report);
             }
+        };
+    }
+
+    private static DownloadLinkResult verifyChecksum(LinkDescription description, DownloadLinkResult result) {
+        if (!result.success || description.checksum.isEmpty() || description.checksum.equals(result.contentHash)) {
+            return result;
+        }
 
-            List<DownloaderLogRecord> copyLog = copyRestFilesFromFirst(fileNames, options,
-                firstFileName, firstPath);
+        return DownloadLinkResult.checksumMismatch(result.byteCount, String.format(
+            "%s: the SHA-256 of the content is %s, %s is expected", result.message, result.contentHash,
+            description.checksum), result.contentHash).withTimings(result.timings);
+    }
 
-            List<DownloaderLogRecord> log = Stream.concat(downloadResult.log.stream(), copyLog.stream())
-                .collect(Collectors.toList());
+    /**
+     * Replaces the downloaded file with a hard link to the earlier file of the run which has the same content.
+     */
+    private static DownloadLinkResult linkSameContent(DownloadLinkResult result, Path path,
+                                                      ContentIndex contentIndex) {
+        if (!result.success || result.contentHash == null) {
+            return result;
+        }
 
-            return new Result(downloadResult.byteCount, log);
-        };
+        Path earlierPath = contentIndex.record(result.contentHash, path);
+        if (earlierPath == null || !ContentIndex.link(earlierPath, path)) {
+            return result;
+        }
+
+        return new DownloadLinkResult(true, result.byteCount,
+            String.format("%s (the same content as %s, linked)", result.message, earlierPath), result.contentHash)
+            .withTimings(result.timings);
     }
 
-    private DownloadLinkResult downloadLink(String link, String dest, Path path,
-                                            Function<InputStream, InputStream> inputWrapper) {
-        try (InputStream input = inputWrapper.apply(this.linkDownloader.download(link))) {
-            Files.copy(input, path, StandardCopyOption.REPLACE_EXISTING);
-            long byteCount = Files.size(path);
-            DownloaderLogRecord logRecord = DownloaderLogRecord.create(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS,
-                String.format("%s", dest));
+    private CompletableFuture<Void> startAsyncDownload(LinkGroup group, LinkDeduplicator deduplicator,
+                                                       Options options, RetryPolicy retryPolicy, Executor pool,
+                                                       DownloadReport report) {
+        String link = group.link;
+        String firstFileName = group.first.dest;
+        Path firstPath = makeFilePath(firstFileName, options);
+        AtomicInteger retries = new AtomicInteger();
+        LinkTimings.Builder timings = new LinkTimings.Builder();
+        long startNanos = System.nanoTime();
 
-            return new DownloadLinkResult(true, byteCount, logRecord);
-        } catch (IOException e) {
-            DownloaderLogRecord logRecord = DownloaderLogRecord.create(DownloaderLogRecord.Type.DOWNLOAD_FAIL,
-                String.format("%s: %s", dest, e.getMessage()));
+        report.start(link, firstFileName);
+        retryPolicy.recordDownload();
+
+        CompletableFuture<Long> download;
+        try {
+            download = downloadAsync(link, firstPath, retryPolicy, retries, timings, report);
+        } catch (RuntimeException e) {
+            completeDownload(group, deduplicator, options, null, TeeDestinations.none(), pool, report);
+            report.systemError(e.getMessage());
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return download
+            .handleAsync((byteCount, e) -> {
+                timings.total(System.nanoTime() - startNanos);
+                DownloadLinkResult downloadResult = (e == null
+                    ? new DownloadLinkResult(true, byteCount, firstFileName + RetryPolicy.describe(retries))
+                    : DownloadLinkResult.failure(String.format("%s: %s%s", firstFileName,
+                        unwrapCompletionException(e).getMessage(), RetryPolicy.describe(retries)),
+                        unwrapCompletionException(e)))
+                    .withTimings(timings.build());
+
+                run(() -> completeDownload(group, deduplicator, options, downloadResult, TeeDestinations.none(), pool,
+                    report), report);
+
+                return null;
+            }, pool);
+    }
+
+    /**
+     * Downloads the link again from the beginning after the transient failures, the pauses between the attempts
+     * don't take a thread.
+     */
+    private CompletableFuture<Long> downloadAsync(String link, Path path, RetryPolicy retryPolicy,
+                                                  AtomicInteger retries, LinkTimings.Builder timings,
+                                                  DownloadReport report) {
+        return ((AsyncLinkDownloader) this.linkDownloader)
+            .downloadTo(link, path, byteCount -> report.progress(link, byteCount), timings)
+            .handle((byteCount, e) -> {
+                Throwable cause = e == null ? null : unwrapCompletionException(e);
+
+                if (cause instanceof IOException && retryPolicy.allowRetry((IOException) cause, retries)) {
+                    return retryPolicy.delay((IOException) cause, retries.get())
+                        .thenCompose(ignored -> downloadAsync(link, path, retryPolicy, retries, timings, report));
+                }
+
+                CompletableFuture<Long> attempt = new CompletableFuture<>();
+                if (cause == null) {
+                    attempt.complete(byteCount);
+                } else {
+                    attempt.completeExceptionally(cause);
+                }
+
+                return attempt;
+            })
+            .thenCompose(Function.identity());
+    }
+
+    private static Throwable unwrapCompletionException(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * Reports the download of the group's first destination and makes the copies. The result is {@code null}
+     * if the download failed with an unexpected exception.
+     */
+    private void completeDownload(LinkGroup group, LinkDeduplicator deduplicator, Options options,
+                                  DownloadLinkResult downloadResult, TeeDestinations tee, Executor pool,
+                                  DownloadReport report) {
+        boolean succeeded = downloadResult != null && downloadResult.success;
+
+        try {
+            if (!succeeded) {
+                tee.discard();
+            }
+
+            if (downloadResult == null) {
+                return;
+            }
 
-            return new DownloadLinkResult(false, 0L, logRecord);
+            if (downloadResult.checksumMismatch) {
+                report.checksumMismatch(group.link, downloadResult.byteCount, downloadResult.message,
+                    downloadResult.timings);
+                return;
+            } else if (!succeeded) {
+                report.failure(group.link, downloadResult.message, downloadResult.errorClass, downloadResult.timings);
+                return;
+            }
+
+            String firstFileName = group.first.dest;
+            Path firstPath = makeFilePath(firstFileName, options);
+            report.success(group.link, downloadResult.byteCount, downloadResult.message, downloadResult.timings);
+
+            if (tee.isWritten()) {
+                tee.getDests().forEach(dest -> reportCopy(group.link, dest, firstFileName, tee.getFailure(dest),
+                    report));
+            } else {
+                copyRestFilesFromFirst(group.link, tee.getDests(), options, firstFileName, firstPath, pool, report);
+            }
+
+            List<String> fileNames;
+            while (!(fileNames = group.takePendingDests(true)).isEmpty()) {
+                copyRestFilesFromFirst(group.link, fileNames, options, firstFileName, firstPath, pool, report);
+            }
+        } finally {
+            group.seal(succeeded);
+            deduplicator.complete(group, succeeded);
         }
     }
 
-    private ArrayList<DownloaderLogRecord> copyRestFilesFromFirst(List<String> fileNames, Options options,
-                                                                  String firstFileName, Path firstPath) {
-        ArrayList<DownloaderLogRecord> log = new ArrayList<>();
+    private Runnable makeCopyTask(LinkDescription description, String sourceFileName, Options options,
+                                  Executor pool, DownloadReport report) {
+        return () -> copyRestFilesFromFirst(description.link, Collections.singletonList(description.dest), options,
+            sourceFileName, makeFilePath(sourceFileName, options), pool, report);
+    }
 
-        for (int i = 1; i < fileNames.size(); i++) {
-            String dest = fileNames.get(i);
-            Path destPath = makeFilePath(dest, options);
+    /**
+     * Downloads the link and starts it again after the failures which the streams and segments couldn't get over
+     * by resuming. All of them take the retries of the link from the same counter.
+     */
+    private DownloadLinkResult downloadLink(String link, String dest, Path path, Options options,
+                                            Function<InputStream, InputStream> inputWrapper, TeeDestinations tee,
+                                            BufferPool buffers, RetryPolicy retryPolicy, DownloadCache cache,
+                                            boolean hashed,
+                                            Executor pool, DownloadReport report) {
+        AtomicInteger retries = new AtomicInteger();
+        long startNanos = System.nanoTime();
+        retryPolicy.recordDownload();
 
+        while (true) {
             try {
-                Files.copy(firstPath, destPath);
-                log.add(DownloaderLogRecord.create(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS,
-                    String.format("%s copy from %s", dest, firstFileName)));
+                DownloadLinkResult result = downloadLinkOnce(link, dest, path, options, inputWrapper, tee,
+                    buffers, retryPolicy, retries, cache, hashed, pool, report);
+
+                return new DownloadLinkResult(true, result.byteCount,
+                    result.message + RetryPolicy.describe(retries), result.contentHash)
+                    .withTimings(new LinkTimings.Builder(result.timings)
+                        .total(System.nanoTime() - startNanos)
+                        .build());
             } catch (IOException e) {
-                log.add(DownloaderLogRecord.create(DownloaderLogRecord.Type.DOWNLOAD_FAIL,
-                    String.format("%s copy from %s: %s", dest, firstFileName, e.getMessage())));
+                if (!retryPolicy.allowRetry(e, retries)) {
+                    return DownloadLinkResult.failure(String.format("%s: %s%s", dest, e.getMessage(),
+                        RetryPolicy.describe(retries)), e)
+                        .withTimings(new LinkTimings.Builder().total(System.nanoTime() - startNanos).build());
+                }
+
+                try {
+                    tee.reset();
+                    retryPolicy.pause(e, retries.get());
+                } catch (InterruptedIOException interrupted) {
+                    return DownloadLinkResult.failure(String.format("%s: %s", dest, interrupted.getMessage()),
+                        interrupted)
+                        .withTimings(new LinkTimings.Builder().total(System.nanoTime() - startNanos).build());
+                }
+            }
+        }
+    }
+
+    /**
+     * The cached link is requested on the conditions of its validators, the unchanged file is made from the cache.
+     * The content is hashed while it's streamed, the segments arrive out of order, so their file is hashed
+     * after the download.
+     *
+     * @param hashed whether the result needs the hash of the content, it's always computed for the cache
+     */
+    private DownloadLinkResult downloadLinkOnce(String link, String dest, Path path, Options options,
+                                                Function<InputStream, InputStream> inputWrapper,
+                                                TeeDestinations tee, BufferPool buffers, RetryPolicy retryPolicy,
+                                                AtomicInteger retries,
+                                                DownloadCache cache, boolean hashed, Executor pool,
+                                                DownloadReport report) throws IOException {
+        DownloadCache.Entry cached = cache.lookup(link);
+        if (cached != null) {
+            return downloadCached(link, dest, path, cached, options, inputWrapper, tee, buffers, retryPolicy,
+                retries, cache, report);
+        }
+
+        LinkInfo info = probe(link, options);
+        String message = dest;
+        long byteCount;
+        AtomicReference<String> contentHash = new AtomicReference<>();
+        boolean hashNeeded = hashed || cache.isEnabled();
+        LinkTimings requestTimings = LinkTimings.unknown();
+        long transferStartNanos = System.nanoTime();
+        cache.detach(path);
+
+        if (options.isResume() && DownloadJournal.isResumable(info)) {
+            DownloadJournal journal = DownloadJournal.open(path, info);
+            message = makeResumeMessage(dest, journal);
+            byteCount = downloadResumable(link, path, info, journal, options, inputWrapper, buffers, retryPolicy,
+                retries, pool);
+        } else if (SegmentedDownload.isApplicable(info, options.getSegmentSize())) {
+            SegmentedDownload segmentedDownload = new SegmentedDownload(this.linkDownloader, link, path,
+                info, options.getSegmentSize(), inputWrapper, buffers, retryPolicy, retries);
+            byteCount = segmentedDownload.run(pool, options.getThreadNumber() - 1);
+        } else {
+            if (options.isResume()) {
+                DownloadJournal.deleteFor(path);
             }
+
+            LinkResponse response = this.linkDownloader.open(new LinkRequest.Builder(link)
+                .compressionAccepted(options.isCompressed())
+                .build());
+            info = response.getInfo();
+            requestTimings = response.getTimings();
+            transferStartNanos = System.nanoTime();
+            byteCount = downloadWhole(link, response, path, options, inputWrapper, tee, buffers, retryPolicy,
+                retries, hashNeeded ? contentHash::set : null);
+        }
+
+        if (hashNeeded && contentHash.get() == null) {
+            contentHash.set(DownloadCache.hashOf(path));
+        }
+        if (cache.isEnabled()) {
+            storeInCache(link, info, contentHash.get(), path, options, cache, report);
         }
 
-        return log;
+        return new DownloadLinkResult(true, byteCount, message, contentHash.get())
+            .withTimings(new LinkTimings.Builder(requestTimings)
+                .transfer(System.nanoTime() - transferStartNanos)
+                .build());
     }
 
-    private static Path makeFilePath(String fileName, Options options) {
-        return Paths.get(options.getOutputDir(), fileName);
+    private DownloadLinkResult downloadCached(String link, String dest, Path path, DownloadCache.Entry cached,
+                                              Options options, Function<InputStream, InputStream> inputWrapper,
+                                              TeeDestinations tee, BufferPool buffers, RetryPolicy retryPolicy,
+                                              AtomicInteger retries, DownloadCache cache,
+                                              DownloadReport report) throws IOException {
+        LinkResponse response = this.linkDownloader.open(new LinkRequest.Builder(link)
+            .compressionAccepted(options.isCompressed())
+            .ifNoneMatch(cached.etag)
+            .ifModifiedSince(cached.lastModified)
+            .build());
+
+        if (response.isNotModified()) {
+            response.close();
+
+            if (cache.materialize(cached.hash, path, options.getDuplicateMode())) {
+                report.cacheHit();
+
+                return new DownloadLinkResult(true, 0L, dest + " (not modified, from the cache)", cached.hash)
+                    .withTimings(response.getTimings());
+            }
+
+            // The content has been evicted since the lookup
+            response = this.linkDownloader.open(new LinkRequest.Builder(link)
+                .compressionAccepted(options.isCompressed())
+                .build());
+        }
+
+        AtomicReference<String> contentHash = new AtomicReference<>();
+        long transferStartNanos = System.nanoTime();
+        cache.detach(path);
+        long byteCount = downloadWhole(link, response, path, options, inputWrapper, tee, buffers, retryPolicy,
+            retries, contentHash::set);
+        storeInCache(link, response.getInfo(), contentHash.get(), path, options, cache, report);
+
+        return new DownloadLinkResult(true, byteCount, dest, contentHash.get())
+            .withTimings(new LinkTimings.Builder(response.getTimings())
+                .transfer(System.nanoTime() - transferStartNanos)
+                .build());
+    }
+
+    /**
+     * The download is a hit if its content is already in the cache, then a hard link in the link duplicate mode
+     * takes no more space.
+     */
+    private static void storeInCache(String link, LinkInfo info, String hash, Path path, Options options,
+                                     DownloadCache cache, DownloadReport report) {
+        try {
+            if (cache.contains(hash)) {
+                report.cacheHit();
+                if (options.getDuplicateMode() == Options.DuplicateMode.LINK) {
+                    cache.materialize(hash, path, options.getDuplicateMode());
+                }
+            } else {
+                report.cacheMiss();
+            }
+
+            cache.store(link, info, hash, path);
+        } catch (IOException e) {
+            report.systemError(String.format("Cannot store %s in the cache: %s", link, e.getMessage()));
+        }
     }
 
-    private Result makeFailedResult(String msgTemplate, Exception e) {
-        DownloaderLogRecord logRecord = DownloaderLogRecord.create(
-            DownloaderLogRecord.Type.SYSTEM_ERROR,
-            String.format(msgTemplate, e.getMessage()));
+    private LinkInfo probe(String link, Options options) {
+        if (options.getSegmentSize() <= 0 && !options.isResume()) {
+            return LinkInfo.unknown();
+        }
 
-        return new Result(0, Collections.singletonList(logRecord));
+        try {
+            return this.linkDownloader.probe(link);
+        } catch (IOException e) {
+            return LinkInfo.unknown();
+        }
     }
 
-    private Map<String, List<String>> readLinksToMap(Options options) throws IOException {
-        try (Stream<String> readerStream = Files.lines(Paths.get(options.getLinksFile()))) {
-            return readerStream
-                .map(line -> {
-                    String[] parts = line.split(LINK_LINE_DELIMITER);
-                    return new LinkDescription(parts[0], parts[1]);
-                })
-                .collect(Collectors.groupingBy(
-                    LinkDescription::getLink,
-                    Collectors.mapping(LinkDescription::getDest, Collectors.toList())));
-        } catch (UncheckedIOException e) {
-            throw e.getCause();
+    private long downloadResumable(String link, Path path, LinkInfo info, DownloadJournal journal, Options options,
+                                   Function<InputStream, InputStream> inputWrapper, BufferPool buffers,
+                                   RetryPolicy retryPolicy, AtomicInteger retries, Executor pool) throws IOException {
+        try {
+            SegmentedDownload segmentedDownload = new SegmentedDownload(this.linkDownloader, link, path, info,
+                journal.getMissingRanges(), options.getSegmentSize(), journal, inputWrapper, buffers, retryPolicy,
+                retries);
+            long byteCount = segmentedDownload.run(pool, options.getThreadNumber() - 1);
+            journal.delete();
+
+            return byteCount;
+        } finally {
+            journal.close();
         }
     }
 
+    private static String makeResumeMessage(String dest, DownloadJournal journal) {
+        long resumedByteCount = journal.getCompletedByteCount();
+
+        if (journal.isRestarted()) {
+            return String.format("%s (the remote file has changed, downloaded from the beginning)", dest);
+        } else if (resumedByteCount > 0) {
+            return String.format("%s (resumed after %d bytes)", dest, resumedByteCount);
+        }
+
+        return dest;
+    }
+
+    /**
+     * The file is written through a channel from the pooled buffer, it's replaced rather than overwritten,
+     * as it may be a hard link to another file. An encoded body is decoded above the input wrapper, so the speed
+     * limits and the progress count the bytes which came over the wire.
+     *
+     * @param hashConsumer gets the SHA-256 of the downloaded content, the content isn't hashed if it's {@code null}
+     */
+    private long downloadWhole(String link, LinkResponse response, Path path, Options options,
+                               Function<InputStream, InputStream> inputWrapper, TeeDestinations tee,
+                               BufferPool buffers, RetryPolicy retryPolicy, AtomicInteger retries,
+                               Consumer<String> hashConsumer) throws IOException {
+        InputStream body = new ResumingInputStream(this.linkDownloader, link, response, retryPolicy, retries);
+        LinkInfo info = response.getInfo();
+        long byteCount;
+
+        try (InputStream wireInput = inputWrapper.apply(body);
+             InputStream decodedInput = ContentDecoding.decode(link, info.getContentEncoding(), wireInput)) {
+            HashingInputStream hashingInput = hashConsumer == null ? null : DownloadCache.hashing(decodedInput);
+            InputStream input = hashingInput == null ? decodedInput : hashingInput;
+
+            if (tee.isEmpty()) {
+                Files.deleteIfExists(path);
+
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                    if (options.isPreallocate() && info.isLengthKnown() && !info.isEncoded()) {
+                        SegmentedDownload.preallocate(channel, info.getContentLength());
+                    }
+
+                    byteCount = buffers.copy(input, channel);
+                    if (channel.size() > byteCount) {
+                        channel.truncate(byteCount);
+                    }
+                }
+            } else {
+                try (OutputStream output = tee.open(path)) {
+                    byteCount = buffers.copy(input, output);
+                }
+            }
+
+            if (hashingInput != null) {
+                hashConsumer.accept(hashingInput.hash().toString());
+            }
+        }
+
+        return byteCount;
+    }
+
+    private void copyRestFilesFromFirst(String link, List<String> fileNames, Options options,
+                                        String firstFileName, Path firstPath, Executor pool, DownloadReport report) {
+        if (fileNames.isEmpty()) {
+            return;
+        }
+
+        fileNames.forEach(dest -> report.start(link, dest));
+        FileFanOut fanOut = new FileFanOut(firstPath, fileNames, dest -> makeFilePath(dest, options),
+            options.getDuplicateMode());
+
+        try {
+            fanOut.run(pool, options.getThreadNumber() - 1,
+                (dest, e) -> reportCopy(link, dest, firstFileName, e, report));
+        } catch (InterruptedIOException e) {
+            report.systemError(e.getMessage());
+        }
+    }
+
+    private static void reportCopy(String link, String dest, String firstFileName, IOException e,
+                                   DownloadReport report) {
+        if (e == null) {
+            report.copy(link, DownloaderLogRecord.Type.DOWNLOAD_SUCCESS,
+                String.format("%s copy from %s", dest, firstFileName));
+        } else {
+            report.copy(link, DownloaderLogRecord.Type.DOWNLOAD_FAIL,
+                String.format("%s copy from %s: %s", dest, firstFileName, e.getMessage()));
+        }
+    }
+
+    private static Path makeFilePath(String fileName, Options options) {
+        return Paths.get(options.getOutputDir(), fileName);
+    }
+
+    private static Result makeFailedResult(DownloadReport report, String msgTemplate, Exception e) {
+        report.systemError(String.format(msgTemplate, e.getMessage()));
+
+        return report.getResult();
+    }
+
     public static class Result {
+        private static final Comparator<DownloaderLogRecord> BY_TOTAL_TIME =
+            Comparator.comparingLong(logRecord -> logRecord.getTimings().getTotalNanos());
+
         private long byteCount;
+        private final LongAdder wireByteCount = new LongAdder();
+        private long cacheHitCount;
+        private long cacheMissCount;
         private final List<DownloaderLogRecord> log;
+        private final boolean logRetained;
+        private final PriorityQueue<DownloaderLogRecord> slowest;
+        private final int slowestCount;
 
-        private Result() {
-            this(0L, new ArrayList<>());
+        Result(boolean logRetained) {
+            this(logRetained, 0);
         }
 
-        private Result(long byteCount, List<DownloaderLogRecord> log) {
-            this.byteCount = byteCount;
-            this.log = log;
+        /**
+         * @param slowestCount the number of the slowest downloads which are kept apart from the log, they are
+         *                     kept in a heap whose head is the fastest of them
+         */
+        Result(boolean logRetained, int slowestCount) {
+            this.log = new ArrayList<>();
+            this.logRetained = logRetained;
+            this.slowest = new PriorityQueue<>(Math.max(slowestCount, 1), BY_TOTAL_TIME);
+            this.slowestCount = slowestCount;
         }
 
-        public long getByteCount() {
+        /**
+         * @return the number of the bytes written to the files, the decoded ones if the content was compressed
+         */
+        public synchronized long getByteCount() {
             return byteCount;
         }
 
-        public List<DownloaderLogRecord> getLog() {
-            return log;
+        /**
+         * @return the number of the bytes received over the wire, the encoded ones if the content was compressed,
+         * including the bytes of the failed attempts
+         */
+        public long getWireByteCount() {
+            return wireByteCount.sum();
+        }
+
+        /**
+         * @return the number of the downloads which were made from the cache or whose content was already cached
+         */
+        public synchronized long getCacheHitCount() {
+            return cacheHitCount;
         }
 
-        private Result addResult(Result another) {
-            this.byteCount += another.byteCount;
-            this.log.addAll(another.log);
+        public synchronized long getCacheMissCount() {
+            return cacheMissCount;
+        }
 
-            return this;
+        /**
+         * @return the log records of the run, it's empty if the downloader doesn't retain the log
+         */
+        public synchronized List<DownloaderLogRecord> getLog() {
+            return new ArrayList<>(log);
         }
-    }
 
-    private static class LinkDescription {
-        final String link;
-        final String dest;
+        /**
+         * @return the log records of the slowest downloads of the run, the slowest first
+         */
+        public synchronized List<DownloaderLogRecord> getSlowest() {
+            List<DownloaderLogRecord> records = new ArrayList<>(slowest);
+            records.sort(BY_TOTAL_TIME.reversed());
+
+            return records;
+        }
+
+        synchronized void add(long byteCount, DownloaderLogRecord logRecord) {
+            this.byteCount += byteCount;
+
+            if (logRetained) {
+                this.log.add(logRecord);
+            }
+            if (slowestCount > 0 && logRecord.getTimings().isKnown()) {
+                addSlowest(logRecord);
+            }
+        }
 
-        LinkDescription(String link, String dest) {
-            this.link = link;
-            this.dest = dest;
+        private void addSlowest(DownloaderLogRecord logRecord) {
+            if (slowest.size() < slowestCount) {
+                slowest.add(logRecord);
+            } else if (BY_TOTAL_TIME.compare(logRecord, slowest.peek()) > 0) {
+                slowest.poll();
+                slowest.add(logRecord);
+            }
         }
 
-        String getLink() {
-            return link;
+        void addWireBytes(long byteCount) {
+            wireByteCount.add(byteCount);
         }
 
-        String getDest() {
-            return dest;
+        synchronized void addCacheHit() {
+            cacheHitCount++;
+        }
+
+        synchronized void addCacheMiss() {
+            cacheMissCount++;
         }
     }
 
     static class DownloadLinkResult {
         final long byteCount;
-        final List<DownloaderLogRecord> log;
+        final String message;
         final boolean success;
+        final String contentHash;
+        final boolean checksumMismatch;
+        final RetryPolicy.ErrorClass errorClass;
+        final LinkTimings timings;
+
+        DownloadLinkResult(boolean success, long byteCount, String message) {
+            this(success, byteCount, message, null);
+        }
 
-        DownloadLinkResult(boolean success, long byteCount, DownloaderLogRecord logRecord) {
-            this(success, byteCount, Collections.singletonList(logRecord));
+        /**
+         * @param contentHash the SHA-256 of the downloaded content or {@code null} if it hasn't been computed
+         */
+        DownloadLinkResult(boolean success, long byteCount, String message, String contentHash) {
+            this(success, byteCount, message, contentHash, false, null, LinkTimings.unknown());
         }
 
-        DownloadLinkResult(boolean success, long byteCount, List<DownloaderLogRecord> log) {
+        private DownloadLinkResult(boolean success, long byteCount, String message, String contentHash,
+                                   boolean checksumMismatch, RetryPolicy.ErrorClass errorClass,
+                                   LinkTimings timings) {
             this.success = success;
             this.byteCount = byteCount;
-            this.log = log;
+            this.message = message;
+            this.contentHash = contentHash;
+            this.checksumMismatch = checksumMismatch;
+            this.errorClass = errorClass;
+            this.timings = timings;
+        }
+
+        DownloadLinkResult withTimings(LinkTimings timings) {
+            return new DownloadLinkResult(success, byteCount, message, contentHash, checksumMismatch, errorClass,
+                timings);
+        }
+
+        /**
+         * @param failure the last failure of the download, its class goes to the metrics
+         */
+        static DownloadLinkResult failure(String message, Throwable failure) {
+            return new DownloadLinkResult(false, 0L, message, null, false,
+                failure instanceof IOException ? RetryPolicy.classify((IOException) failure) : null,
+                LinkTimings.unknown());
+        }
+
+        /**
+         * The content has been downloaded, but it isn't the expected one, so the download hasn't succeeded.
+         */
+        static DownloadLinkResult checksumMismatch(long byteCount, String message, String contentHash) {
+            return new DownloadLinkResult(false, byteCount, message, contentHash, true, null, LinkTimings.unknown());
         }
     }
 }
@@ -3,14 +3,24 @@ package com.example.consoledownloader.downloader;
 public class DownloaderLogRecord {
     private final Type type;
     private final String message;
+    private final LinkTimings timings;
 
     public static DownloaderLogRecord create(Type type, String message) {
         return new DownloaderLogRecord(type, message);
     }
 
+    public static DownloaderLogRecord create(Type type, String message, LinkTimings timings) {
+        return new DownloaderLogRecord(type, message, timings);
+    }
+
     public DownloaderLogRecord(Type type, String message) {
+        this(type, message, LinkTimings.unknown());
+    }
+
+    public DownloaderLogRecord(Type type, String message, LinkTimings timings) {
         this.type = type;
         this.message = message;
+        this.timings = timings;
     }
 
     public Type getType() {
@@ -21,8 +31,15 @@ public class DownloaderLogRecord {
         return message;
     }
 
+    /**
+     * @return the timings of the link's download, they are unknown for the copies and the system errors
+     */
+    public LinkTimings getTimings() {
+        return timings;
+    }
+
     public enum Type {
-        DOWNLOAD_SUCCESS("OK"), DOWNLOAD_FAIL("FAIL"), SYSTEM_ERROR("ERROR");
+        DOWNLOAD_SUCCESS("OK"), DOWNLOAD_FAIL("FAIL"), CHECKSUM_MISMATCH("MISMATCH"), SYSTEM_ERROR("ERROR");
         private final String prettyString;
 
         Type(String prettyString) {
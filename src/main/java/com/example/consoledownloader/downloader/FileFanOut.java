@@ -0,0 +1,101 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Makes the duplicates of a downloaded file in parallel. Like {@link SegmentedDownload}, the calling thread
+ * takes part in the work, so the copies can't starve even if the executor is saturated.
+ */
+class FileFanOut {
+    private final Path source;
+    private final Function<String, Path> pathResolver;
+    private final Options.DuplicateMode mode;
+    private final Queue<String> pendingDests;
+    private final CountDownLatch doneSignal;
+
+    FileFanOut(Path source, List<String> dests, Function<String, Path> pathResolver, Options.DuplicateMode mode) {
+        this.source = source;
+        this.pathResolver = pathResolver;
+        this.mode = mode;
+        this.pendingDests = new ConcurrentLinkedQueue<>(dests);
+        this.doneSignal = new CountDownLatch(dests.size());
+    }
+
+    /**
+     * @param resultConsumer receives every destination with {@code null} or the exception which failed it
+     */
+    void run(Executor executor, int helperCount, BiConsumer<String, IOException> resultConsumer)
+        throws InterruptedIOException {
+
+        int helpers = Math.min(helperCount, pendingDests.size() - 1);
+        for (int i = 0; i < helpers; i++) {
+            executor.execute(() -> duplicatePending(resultConsumer));
+        }
+
+        duplicatePending(resultConsumer);
+
+        try {
+            doneSignal.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("%s: the copies were interrupted", source));
+        }
+    }
+
+    private void duplicatePending(BiConsumer<String, IOException> resultConsumer) {
+        String dest;
+
+        while ((dest = pendingDests.poll()) != null) {
+            try {
+                duplicate(source, pathResolver.apply(dest), mode);
+                resultConsumer.accept(dest, null);
+            } catch (IOException e) {
+                resultConsumer.accept(dest, e);
+            } finally {
+                doneSignal.countDown();
+            }
+        }
+    }
+
+    /**
+     * Makes a hard link if it's asked for and the file system supports it, otherwise copies the file inside
+     * the kernel. The target mustn't exist.
+     */
+    static void duplicate(Path source, Path target, Options.DuplicateMode mode) throws IOException {
+        if (mode == Options.DuplicateMode.LINK) {
+            try {
+                Files.createLink(target, source);
+                return;
+            } catch (FileAlreadyExistsException e) {
+                throw e;
+            } catch (UnsupportedOperationException | IOException e) {
+                // Falls back to the copy, e.g. when the target is on another file system
+            }
+        }
+
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = input.size();
+            long position = 0;
+
+            while (position < size) {
+                position += input.transferTo(position, size - position, output);
+            }
+        }
+    }
+}
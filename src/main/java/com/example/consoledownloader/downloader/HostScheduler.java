@@ -0,0 +1,366 @@
+package com.example.consoledownloader.downloader;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the tasks of a run in the order of their hosts rather than of the link file. Every host has its own queue,
+ * the hosts take turns, at most {@code maxTasksPerHost} tasks of a host run at once and a host which has asked
+ * to slow down with Retry-After gets no new tasks until then. So a host which fills the link file doesn't take
+ * all threads while the others wait.
+ * <p>
+ * The number of queued and running tasks is limited by the window, the producer blocks instead of filling
+ * the memory with tasks. The download tasks also take the permits of the concurrency controller when they start,
+ * the local tasks (copies) don't.
+ * <p>
+ * In the largest first order the queued task with the largest expected size starts first, whichever its host is,
+ * the hosts' limits still apply. A large file started last would keep one thread busy long after the others
+ * have finished. The order is of the tasks in the window, so the sizes are looked ahead by the window size.
+ */
+class HostScheduler {
+    static final String LOCAL_HOST = "";
+    static final long UNKNOWN_SIZE = -1L;
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final Comparator<Task> LARGEST_FIRST = Comparator.<Task>comparingLong(task -> task.size)
+        .reversed()
+        .thenComparingLong(task -> task.sequence);
+
+    private final ExecutorService executor;
+    private final int runLimit;
+    private final int maxTasksPerHost;
+    private final ConcurrencyController controller;
+    private final Semaphore window;
+    private final int windowSize;
+    private final boolean largestFirst;
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final ArrayDeque<HostQueue> readyHosts = new ArrayDeque<>();
+    private ScheduledExecutorService timer;
+    private int running;
+    private long nextSequence;
+
+    /**
+     * @param runLimit   the tasks which run at once, including the asynchronous ones which wait for their transfers
+     * @param windowSize the tasks which are queued or running
+     */
+    HostScheduler(ExecutorService executor, int runLimit, int windowSize, int maxTasksPerHost,
+                  ConcurrencyController controller) {
+        this(executor, runLimit, windowSize, maxTasksPerHost, controller, false);
+    }
+
+    /**
+     * @param largestFirst whether the tasks start in the order of their expected sizes rather than
+     *                     of their submission
+     */
+    HostScheduler(ExecutorService executor, int runLimit, int windowSize, int maxTasksPerHost,
+                  ConcurrencyController controller, boolean largestFirst) {
+        this.executor = executor;
+        this.runLimit = runLimit;
+        this.maxTasksPerHost = maxTasksPerHost;
+        this.controller = controller;
+        this.window = new Semaphore(windowSize);
+        this.windowSize = windowSize;
+        this.largestFirst = largestFirst;
+
+        controller.setLimitListener(this::dispatch);
+    }
+
+    /**
+     * @return the lowercase host of the link, the tasks of the same host share its queue
+     */
+    static String hostOf(String link) {
+        try {
+            return new URL(link).getHost().toLowerCase();
+        } catch (MalformedURLException e) {
+            return link;
+        }
+    }
+
+    /**
+     * The underlying executor for auxiliary tasks of the running tasks, it doesn't block.
+     */
+    Executor unbounded() {
+        return executor;
+    }
+
+    void submit(String host, Runnable task) throws InterruptedException {
+        submit(host, UNKNOWN_SIZE, task);
+    }
+
+    /**
+     * @param size the expected size of the task's content, it orders the tasks in the largest first order
+     */
+    void submit(String host, long size, Runnable task) throws InterruptedException {
+        submitAsync(host, size, () -> {
+            task.run();
+            return DONE;
+        });
+    }
+
+    /**
+     * Submits the task whose expected size is being found out, e.g. by a HEAD request. The task takes its place
+     * in the window at once and is queued when the size is known.
+     */
+    void submit(String host, CompletableFuture<Long> size, Runnable task) throws InterruptedException {
+        window.acquire();
+        size.whenComplete((sizeValue, e) -> enqueue(host, sizeValue == null ? UNKNOWN_SIZE : sizeValue, () -> {
+            task.run();
+            return DONE;
+        }));
+    }
+
+    /**
+     * Submits the task which starts an asynchronous operation, the task runs until the operation completes.
+     */
+    void submitAsync(String host, Supplier<CompletableFuture<?>> task) throws InterruptedException {
+        submitAsync(host, UNKNOWN_SIZE, task);
+    }
+
+    void submitAsync(String host, long size, Supplier<CompletableFuture<?>> task) throws InterruptedException {
+        window.acquire();
+        enqueue(host, size, task);
+    }
+
+    /**
+     * Submits the task which waits for another one, it's queued to the host which the future completes with.
+     * The task takes its place in the window at once, so the run doesn't complete before it.
+     */
+    void submitAfter(CompletableFuture<String> host, Runnable task) throws InterruptedException {
+        window.acquire();
+        host.whenComplete((hostName, e) -> enqueue(hostName == null ? LOCAL_HOST : hostName, UNKNOWN_SIZE, () -> {
+            task.run();
+            return DONE;
+        }));
+    }
+
+    private void enqueue(String host, long size, Supplier<CompletableFuture<?>> operation) {
+        synchronized (this) {
+            HostQueue hostQueue = hosts.computeIfAbsent(host, this::newHostQueue);
+            hostQueue.tasks.add(new Task(operation, size, nextSequence++));
+            markReady(hostQueue);
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Gives no new tasks to the host for the delay, e.g. after the host has answered with Retry-After.
+     */
+    void pause(String host, long delayMillis) {
+        long resumeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+
+        synchronized (this) {
+            HostQueue hostQueue = hosts.computeIfAbsent(host, this::newHostQueue);
+            if (hostQueue.pausedUntilNanos - resumeNanos >= 0) {
+                return;
+            }
+
+            hostQueue.pausedUntilNanos = resumeNanos;
+            if (hostQueue.ready) {
+                readyHosts.remove(hostQueue);
+                hostQueue.ready = false;
+            }
+
+            if (timer == null) {
+                timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "host-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            timer.schedule(() -> {
+                synchronized (this) {
+                    markReady(hostQueue);
+                    if (hostQueue.isIdle()) {
+                        hosts.remove(hostQueue.host, hostQueue);
+                    }
+                }
+                dispatch();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void awaitCompletion() throws InterruptedException {
+        window.acquire(windowSize);
+        window.release(windowSize);
+    }
+
+    void shutdown() {
+        executor.shutdown();
+        stopTimer();
+    }
+
+    void shutdownNow() {
+        executor.shutdownNow();
+        stopTimer();
+    }
+
+    private synchronized void stopTimer() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    private void dispatch() {
+        List<Runnable> starts = new ArrayList<>();
+
+        synchronized (this) {
+            HostQueue hostQueue;
+
+            while (running < runLimit && (hostQueue = pollReadyHost()) != null) {
+                if (!LOCAL_HOST.equals(hostQueue.host) && !controller.tryAcquire()) {
+                    // The download keeps its turn, the local tasks behind it need no permit
+                    readyHosts.addFirst(hostQueue);
+                    hostQueue = pollLocalHost();
+                    if (hostQueue == null) {
+                        break;
+                    }
+                }
+
+                Supplier<CompletableFuture<?>> task = hostQueue.tasks.poll().operation;
+                hostQueue.active++;
+                hostQueue.ready = false;
+                running++;
+                markReady(hostQueue);
+
+                HostQueue startedHost = hostQueue;
+                starts.add(() -> run(startedHost, task));
+            }
+        }
+
+        for (Runnable start : starts) {
+            executor.execute(start);
+        }
+    }
+
+    private void run(HostQueue hostQueue, Supplier<CompletableFuture<?>> task) {
+        CompletableFuture<?> operation;
+
+        try {
+            operation = task.get();
+        } catch (RuntimeException e) {
+            complete(hostQueue);
+            throw e;
+        }
+
+        operation.whenComplete((result, e) -> complete(hostQueue));
+    }
+
+    private void complete(HostQueue hostQueue) {
+        synchronized (this) {
+            hostQueue.active--;
+            running--;
+            if (!LOCAL_HOST.equals(hostQueue.host)) {
+                controller.release();
+            }
+
+            markReady(hostQueue);
+            if (hostQueue.isIdle()) {
+                hosts.remove(hostQueue.host, hostQueue);
+            }
+        }
+
+        window.release();
+        dispatch();
+    }
+
+    private HostQueue newHostQueue(String host) {
+        return new HostQueue(host, largestFirst ? new PriorityQueue<>(LARGEST_FIRST) : new ArrayDeque<>());
+    }
+
+    /**
+     * @return the next host in the turn or, in the largest first order, the host with the largest queued task
+     */
+    private HostQueue pollReadyHost() {
+        if (!largestFirst) {
+            return readyHosts.poll();
+        }
+
+        HostQueue largest = null;
+        for (HostQueue hostQueue : readyHosts) {
+            if (largest == null || LARGEST_FIRST.compare(hostQueue.tasks.peek(), largest.tasks.peek()) < 0) {
+                largest = hostQueue;
+            }
+        }
+
+        if (largest != null) {
+            readyHosts.remove(largest);
+        }
+
+        return largest;
+    }
+
+    /**
+     * @return the local host if it has a task which may start now, whatever its place in the turn
+     */
+    private HostQueue pollLocalHost() {
+        HostQueue localHost = hosts.get(LOCAL_HOST);
+        if (localHost == null || !localHost.ready) {
+            return null;
+        }
+
+        readyHosts.remove(localHost);
+        return localHost;
+    }
+
+    /**
+     * Puts the host at the end of the turn if it has a task which may start now.
+     */
+    private void markReady(HostQueue hostQueue) {
+        int limit = LOCAL_HOST.equals(hostQueue.host) ? runLimit : maxTasksPerHost;
+
+        if (!hostQueue.ready && !hostQueue.tasks.isEmpty() && hostQueue.active < limit && !hostQueue.isPaused()) {
+
+            hostQueue.ready = true;
+            readyHosts.add(hostQueue);
+        }
+    }
+
+    private static class Task {
+        final Supplier<CompletableFuture<?>> operation;
+        final long size;
+        final long sequence;
+
+        Task(Supplier<CompletableFuture<?>> operation, long size, long sequence) {
+            this.operation = operation;
+            this.size = size;
+            this.sequence = sequence;
+        }
+    }
+
+    private static class HostQueue {
+        final String host;
+        final Queue<Task> tasks;
+        int active;
+        boolean ready;
+        long pausedUntilNanos = System.nanoTime();
+
+        HostQueue(String host, Queue<Task> tasks) {
+            this.host = host;
+            this.tasks = tasks;
+        }
+
+        boolean isPaused() {
+            return pausedUntilNanos - System.nanoTime() > 0;
+        }
+
+        boolean isIdle() {
+            return tasks.isEmpty() && active == 0 && !isPaused();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The server answered with an error status, the status tells whether the download is worth retrying
+ * and Retry-After tells when.
+ */
+public class HttpStatusException extends IOException {
+    public static final long NO_RETRY_AFTER = -1L;
+
+    private final String link;
+    private final int statusCode;
+    private final long retryAfterMillis;
+
+    public HttpStatusException(String link, int statusCode) {
+        this(link, statusCode, NO_RETRY_AFTER);
+    }
+
+    public HttpStatusException(String link, int statusCode, long retryAfterMillis) {
+        super(String.format("Server returned HTTP response code: %d for URL: %s", statusCode, link));
+        this.link = link;
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Reads the value of Retry-After, which is either the delay in seconds or the HTTP date.
+     *
+     * @return the delay in milliseconds or {@link #NO_RETRY_AFTER} if the value is missing or invalid
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NO_RETRY_AFTER;
+        }
+
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            try {
+                Instant date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return Math.max(0, Duration.between(Instant.now(), date).toMillis());
+            } catch (DateTimeParseException dateException) {
+                return NO_RETRY_AFTER;
+            }
+        }
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean hasRetryAfter() {
+        return retryAfterMillis != NO_RETRY_AFTER;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.consoledownloader.downloader;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds repeated links in the stream of link descriptions. Only the links which are being downloaded are kept
+ * as objects, finished links are remembered by their fingerprints and the offsets of their first lines.
+ * A fingerprint match is confirmed by reading the first line again, so a hash collision can't merge two links.
+ */
+class LinkDeduplicator {
+    private static final HashFunction FINGERPRINT = Hashing.farmHashFingerprint64();
+    private static final int STATE_BITS = 2;
+    private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+    private static final long STATE_ACTIVE = 0L;
+    private static final long STATE_SUCCEEDED = 1L;
+    private static final long STATE_FAILED = 2L;
+
+    private final LinkFileReader reader;
+    private final LinkFingerprints fingerprints;
+    private final ConcurrentMap<Long, LinkGroup> activeGroups = new ConcurrentHashMap<>();
+
+    LinkDeduplicator(LinkFileReader reader) {
+        this(reader, new LinkFingerprints());
+    }
+
+    LinkDeduplicator(LinkFileReader reader, LinkFingerprints fingerprints) {
+        this.reader = reader;
+        this.fingerprints = fingerprints;
+    }
+
+    Resolution resolve(LinkDescription description) throws IOException {
+        long fingerprint = FINGERPRINT.hashString(description.link, StandardCharsets.UTF_8).asLong();
+
+        LinkGroup group = activeGroups.get(fingerprint);
+        if (group != null && group.link.equals(description.link)) {
+            if (group.join(description.dest)) {
+                return Resolution.none();
+            }
+
+            return group.isSucceeded() ? Resolution.copy(group.first.dest) : Resolution.none();
+        }
+
+        long value = fingerprints.get(fingerprint);
+        if (value != LinkFingerprints.ABSENT) {
+            LinkDescription first = reader.readAt(value >>> STATE_BITS);
+
+            if (first.link.equals(description.link)) {
+                return (value & STATE_MASK) == STATE_SUCCEEDED ? Resolution.copy(first.dest) : Resolution.none();
+            }
+        }
+
+        LinkGroup newGroup = new LinkGroup(description, fingerprint);
+        if (group == null && value == LinkFingerprints.ABSENT) {
+            fingerprints.put(fingerprint, description.offset << STATE_BITS | STATE_ACTIVE);
+            activeGroups.put(fingerprint, newGroup);
+        }
+
+        return Resolution.download(newGroup);
+    }
+
+    void complete(LinkGroup group, boolean succeeded) {
+        if (activeGroups.get(group.fingerprint) == group) {
+            fingerprints.replace(group.fingerprint,
+                group.first.offset << STATE_BITS | (succeeded ? STATE_SUCCEEDED : STATE_FAILED));
+            activeGroups.remove(group.fingerprint);
+        }
+    }
+
+    static class Resolution {
+        private static final Resolution NONE = new Resolution(null, null);
+
+        final LinkGroup group;
+        final String copySource;
+
+        private Resolution(LinkGroup group, String copySource) {
+            this.group = group;
+            this.copySource = copySource;
+        }
+
+        static Resolution none() {
+            return NONE;
+        }
+
+        static Resolution download(LinkGroup group) {
+            return new Resolution(group, null);
+        }
+
+        static Resolution copy(String copySource) {
+            return new Resolution(null, copySource);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.consoledownloader.downloader;
+
+class LinkDescription {
+    static final long UNKNOWN_SIZE = -1L;
+
+    final String link;
+    final String dest;
+    final long offset;
+    final String checksum;
+    final long size;
+
+    LinkDescription(String link, String dest, long offset) {
+        this(link, dest, offset, "");
+    }
+
+    /**
+     * @param checksum the expected SHA-256 of the content in lowercase hex or the empty string
+     */
+    LinkDescription(String link, String dest, long offset, String checksum) {
+        this(link, dest, offset, checksum, UNKNOWN_SIZE);
+    }
+
+    /**
+     * @param size the declared size of the content or {@link #UNKNOWN_SIZE}
+     */
+    LinkDescription(String link, String dest, long offset, String checksum, long size) {
+        this.link = link;
+        this.dest = dest;
+        this.offset = offset;
+        this.checksum = checksum;
+        this.size = size;
+    }
+
+    String getLink() {
+        return link;
+    }
+
+    String getDest() {
+        return dest;
+    }
+}
@@ -5,4 +5,16 @@ import java.io.InputStream;
 
 public interface LinkDownloader {
     InputStream download(String link) throws IOException;
+
+    default LinkInfo probe(String link) throws IOException {
+        return LinkInfo.unknown();
+    }
+
+    default LinkResponse open(LinkRequest request) throws IOException {
+        if (!request.isPlain()) {
+            throw new IOException(String.format("%s: range requests are not supported", request.getLink()));
+        }
+
+        return new LinkResponse(download(request.getLink()), LinkInfo.unknown());
+    }
 }
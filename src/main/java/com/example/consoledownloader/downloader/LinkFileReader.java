@@ -0,0 +1,158 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the link file line by line without loading it into memory. Every description keeps the offset
+ * of its line, so the line can be read again later with {@link #readAt(long)}.
+ * <p>
+ * A line is the link, the destination and optionally the expected checksum of the content,
+ * e.g. {@code sha256:<64 hex digits>}, and the expected size of the content, e.g. {@code size:1048576},
+ * in any order.
+ */
+class LinkFileReader implements Closeable {
+    private static final String LINK_LINE_DELIMITER = " ";
+    private static final Pattern CHECKSUM_PATTERN = Pattern.compile("^sha256:([0-9a-fA-F]{64})$");
+    private static final Pattern SIZE_PATTERN = Pattern.compile("^size:(\\d{1,18})$");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_LINE_SIZE = 256;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer randomAccessBuffer = ByteBuffer.allocate(INITIAL_LINE_SIZE);
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    private long position;
+    private long lineNumber;
+
+    LinkFileReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer.flip();
+    }
+
+    /**
+     * @return the next link description or {@code null} if the end of the file is reached
+     * @throws LinkFormatException if the line is malformed, the reading can be continued after that
+     */
+    LinkDescription next() throws IOException {
+        while (true) {
+            long lineOffset = position;
+            int lineLength = readLine();
+
+            if (lineLength < 0) {
+                return null;
+            }
+
+            lineNumber++;
+            String text = new String(line, 0, lineLength, StandardCharsets.UTF_8).trim();
+
+            if (!text.isEmpty()) {
+                return parse(text, lineOffset, lineNumber);
+            }
+        }
+    }
+
+    LinkDescription readAt(long offset) throws IOException {
+        int length = 0;
+        boolean endOfLine = false;
+
+        while (!endOfLine) {
+            randomAccessBuffer.clear();
+            int read = channel.read(randomAccessBuffer, offset + length);
+            if (read <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < read && !endOfLine; i++) {
+                byte b = randomAccessBuffer.get(i);
+                endOfLine = b == '\n';
+
+                if (!endOfLine) {
+                    appendToLine(length++, b);
+                }
+            }
+        }
+
+        String text = new String(line, 0, length, StandardCharsets.UTF_8).trim();
+        return parse(text, offset, -1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static LinkDescription parse(String text, long offset, long lineNumber) throws LinkFormatException {
+        String[] parts = text.split(LINK_LINE_DELIMITER);
+
+        if (parts.length < 2) {
+            throw new LinkFormatException(String.format("The line %d has no destination: %s", lineNumber, text));
+        }
+
+        if (parts.length < 3) {
+            return new LinkDescription(parts[0], parts[1], offset);
+        }
+
+        String checksum = "";
+        long size = LinkDescription.UNKNOWN_SIZE;
+
+        for (int i = 2; i < parts.length; i++) {
+            Matcher checksumMatcher = CHECKSUM_PATTERN.matcher(parts[i]);
+            Matcher sizeMatcher = SIZE_PATTERN.matcher(parts[i]);
+
+            if (checksumMatcher.matches()) {
+                checksum = checksumMatcher.group(1).toLowerCase();
+            } else if (sizeMatcher.matches()) {
+                size = Long.parseLong(sizeMatcher.group(1));
+            } else {
+                throw new LinkFormatException(String.format("The line %d has an unknown checksum or size, "
+                    + "sha256:HEX or size:BYTES is expected: %s", lineNumber, text));
+            }
+        }
+
+        return new LinkDescription(parts[0], parts[1], offset, checksum, size);
+    }
+
+    private int readLine() throws IOException {
+        int length = 0;
+
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+
+                if (read < 0) {
+                    return length == 0 ? -1 : length;
+                }
+            }
+
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                position++;
+
+                if (b == '\n') {
+                    return length;
+                }
+
+                appendToLine(length++, b);
+            }
+        }
+    }
+
+    private void appendToLine(int index, byte b) {
+        if (index == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+
+        line[index] = b;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An open addressing map from 64-bit link fingerprints to long values. It takes 16 bytes per slot,
+ * which is much less than a map of link strings, so it can hold the links of very large link files.
+ * <p>
+ * The slots of a mapped map are in a temporary file mapped into the memory rather than on the heap, so a run with
+ * the bounded memory keeps the same heap for any number of links, the pages of the file are cached by the system.
+ */
+class LinkFingerprints {
+    static final long ABSENT = -1L;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAPPED_INITIAL_CAPACITY = 1 << 20;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final long EMPTY_KEY = 0L;
+
+    private final boolean mapped;
+    private Slots slots;
+    private boolean hasEmptyKey;
+    private long emptyKeyValue;
+    private int size;
+
+    LinkFingerprints() {
+        this.mapped = false;
+        this.slots = new HeapSlots(INITIAL_CAPACITY);
+    }
+
+    private LinkFingerprints(Slots slots) {
+        this.mapped = true;
+        this.slots = slots;
+    }
+
+    static LinkFingerprints mapped() throws IOException {
+        return new LinkFingerprints(MappedSlots.create(MAPPED_INITIAL_CAPACITY));
+    }
+
+    synchronized long get(long fingerprint) {
+        if (fingerprint == EMPTY_KEY) {
+            return hasEmptyKey ? emptyKeyValue : ABSENT;
+        }
+
+        int index = find(slots, fingerprint);
+        return slots.key(index) == fingerprint ? slots.value(index) : ABSENT;
+    }
+
+    /**
+     * Adds the fingerprint or replaces its value, a new fingerprint may grow the map.
+     */
+    synchronized void put(long fingerprint, long value) throws IOException {
+        if (fingerprint == EMPTY_KEY) {
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return;
+        }
+
+        int index = find(slots, fingerprint);
+        if (slots.key(index) == EMPTY_KEY) {
+            size++;
+        }
+        slots.set(index, fingerprint, value);
+
+        if (size * 4L >= slots.capacity() * 3L) {
+            grow();
+        }
+    }
+
+    /**
+     * Replaces the value of a fingerprint which is in the map, so unlike {@link #put} it never grows the map.
+     */
+    synchronized void replace(long fingerprint, long value) {
+        if (fingerprint == EMPTY_KEY) {
+            emptyKeyValue = value;
+            return;
+        }
+
+        int index = find(slots, fingerprint);
+        if (slots.key(index) == fingerprint) {
+            slots.set(index, fingerprint, value);
+        }
+    }
+
+    synchronized int size() {
+        return size + (hasEmptyKey ? 1 : 0);
+    }
+
+    private void grow() throws IOException {
+        Slots oldSlots = slots;
+        if (oldSlots.capacity() == MAX_CAPACITY) {
+            throw new IOException(String.format("More than %d distinct links", size));
+        }
+
+        int capacity = oldSlots.capacity() * 2;
+        Slots newSlots = mapped ? MappedSlots.create(capacity) : new HeapSlots(capacity);
+
+        for (int i = 0; i < oldSlots.capacity(); i++) {
+            long key = oldSlots.key(i);
+            if (key != EMPTY_KEY) {
+                newSlots.set(find(newSlots, key), key, oldSlots.value(i));
+            }
+        }
+
+        slots = newSlots;
+    }
+
+    private static int find(Slots slots, long fingerprint) {
+        int mask = slots.capacity() - 1;
+        int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+
+        while (slots.key(index) != EMPTY_KEY && slots.key(index) != fingerprint) {
+            index = (index + 1) & mask;
+        }
+
+        return index;
+    }
+
+    private interface Slots {
+        int capacity();
+
+        long key(int index);
+
+        long value(int index);
+
+        void set(int index, long key, long value);
+    }
+
+    private static class HeapSlots implements Slots {
+        private final long[] keys;
+        private final long[] values;
+
+        HeapSlots(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new long[capacity];
+        }
+
+        @Override
+        public int capacity() {
+            return keys.length;
+        }
+
+        @Override
+        public long key(int index) {
+            return keys[index];
+        }
+
+        @Override
+        public long value(int index) {
+            return values[index];
+        }
+
+        @Override
+        public void set(int index, long key, long value) {
+            keys[index] = key;
+            values[index] = value;
+        }
+    }
+
+    /**
+     * A key and its value are next to each other in the file. A mapping is at most 2 GB, so a large file is mapped
+     * in segments. The file is deleted when it's created, the pages stay until the segments are collected.
+     */
+    private static class MappedSlots implements Slots {
+        private static final int SEGMENT_SHIFT = 26;
+        private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+        private static final int SLOT_BYTES = 2 * Long.BYTES;
+
+        private final int capacity;
+        private final LongBuffer[] segments;
+
+        private MappedSlots(int capacity, LongBuffer[] segments) {
+            this.capacity = capacity;
+            this.segments = segments;
+        }
+
+        static MappedSlots create(int capacity) throws IOException {
+            Path file = Files.createTempFile("consoledownloader-links", ".bin");
+            int segmentSlots = Math.min(capacity, 1 << SEGMENT_SHIFT);
+            LongBuffer[] segments = new LongBuffer[capacity / segmentSlots];
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)) {
+
+                for (int i = 0; i < segments.length; i++) {
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSlots * SLOT_BYTES,
+                        (long) segmentSlots * SLOT_BYTES)
+                        .order(ByteOrder.nativeOrder())
+                        .asLongBuffer();
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+
+            return new MappedSlots(capacity, segments);
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public long key(int index) {
+            return segments[index >>> SEGMENT_SHIFT].get((index & SEGMENT_MASK) * 2);
+        }
+
+        @Override
+        public long value(int index) {
+            return segments[index >>> SEGMENT_SHIFT].get((index & SEGMENT_MASK) * 2 + 1);
+        }
+
+        @Override
+        public void set(int index, long key, long value) {
+            LongBuffer segment = segments[index >>> SEGMENT_SHIFT];
+            int offset = (index & SEGMENT_MASK) * 2;
+
+            segment.put(offset, key);
+            segment.put(offset + 1, value);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.IOException;
+
+public class LinkFormatException extends IOException {
+    public LinkFormatException(String message) {
+        super(message);
+    }
+}
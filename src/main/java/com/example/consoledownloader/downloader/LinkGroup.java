@@ -0,0 +1,73 @@
+package com.example.consoledownloader.downloader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A link which is being downloaded together with the destinations which should receive its copies.
+ * Destinations can join the group until the download task takes the last of them.
+ */
+class LinkGroup {
+    final String link;
+    final long fingerprint;
+    final LinkDescription first;
+    private List<String> pendingDests = new ArrayList<>();
+    private boolean sealed;
+    private boolean succeeded;
+
+    LinkGroup(LinkDescription first, long fingerprint) {
+        this.link = first.link;
+        this.fingerprint = fingerprint;
+        this.first = first;
+    }
+
+    synchronized boolean join(String dest) {
+        if (sealed) {
+            return false;
+        }
+
+        pendingDests.add(dest);
+        return true;
+    }
+
+    /**
+     * Takes the destinations which joined since the previous call, the group stays open.
+     */
+    synchronized List<String> drainPendingDests() {
+        List<String> dests = pendingDests;
+        pendingDests = new ArrayList<>();
+
+        return dests;
+    }
+
+    /**
+     * Takes the destinations which joined since the previous call. When there are none, the group is sealed
+     * and the following destinations are handled as copies of the finished download.
+     */
+    synchronized List<String> takePendingDests(boolean succeeded) {
+        if (pendingDests.isEmpty()) {
+            this.sealed = true;
+            this.succeeded = succeeded;
+
+            return Collections.emptyList();
+        }
+
+        List<String> dests = pendingDests;
+        pendingDests = new ArrayList<>();
+
+        return dests;
+    }
+
+    synchronized void seal(boolean succeeded) {
+        if (!sealed) {
+            this.sealed = true;
+            this.succeeded = succeeded;
+            this.pendingDests = Collections.emptyList();
+        }
+    }
+
+    synchronized boolean isSucceeded() {
+        return succeeded;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.consoledownloader.downloader;
+
+import com.google.common.base.Strings;
+
+public class LinkInfo {
+    public static final long UNKNOWN_LENGTH = -1L;
+
+    private static final LinkInfo UNKNOWN = new Builder().build();
+
+    private final long contentLength;
+    private final boolean rangeSupported;
+    private final String etag;
+    private final String lastModified;
+    private final String contentEncoding;
+
+    private LinkInfo(Builder builder) {
+        this.contentLength = builder.contentLength;
+        this.rangeSupported = builder.rangeSupported;
+        this.etag = Strings.nullToEmpty(builder.etag);
+        this.lastModified = Strings.nullToEmpty(builder.lastModified);
+        this.contentEncoding = Strings.nullToEmpty(builder.contentEncoding);
+    }
+
+    public static LinkInfo unknown() {
+        return UNKNOWN;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public boolean isLengthKnown() {
+        return contentLength != UNKNOWN_LENGTH;
+    }
+
+    public boolean isRangeSupported() {
+        return rangeSupported;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * The encoding of the body, e.g. gzip, or an empty string if the body is the file as is. The Content-Length
+     * is the length of the encoded body then.
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public boolean isEncoded() {
+        return !contentEncoding.isEmpty();
+    }
+
+    public boolean hasValidator() {
+        return !etag.isEmpty() || !lastModified.isEmpty();
+    }
+
+    /**
+     * The value for the If-Range header: the ETag if it is strong, otherwise the Last-Modified date.
+     */
+    public String getRangeValidator() {
+        return !etag.isEmpty() && !etag.startsWith("W/") ? etag : lastModified;
+    }
+
+    public static class Builder {
+        private long contentLength = UNKNOWN_LENGTH;
+        private boolean rangeSupported;
+        private String etag;
+        private String lastModified;
+        private String contentEncoding;
+
+        public Builder contentLength(long contentLength) {
+            this.contentLength = contentLength < 0 ? UNKNOWN_LENGTH : contentLength;
+            return this;
+        }
+
+        public Builder rangeSupported(boolean rangeSupported) {
+            this.rangeSupported = rangeSupported;
+            return this;
+        }
+
+        public Builder etag(String etag) {
+            this.etag = etag;
+            return this;
+        }
+
+        public Builder lastModified(String lastModified) {
+            this.lastModified = lastModified;
+            return this;
+        }
+
+        public Builder contentEncoding(String contentEncoding) {
+            this.contentEncoding = contentEncoding;
+            return this;
+        }
+
+        public LinkInfo build() {
+            return new LinkInfo(this);
+        }
+    }
+}
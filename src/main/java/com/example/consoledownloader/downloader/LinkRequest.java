@@ -0,0 +1,130 @@
+package com.example.consoledownloader.downloader;
+
+import com.google.common.base.Strings;
+
+public class LinkRequest {
+    public static final long NO_RANGE = -1L;
+
+    private final String link;
+    private final long rangeStart;
+    private final long rangeEnd;
+    private final String rangeValidator;
+    private final String ifNoneMatch;
+    private final String ifModifiedSince;
+    private final boolean compressionAccepted;
+
+    private LinkRequest(Builder builder) {
+        this.link = builder.link;
+        this.rangeStart = builder.rangeStart;
+        this.rangeEnd = builder.rangeEnd;
+        this.rangeValidator = Strings.nullToEmpty(builder.rangeValidator);
+        this.ifNoneMatch = Strings.nullToEmpty(builder.ifNoneMatch);
+        this.ifModifiedSince = Strings.nullToEmpty(builder.ifModifiedSince);
+        this.compressionAccepted = builder.compressionAccepted;
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    public boolean hasRange() {
+        return rangeStart != NO_RANGE;
+    }
+
+    public long getRangeStart() {
+        return rangeStart;
+    }
+
+    /**
+     * The last byte of the range (inclusive) or {@link #NO_RANGE} if the range is open-ended.
+     */
+    public long getRangeEnd() {
+        return rangeEnd;
+    }
+
+    public String getRangeValidator() {
+        return rangeValidator;
+    }
+
+    /**
+     * The ETag of the cached copy, the server answers 304 if it still matches.
+     */
+    public String getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    /**
+     * The Last-Modified of the cached copy, the server answers 304 if the file hasn't changed since.
+     */
+    public String getIfModifiedSince() {
+        return ifModifiedSince;
+    }
+
+    /**
+     * @return whether the server may send the body in gzip or deflate, it's ignored with a range, as the range
+     * would be of the encoded body
+     */
+    public boolean isCompressionAccepted() {
+        return compressionAccepted && !hasRange();
+    }
+
+    public boolean isConditional() {
+        return !ifNoneMatch.isEmpty() || !ifModifiedSince.isEmpty();
+    }
+
+    /**
+     * @return whether the request has no range, the conditions may be ignored by the engines which don't
+     * support them, then the whole file is received
+     */
+    public boolean isPlain() {
+        return !hasRange();
+    }
+
+    public static class Builder {
+        private final String link;
+        private long rangeStart = NO_RANGE;
+        private long rangeEnd = NO_RANGE;
+        private String rangeValidator;
+        private String ifNoneMatch;
+        private String ifModifiedSince;
+        private boolean compressionAccepted;
+
+        public Builder(String link) {
+            this.link = link;
+        }
+
+        public Builder range(long start, long end) {
+            this.rangeStart = start;
+            this.rangeEnd = end;
+            return this;
+        }
+
+        public Builder rangeFrom(long start) {
+            return range(start, NO_RANGE);
+        }
+
+        public Builder rangeValidator(String rangeValidator) {
+            this.rangeValidator = rangeValidator;
+            return this;
+        }
+
+        public Builder ifNoneMatch(String ifNoneMatch) {
+            this.ifNoneMatch = ifNoneMatch;
+            return this;
+        }
+
+        public Builder ifModifiedSince(String ifModifiedSince) {
+            this.ifModifiedSince = ifModifiedSince;
+            return this;
+        }
+
+        public Builder compressionAccepted(boolean compressionAccepted) {
+            this.compressionAccepted = compressionAccepted;
+            return this;
+        }
+
+        public LinkRequest build() {
+            return new LinkRequest(this);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class LinkResponse implements Closeable {
+    private final InputStream inputStream;
+    private final LinkInfo info;
+    private final boolean notModified;
+    private final LinkTimings timings;
+
+    public LinkResponse(InputStream inputStream, LinkInfo info) {
+        this(inputStream, info, LinkTimings.unknown());
+    }
+
+    /**
+     * @param timings the phases of the request up to the response headers
+     */
+    public LinkResponse(InputStream inputStream, LinkInfo info, LinkTimings timings) {
+        this(inputStream, info, false, timings);
+    }
+
+    private LinkResponse(InputStream inputStream, LinkInfo info, boolean notModified, LinkTimings timings) {
+        this.inputStream = inputStream;
+        this.info = info;
+        this.notModified = notModified;
+        this.timings = timings;
+    }
+
+    /**
+     * The answer to a conditional request when the cached copy is still valid, it has no body.
+     */
+    public static LinkResponse notModified(LinkInfo info) {
+        return notModified(info, LinkTimings.unknown());
+    }
+
+    public static LinkResponse notModified(LinkInfo info, LinkTimings timings) {
+        return new LinkResponse(new ByteArrayInputStream(new byte[0]), info, true, timings);
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public LinkInfo getInfo() {
+        return info;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    public LinkTimings getTimings() {
+        return timings;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.consoledownloader.downloader;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the links of a file into shards by the consistent hash of the link, so all the lines of a link, i.e.
+ * its duplicates, are in the same shard, and a change of the shard count moves only a part of the links.
+ */
+public class LinkSharding {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final HashFunction PART_HASH = Hashing.murmur3_128(1);
+
+    private LinkSharding() {
+    }
+
+    /**
+     * @return the shard of the link from 0 to the count - 1
+     */
+    public static int shardOf(String link, int shardCount) {
+        return Hashing.consistentHash(HASH.hashString(link, StandardCharsets.UTF_8), shardCount);
+    }
+
+    /**
+     * Splits a shard further, the hash is another one, so the links of a shard spread over all its parts.
+     *
+     * @return the part of the link from 0 to the count - 1
+     */
+    public static int partOf(String link, int partCount) {
+        return Hashing.consistentHash(PART_HASH.hashString(link, StandardCharsets.UTF_8), partCount);
+    }
+
+    /**
+     * @return the link part of a line of the link file or {@code null} if the line is empty
+     */
+    public static String linkOf(String line) {
+        String text = line.trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+
+        int end = text.indexOf(' ');
+        return end < 0 ? text : text.substring(0, end);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.consoledownloader.downloader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases of a link's download in nanoseconds, {@link #UNKNOWN} if the phase hasn't been measured:
+ * <ul>
+ * <li>dns: resolving the host, it's near zero if the address is cached</li>
+ * <li>connect: the TCP connection and, for HTTPS, the TLS handshake, near zero if a kept alive connection
+ * is reused</li>
+ * <li>wait: from the request to the response headers, mostly the server's think time</li>
+ * <li>transfer: from the response headers to the end of the body</li>
+ * <li>total: from the start of the link to its end, including the retries</li>
+ * </ul>
+ * The phases are of the request which brought the body, the segmented downloads have only the transfer
+ * and the total.
+ */
+public class LinkTimings {
+    public static final long UNKNOWN = -1L;
+
+    private static final LinkTimings UNKNOWN_TIMINGS = new Builder().build();
+
+    private final long dnsNanos;
+    private final long connectNanos;
+    private final long serverWaitNanos;
+    private final long transferNanos;
+    private final long totalNanos;
+
+    private LinkTimings(Builder builder) {
+        this.dnsNanos = builder.dnsNanos;
+        this.connectNanos = builder.connectNanos;
+        this.serverWaitNanos = builder.serverWaitNanos;
+        this.transferNanos = builder.transferNanos;
+        this.totalNanos = builder.totalNanos;
+    }
+
+    public static LinkTimings unknown() {
+        return UNKNOWN_TIMINGS;
+    }
+
+    public long getDnsNanos() {
+        return dnsNanos;
+    }
+
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    public long getServerWaitNanos() {
+        return serverWaitNanos;
+    }
+
+    public long getTransferNanos() {
+        return transferNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public boolean isKnown() {
+        return totalNanos != UNKNOWN;
+    }
+
+    /**
+     * @return the measured phases, e.g. "dns 2 ms, connect 15 ms, wait 120 ms, transfer 2.4 s, total 2.6 s"
+     */
+    public String format() {
+        List<String> phases = new ArrayList<>();
+        addPhase(phases, "dns", dnsNanos);
+        addPhase(phases, "connect", connectNanos);
+        addPhase(phases, "wait", serverWaitNanos);
+        addPhase(phases, "transfer", transferNanos);
+        addPhase(phases, "total", totalNanos);
+
+        return String.join(", ", phases);
+    }
+
+    private static void addPhase(List<String> phases, String name, long nanos) {
+        if (nanos == UNKNOWN) {
+            return;
+        }
+
+        phases.add(nanos < TimeUnit.SECONDS.toNanos(1)
+            ? String.format("%s %d ms", name, TimeUnit.NANOSECONDS.toMillis(nanos))
+            : String.format(Locale.ROOT, "%s %.1f s", name, nanos / 1e9));
+    }
+
+    public static class Builder {
+        private long dnsNanos = UNKNOWN;
+        private long connectNanos = UNKNOWN;
+        private long serverWaitNanos = UNKNOWN;
+        private long transferNanos = UNKNOWN;
+        private long totalNanos = UNKNOWN;
+
+        public Builder() {
+        }
+
+        /**
+         * Starts with the phases of the given timings, e.g. the request's ones get the transfer and the total.
+         */
+        public Builder(LinkTimings timings) {
+            this.dnsNanos = timings.dnsNanos;
+            this.connectNanos = timings.connectNanos;
+            this.serverWaitNanos = timings.serverWaitNanos;
+            this.transferNanos = timings.transferNanos;
+            this.totalNanos = timings.totalNanos;
+        }
+
+        public Builder dns(long nanos) {
+            this.dnsNanos = nanos;
+            return this;
+        }
+
+        public Builder connect(long nanos) {
+            this.connectNanos = nanos;
+            return this;
+        }
+
+        public Builder serverWait(long nanos) {
+            this.serverWaitNanos = nanos;
+            return this;
+        }
+
+        public Builder transfer(long nanos) {
+            this.transferNanos = nanos;
+            return this;
+        }
+
+        public Builder total(long nanos) {
+            this.totalNanos = nanos;
+            return this;
+        }
+
+        public LinkTimings build() {
+            return new LinkTimings(this);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+
+import java.io.IOException;
+
+/**
+ * Splits the bounded memory of a run between its parts, a part which has used its share makes the previous one
+ * wait: the reading of the link file waits for the window of the scheduler and the transfers wait for the copy
+ * buffers. The kept results are bounded too: the log isn't retained, the listener gets the records, and fewer
+ * slowest downloads are kept. The seen links are remembered outside the heap, see {@link LinkFingerprints},
+ * so nothing on the heap grows with the link file.
+ * <p>
+ * The sizes of the queued tasks and of the log records are estimates of their objects with their strings.
+ */
+class MemoryBudget {
+    private static final int TASK_BYTES = 2 * 1024;
+    private static final int RECORD_BYTES = 1024;
+    private static final int MIN_BUFFER_SIZE = 16 * 1024;
+    private static final MemoryBudget UNBOUNDED = new MemoryBudget(0);
+
+    private final long maxMemory;
+
+    private MemoryBudget(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    static MemoryBudget of(Options options) {
+        return options.getMaxMemory() > 0 ? new MemoryBudget(options.getMaxMemory()) : UNBOUNDED;
+    }
+
+    boolean isBounded() {
+        return maxMemory > 0;
+    }
+
+    /**
+     * @return the tasks which are queued or running, at least one per thread
+     */
+    int windowSize(int unboundedSize, int threadNumber) {
+        if (!isBounded()) {
+            return unboundedSize;
+        }
+
+        return (int) Math.max(threadNumber, Math.min(unboundedSize, taskMemory() / TASK_BYTES));
+    }
+
+    /**
+     * @return the requested size or a smaller one if the threads' buffers wouldn't fit in their share
+     */
+    int bufferSize(int requestedSize, int threadNumber) {
+        if (!isBounded()) {
+            return requestedSize;
+        }
+
+        return (int) Math.min(requestedSize, Math.max(MIN_BUFFER_SIZE, bufferMemory() / threadNumber));
+    }
+
+    /**
+     * @return the buffers of the size which are taken at once
+     */
+    int maxBuffers(int bufferSize) {
+        if (!isBounded()) {
+            return Integer.MAX_VALUE;
+        }
+
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, bufferMemory() / bufferSize));
+    }
+
+    int slowestCount(int requestedCount) {
+        if (!isBounded()) {
+            return requestedCount;
+        }
+
+        return (int) Math.min(requestedCount, resultMemory() / RECORD_BYTES);
+    }
+
+    boolean isLogRetained(boolean logRetained) {
+        return logRetained && !isBounded();
+    }
+
+    LinkFingerprints newFingerprints() throws IOException {
+        return isBounded() ? LinkFingerprints.mapped() : new LinkFingerprints();
+    }
+
+    /**
+     * The buffers take a half, the tasks a quarter and the results an eighth, the rest is for the reader,
+     * the metrics and the per host state.
+     */
+    private long bufferMemory() {
+        return maxMemory / 2;
+    }
+
+    private long taskMemory() {
+        return maxMemory / 4;
+    }
+
+    private long resultMemory() {
+        return maxMemory / 8;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Writes the metrics file of the run every interval and at the end of the run. The file is written next to
+ * its place and moved over it, so a collector never reads a half-written file.
+ */
+class MetricsExporter implements AutoCloseable {
+    private static final MetricsExporter NONE = new MetricsExporter(null, null, DownloadMetrics.disabled(), e -> { });
+
+    private final Path file;
+    private final Options.MetricsFormat format;
+    private final DownloadMetrics metrics;
+    private final Consumer<String> errorConsumer;
+    private ScheduledExecutorService scheduler;
+    private boolean failing;
+
+    private MetricsExporter(Path file, Options.MetricsFormat format, DownloadMetrics metrics,
+                            Consumer<String> errorConsumer) {
+        this.file = file;
+        this.format = format;
+        this.metrics = metrics;
+        this.errorConsumer = errorConsumer;
+    }
+
+    /**
+     * @param errorConsumer gets the message of a failed write, the failures in a row are reported once
+     */
+    static MetricsExporter start(Options options, DownloadMetrics metrics, Consumer<String> errorConsumer) {
+        if (!metrics.isEnabled()) {
+            return NONE;
+        }
+
+        MetricsExporter exporter = new MetricsExporter(Paths.get(options.getMetricsFile()),
+            options.getMetricsFormat(), metrics, errorConsumer);
+        long intervalMillis = TimeUnit.SECONDS.toMillis(options.getMetricsInterval());
+
+        exporter.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduler.scheduleAtFixedRate(exporter::write, intervalMillis, intervalMillis,
+            TimeUnit.MILLISECONDS);
+
+        return exporter;
+    }
+
+    synchronized void write() {
+        if (file == null) {
+            return;
+        }
+
+        String text = format == Options.MetricsFormat.JSON ? metrics.formatJson() : metrics.formatPrometheus();
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            Files.write(tempFile, text.getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            failing = false;
+        } catch (IOException e) {
+            if (!failing) {
+                errorConsumer.accept(String.format("Cannot write the metrics: %s", e.getMessage()));
+            }
+            failing = true;
+        }
+    }
+
+    /**
+     * Stops the periodic writes and writes the final metrics.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        write();
+    }
+}
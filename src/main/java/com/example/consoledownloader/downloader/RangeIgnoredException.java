@@ -0,0 +1,13 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.IOException;
+
+/**
+ * The server answered a range request with the whole content, e.g. as the content has changed since the validator
+ * of the range. The received bytes can't be continued, the download can only start again from the beginning.
+ */
+public class RangeIgnoredException extends IOException {
+    public RangeIgnoredException(String link, int statusCode) {
+        super(String.format("%s: the server ignored the range request (HTTP code %d)", link, statusCode));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.utils.BandwidthBucket;
+import com.example.consoledownloader.utils.RateLimitedInputStream;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * The speed limits of one run: the global one, one per host and one per file. The per host buckets live
+ * until the end of the run, there is one per distinct host.
+ */
+class RateLimits {
+    private final BandwidthBucket globalBucket;
+    private final long hostLimit;
+    private final long fileLimit;
+    private final Map<String, BandwidthBucket> hostBuckets = new ConcurrentHashMap<>();
+    private final LongConsumer waitConsumer;
+
+    /**
+     * @param waitConsumer gets the nanoseconds which every read has waited for the limits
+     */
+    RateLimits(Options options, LongConsumer waitConsumer) {
+        this.globalBucket = options.getLimit() > 0 ? new BandwidthBucket(options.getLimit()) : null;
+        this.hostLimit = options.getHostLimit();
+        this.fileLimit = options.getFileLimit();
+        this.waitConsumer = waitConsumer;
+    }
+
+    /**
+     * @return the wrapper for all streams of the link, e.g. its segments share the file's limit
+     */
+    Function<InputStream, InputStream> forLink(String link) {
+        List<BandwidthBucket> buckets = new ArrayList<>();
+
+        if (globalBucket != null) {
+            buckets.add(globalBucket);
+        }
+        if (hostLimit > 0) {
+            buckets.add(hostBuckets.computeIfAbsent(HostScheduler.hostOf(link),
+                host -> new BandwidthBucket(hostLimit)));
+        }
+        if (fileLimit > 0) {
+            buckets.add(new BandwidthBucket(fileLimit));
+        }
+
+        if (buckets.isEmpty()) {
+            return Function.identity();
+        }
+
+        return in -> new RateLimitedInputStream(in, buckets, waitConsumer);
+    }
+}
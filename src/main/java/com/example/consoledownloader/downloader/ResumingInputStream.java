@@ -0,0 +1,108 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The body of the link which continues with a range request from the last received byte when the connection
+ * fails. The resumption is only possible if the server supports ranges and has a validator, otherwise the failure
+ * is thrown. An encoded body isn't resumed either, as its bytes may differ from request to request. A body which
+ * ends before its known length is a failure as well. A resumption which the server answers with the whole content
+ * stops the resuming, the download starts again from the beginning then.
+ */
+class ResumingInputStream extends FilterInputStream {
+    private final LinkDownloader linkDownloader;
+    private final String link;
+    private final LinkInfo info;
+    private final RetryPolicy retryPolicy;
+    private final AtomicInteger retries;
+    private final boolean resumable;
+    private long position;
+
+    ResumingInputStream(LinkDownloader linkDownloader, String link, LinkResponse response, RetryPolicy retryPolicy,
+                        AtomicInteger retries) {
+        super(response.getInputStream());
+        this.linkDownloader = linkDownloader;
+        this.link = link;
+        this.info = response.getInfo();
+        this.retryPolicy = retryPolicy;
+        this.retries = retries;
+        this.resumable = info.isRangeSupported() && info.hasValidator() && !info.isEncoded();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int read = read(b, 0, 1);
+
+        return read == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        while (true) {
+            try {
+                int read = in.read(b, off, len);
+
+                if (read == -1 && info.isLengthKnown() && position < info.getContentLength()) {
+                    throw new IOException(String.format("%s: the connection was closed after %d of %d bytes",
+                        link, position, info.getContentLength()));
+                }
+                if (read > 0) {
+                    position += read;
+                }
+
+                return read;
+            } catch (IOException e) {
+                resume(e);
+            }
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        position += skipped;
+
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void resume(IOException failure) throws IOException {
+        IOException e = failure;
+
+        while (resumable && retryPolicy.allowRetry(e, retries)) {
+            closeQuietly();
+            retryPolicy.pause(e, retries.get());
+
+            LinkRequest request = new LinkRequest.Builder(link)
+                .rangeFrom(position)
+                .rangeValidator(info.getRangeValidator())
+                .build();
+
+            try {
+                in = linkDownloader.open(request).getInputStream();
+                return;
+            } catch (RangeIgnoredException reopenFailure) {
+                throw reopenFailure;
+            } catch (IOException reopenFailure) {
+                e = reopenFailure;
+            }
+        }
+
+        throw e;
+    }
+
+    private void closeQuietly() {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.consoledownloader.downloader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allows the retries of a run only in proportion to its downloads, so a failing server doesn't get a multiple
+ * of the normal load. Every download deposits a fraction of a retry, every retry withdraws a whole one.
+ * The balance starts with a reserve for the runs of a few links and is capped, so a long healthy run doesn't
+ * save up an unlimited number of retries for an outage.
+ */
+class RetryBudget {
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio      the retries per download
+     * @param reserve    the retries which are allowed at the start
+     * @param maxRetries the retries which may be saved up
+     */
+    RetryBudget(double ratio, int reserve, int maxRetries) {
+        this.deposit = Math.round(ratio * SCALE);
+        this.maxBalance = Math.max(reserve, maxRetries) * SCALE;
+        this.balance = new AtomicLong(reserve * SCALE);
+    }
+
+    void recordDownload() {
+        balance.accumulateAndGet(deposit, (current, added) -> Math.min(current + added, maxBalance));
+    }
+
+    boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.UnknownServiceException;
+import java.nio.file.FileSystemException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Decides which failures of a run are retried and how long to wait before. The delay doubles with every retry
+ * of the link up to {@link #MAX_DELAY_MILLIS}, a random half of it is the jitter, so the retries of the links
+ * which failed together don't come back together. The server's Retry-After up to {@link #MAX_RETRY_AFTER_MILLIS}
+ * is the minimum delay, it's also passed to the throttle listener. All links share the {@link RetryBudget}.
+ */
+class RetryPolicy implements AutoCloseable {
+    static final int MAX_DELAY_MILLIS = 30 * 1000;
+    static final int MAX_RETRY_AFTER_MILLIS = 10 * 60 * 1000;
+    private static final double BUDGET_RATIO = 0.2;
+    private static final int BUDGET_RESERVE = 10;
+    private static final int BUDGET_MAX_RETRIES = 100;
+
+    private final int maxRetries;
+    private final long baseDelayNanos;
+    private final RetryBudget budget;
+    private final Consumer<HttpStatusException> throttleListener;
+    private volatile Consumer<ErrorClass> retryListener = errorClass -> { };
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param throttleListener is called with every failure which has Retry-After, whether it's retried or not
+     */
+    RetryPolicy(Options options, Consumer<HttpStatusException> throttleListener) {
+        this(options.getRetryCount(), options.getRetryDelay(),
+            new RetryBudget(BUDGET_RATIO, BUDGET_RESERVE, BUDGET_MAX_RETRIES), throttleListener);
+    }
+
+    RetryPolicy(int maxRetries, long baseDelayMillis, RetryBudget budget,
+                Consumer<HttpStatusException> throttleListener) {
+        this.maxRetries = maxRetries;
+        this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(baseDelayMillis);
+        this.budget = budget;
+        this.throttleListener = throttleListener;
+    }
+
+    /**
+     * @param retryListener is called with the class of every failure which is retried
+     */
+    void setRetryListener(Consumer<ErrorClass> retryListener) {
+        this.retryListener = retryListener;
+    }
+
+    static ErrorClass classify(IOException e) {
+        if (e instanceof HttpStatusException) {
+            int statusCode = ((HttpStatusException) e).getStatusCode();
+
+            if (statusCode == 429 || statusCode == 503) {
+                return ErrorClass.THROTTLED;
+            }
+            return statusCode >= 500 || statusCode == 408 ? ErrorClass.SERVER : ErrorClass.PERMANENT;
+        }
+
+        if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)
+            || e instanceof FileSystemException
+            || e instanceof FileNotFoundException
+            || e instanceof UnknownHostException
+            || e instanceof UnknownServiceException
+            || e instanceof MalformedURLException) {
+            return ErrorClass.PERMANENT;
+        }
+
+        return ErrorClass.NETWORK;
+    }
+
+    void recordDownload() {
+        budget.recordDownload();
+    }
+
+    /**
+     * Takes the next retry of the link if the failure is transient and neither the link's retries
+     * nor the budget are exhausted.
+     *
+     * @param retries the retries which the link has already taken, it's incremented
+     */
+    boolean allowRetry(IOException e, AtomicInteger retries) {
+        if (e instanceof HttpStatusException && ((HttpStatusException) e).hasRetryAfter()) {
+            throttleListener.accept((HttpStatusException) e);
+        }
+
+        if (!classify(e).isRetryable() || retries.get() >= maxRetries || !budget.tryWithdraw()) {
+            return false;
+        }
+
+        retries.incrementAndGet();
+        retryListener.accept(classify(e));
+        return true;
+    }
+
+    long getDelayNanos(IOException e, int retry) {
+        long delay = Math.min(baseDelayNanos * classify(e).delayFactor << Math.min(retry - 1, 20),
+            TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS));
+        if (delay <= 0) {
+            delay = TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+        }
+
+        long jittered = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+
+        return Math.max(jittered, getRetryAfterNanos(e));
+    }
+
+    static long getRetryAfterNanos(IOException e) {
+        if (!(e instanceof HttpStatusException) || !((HttpStatusException) e).hasRetryAfter()) {
+            return 0;
+        }
+
+        long retryAfterMillis = Math.min(((HttpStatusException) e).getRetryAfterMillis(), MAX_RETRY_AFTER_MILLIS);
+        return TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+    }
+
+    void pause(IOException e, int retry) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(getDelayNanos(e, retry));
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a retry");
+        }
+    }
+
+    /**
+     * The pause for the asynchronous downloads, it doesn't block a thread.
+     */
+    synchronized CompletableFuture<Void> delay(IOException e, int retry) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "retry-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        CompletableFuture<Void> delay = new CompletableFuture<>();
+        scheduler.schedule(() -> delay.complete(null), getDelayNanos(e, retry), TimeUnit.NANOSECONDS);
+
+        return delay;
+    }
+
+    static String describe(AtomicInteger retries) {
+        return retries.get() == 0 ? "" : String.format(" (retries: %d)", retries.get());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    enum ErrorClass {
+        NETWORK(true, 1), SERVER(true, 1), THROTTLED(true, 4), PERMANENT(false, 0);
+
+        private final boolean retryable;
+        private final int delayFactor;
+
+        ErrorClass(boolean retryable, int delayFactor) {
+            this.retryable = retryable;
+            this.delayFactor = delayFactor;
+        }
+
+        boolean isRetryable() {
+            return retryable;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+class SegmentedDownload {
+    private static final long JOURNAL_STEP = 1024 * 1024;
+
+    private final LinkDownloader linkDownloader;
+    private final String link;
+    private final Path path;
+    private final LinkInfo info;
+    private final DownloadJournal journal;
+    private final Function<InputStream, InputStream> inputWrapper;
+    private final BufferPool buffers;
+    private final RetryPolicy retryPolicy;
+    private final AtomicInteger retries;
+    private final Queue<ByteRange> pendingSegments;
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private final CountDownLatch doneSignal;
+    private final long byteCount;
+
+    SegmentedDownload(LinkDownloader linkDownloader, String link, Path path, LinkInfo info, long segmentSize,
+                      Function<InputStream, InputStream> inputWrapper, BufferPool buffers, RetryPolicy retryPolicy,
+                      AtomicInteger retries) {
+        this(linkDownloader, link, path, info,
+            Collections.singletonList(new ByteRange(0, info.getContentLength() - 1)), segmentSize, null,
+            inputWrapper, buffers, retryPolicy, retries);
+    }
+
+    /**
+     * Downloads only the given ranges of the file and records them in the journal as they complete.
+     * The file isn't truncated, so the bytes outside of the ranges are kept. A failed segment continues
+     * from its last written byte while the retry policy allows.
+     */
+    SegmentedDownload(LinkDownloader linkDownloader, String link, Path path, LinkInfo info, List<ByteRange> ranges,
+                      long segmentSize, DownloadJournal journal, Function<InputStream, InputStream> inputWrapper,
+                      BufferPool buffers, RetryPolicy retryPolicy, AtomicInteger retries) {
+        this.linkDownloader = linkDownloader;
+        this.link = link;
+        this.path = path;
+        this.info = info;
+        this.journal = journal;
+        this.inputWrapper = inputWrapper;
+        this.buffers = buffers;
+        this.retryPolicy = retryPolicy;
+        this.retries = retries;
+        this.pendingSegments = new ConcurrentLinkedQueue<>(split(ranges, segmentSize));
+        this.doneSignal = new CountDownLatch(pendingSegments.size());
+        this.byteCount = pendingSegments.stream().mapToLong(ByteRange::length).sum();
+    }
+
+    static boolean isApplicable(LinkInfo info, long segmentSize) {
+        return segmentSize > 0
+            && info.isRangeSupported()
+            && info.isLengthKnown()
+            && info.getContentLength() > segmentSize;
+    }
+
+    private static List<ByteRange> split(List<ByteRange> ranges, long segmentSize) {
+        List<ByteRange> segments = new ArrayList<>();
+
+        for (ByteRange range : ranges) {
+            long step = segmentSize > 0 ? segmentSize : range.length();
+
+            for (long start = range.start; start <= range.end; start += step) {
+                segments.add(new ByteRange(start, Math.min(start + step - 1, range.end)));
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * Downloads all segments using the calling thread and up to {@code helperCount} tasks submitted to the executor.
+     * The calling thread takes part in the work, so the download can't starve even if the executor is saturated.
+     *
+     * @return the number of downloaded bytes
+     */
+    long run(Executor executor, int helperCount) throws IOException {
+        Set<StandardOpenOption> openOptions = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (journal == null || !journal.isContinued()) {
+            // The file may be a hard link of an earlier run, it's replaced rather than overwritten
+            Files.deleteIfExists(path);
+            openOptions = EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, openOptions)) {
+            preallocate(channel, info.getContentLength());
+
+            int helpers = Math.min(helperCount, pendingSegments.size() - 1);
+            for (int i = 0; i < helpers; i++) {
+                executor.execute(() -> downloadPendingSegments(channel));
+            }
+
+            downloadPendingSegments(channel);
+            awaitSegments();
+        }
+
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+
+        return byteCount;
+    }
+
+    /**
+     * Sets the size of the file to the length, so the later writes don't extend it.
+     */
+    static void preallocate(FileChannel channel, long length) throws IOException {
+        if (channel.size() > length) {
+            channel.truncate(length);
+        } else if (length > 0 && channel.size() < length) {
+            channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+        }
+    }
+
+    private void awaitSegments() throws IOException {
+        try {
+            doneSignal.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("%s: the segmented download was interrupted", link));
+        }
+    }
+
+    private void downloadPendingSegments(FileChannel channel) {
+        ByteRange segment;
+
+        while ((segment = pendingSegments.poll()) != null) {
+            try {
+                if (failure.get() == null) {
+                    downloadSegment(segment, channel);
+                }
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                doneSignal.countDown();
+            }
+        }
+    }
+
+    private void downloadSegment(ByteRange segment, FileChannel channel) throws IOException {
+        AtomicLong position = new AtomicLong(segment.start);
+
+        while (true) {
+            try {
+                downloadSegmentFrom(segment, position, channel);
+                return;
+            } catch (IOException e) {
+                // A segment of the changed content can't be continued, the whole download starts again
+                if (e instanceof RangeIgnoredException || failure.get() != null
+                    || !retryPolicy.allowRetry(e, retries)) {
+                    throw e;
+                }
+                retryPolicy.pause(e, retries.get());
+            }
+        }
+    }
+
+    private void downloadSegmentFrom(ByteRange segment, AtomicLong written, FileChannel channel) throws IOException {
+        LinkRequest request = new LinkRequest.Builder(link)
+            .range(written.get(), segment.end)
+            .rangeValidator(info.getRangeValidator())
+            .build();
+
+        ByteBuffer buffer = buffers.acquire();
+
+        try (LinkResponse response = linkDownloader.open(request);
+             InputStream input = inputWrapper.apply(response.getInputStream())) {
+
+            long position = written.get();
+            long journaledPosition = position;
+
+            while (position <= segment.end && BufferPool.fill(input, buffer)) {
+                buffer.flip();
+                buffer.limit((int) Math.min(buffer.limit(), segment.end - position + 1));
+
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                buffer.clear();
+                written.set(position);
+
+                if (journal != null && position - journaledPosition >= JOURNAL_STEP) {
+                    journal.markCompleted(journaledPosition, position - 1);
+                    journaledPosition = position;
+                }
+            }
+
+            if (journal != null && position > journaledPosition) {
+                journal.markCompleted(journaledPosition, position - 1);
+            }
+
+            if (position != segment.end + 1) {
+                throw new IOException(String.format("%s: the segment %s is incomplete, received %d bytes",
+                    link, segment, position - segment.start));
+            }
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+}
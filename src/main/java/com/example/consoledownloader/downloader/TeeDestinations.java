@@ -0,0 +1,157 @@
+package com.example.consoledownloader.downloader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The duplicates which are written together with the first destination while the link is downloading,
+ * so the file isn't read back from the disk. A failed duplicate doesn't fail the download.
+ */
+class TeeDestinations {
+    private final List<String> dests;
+    private final Function<String, Path> pathResolver;
+    private final Map<String, IOException> failures = new HashMap<>();
+    private boolean written;
+
+    TeeDestinations(List<String> dests, Function<String, Path> pathResolver) {
+        this.dests = dests;
+        this.pathResolver = pathResolver;
+    }
+
+    static TeeDestinations none() {
+        return new TeeDestinations(Collections.emptyList(), Paths::get);
+    }
+
+    boolean isEmpty() {
+        return dests.isEmpty();
+    }
+
+    List<String> getDests() {
+        return dests;
+    }
+
+    /**
+     * @return false if the download took a way which doesn't stream the file, so the duplicates should be copied
+     */
+    synchronized boolean isWritten() {
+        return written;
+    }
+
+    synchronized IOException getFailure(String dest) {
+        return failures.get(dest);
+    }
+
+    synchronized OutputStream open(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        OutputStream primary = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        Map<String, OutputStream> secondaries = new LinkedHashMap<>();
+        written = true;
+
+        for (String dest : dests) {
+            try {
+                secondaries.put(dest, Files.newOutputStream(pathResolver.apply(dest), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE));
+            } catch (IOException e) {
+                failures.put(dest, e);
+            }
+        }
+
+        return new TeeOutputStream(primary, secondaries);
+    }
+
+    /**
+     * Deletes the duplicates before the download starts again from the beginning, so they can be opened again.
+     */
+    synchronized void reset() {
+        discard();
+        failures.clear();
+        written = false;
+    }
+
+    /**
+     * Deletes the duplicates after the download has failed.
+     */
+    synchronized void discard() {
+        if (!written) {
+            return;
+        }
+
+        for (String dest : dests) {
+            if (!failures.containsKey(dest)) {
+                try {
+                    Files.deleteIfExists(pathResolver.apply(dest));
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private synchronized void fail(String dest, IOException e) {
+        failures.putIfAbsent(dest, e);
+    }
+
+    private class TeeOutputStream extends OutputStream {
+        private final OutputStream primary;
+        private final Map<String, OutputStream> secondaries;
+
+        TeeOutputStream(OutputStream primary, Map<String, OutputStream> secondaries) {
+            this.primary = primary;
+            this.secondaries = secondaries;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            primary.write(b, off, len);
+
+            Iterator<Map.Entry<String, OutputStream>> outputs = secondaries.entrySet().iterator();
+            while (outputs.hasNext()) {
+                Map.Entry<String, OutputStream> output = outputs.next();
+
+                try {
+                    output.getValue().write(b, off, len);
+                } catch (IOException e) {
+                    fail(output.getKey(), e);
+                    closeQuietly(output.getValue());
+                    outputs.remove();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Map.Entry<String, OutputStream> output : secondaries.entrySet()) {
+                try {
+                    output.getValue().close();
+                } catch (IOException e) {
+                    fail(output.getKey(), e);
+                }
+            }
+            secondaries.clear();
+
+            primary.close();
+        }
+
+        private void closeQuietly(OutputStream output) {
+            try {
+                output.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.consoledownloader.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Extracts the payload from the bytes of a response body and writes it to the channel.
+ */
+abstract class BodyDecoder {
+    private long byteCount;
+
+    static BodyDecoder forHead(HttpResponseHead head) throws IOException {
+        if (head.isChunked()) {
+            return new Chunked();
+        }
+
+        long contentLength = head.getContentLength();
+        return contentLength >= 0 ? new FixedLength(contentLength) : new UntilClose();
+    }
+
+    /**
+     * @return true if the body is complete
+     */
+    abstract boolean decode(ByteBuffer data, WritableByteChannel out) throws IOException;
+
+    abstract boolean isCompleteOnEof();
+
+    long getByteCount() {
+        return byteCount;
+    }
+
+    int write(ByteBuffer data, int length, WritableByteChannel out) throws IOException {
+        ByteBuffer slice = data.duplicate();
+        slice.limit(slice.position() + length);
+
+        while (slice.hasRemaining()) {
+            out.write(slice);
+        }
+
+        data.position(data.position() + length);
+        byteCount += length;
+
+        return length;
+    }
+
+    static class FixedLength extends BodyDecoder {
+        private long remaining;
+
+        FixedLength(long contentLength) {
+            this.remaining = contentLength;
+        }
+
+        @Override
+        boolean decode(ByteBuffer data, WritableByteChannel out) throws IOException {
+            remaining -= write(data, (int) Math.min(remaining, data.remaining()), out);
+            return remaining == 0;
+        }
+
+        @Override
+        boolean isCompleteOnEof() {
+            return remaining == 0;
+        }
+    }
+
+    static class UntilClose extends BodyDecoder {
+        @Override
+        boolean decode(ByteBuffer data, WritableByteChannel out) throws IOException {
+            write(data, data.remaining(), out);
+            return false;
+        }
+
+        @Override
+        boolean isCompleteOnEof() {
+            return true;
+        }
+    }
+
+    static class Chunked extends BodyDecoder {
+        private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+        private enum State { SIZE, DATA, DATA_END, TRAILER, DONE }
+
+        private final StringBuilder line = new StringBuilder();
+        private State state = State.SIZE;
+        private long chunkRemaining;
+
+        @Override
+        boolean decode(ByteBuffer data, WritableByteChannel out) throws IOException {
+            while (data.hasRemaining() && state != State.DONE) {
+                switch (state) {
+                    case SIZE:
+                        if (readLine(data)) {
+                            chunkRemaining = parseChunkSize(line.toString());
+                            line.setLength(0);
+                            state = chunkRemaining == 0 ? State.TRAILER : State.DATA;
+                        }
+                        break;
+                    case DATA:
+                        chunkRemaining -= write(data, (int) Math.min(chunkRemaining, data.remaining()), out);
+                        if (chunkRemaining == 0) {
+                            state = State.DATA_END;
+                        }
+                        break;
+                    case DATA_END:
+                        if (readLine(data)) {
+                            line.setLength(0);
+                            state = State.SIZE;
+                        }
+                        break;
+                    case TRAILER:
+                        if (readLine(data)) {
+                            state = line.length() == 0 ? State.DONE : State.TRAILER;
+                            line.setLength(0);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            return state == State.DONE;
+        }
+
+        @Override
+        boolean isCompleteOnEof() {
+            return state == State.DONE || state == State.TRAILER && line.length() == 0;
+        }
+
+        private boolean readLine(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                char c = (char) (data.get() & 0xff);
+
+                if (c == '\n') {
+                    return true;
+                } else if (c != '\r') {
+                    if (line.length() == MAX_LINE_LENGTH) {
+                        throw new IOException("Too long line in the chunked response body");
+                    }
+                    line.append(c);
+                }
+            }
+
+            return false;
+        }
+
+        private static long parseChunkSize(String line) throws IOException {
+            int extension = line.indexOf(';');
+            String size = (extension >= 0 ? line.substring(0, extension) : line).trim();
+
+            long chunkSize;
+            try {
+                chunkSize = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException(String.format("Invalid chunk size: %s", line), e);
+            }
+
+            if (chunkSize < 0) {
+                throw new IOException(String.format("Invalid chunk size: %s", line));
+            }
+
+            return chunkSize;
+        }
+    }
+}
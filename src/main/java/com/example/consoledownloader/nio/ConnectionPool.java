@@ -0,0 +1,159 @@
+package com.example.consoledownloader.nio;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Keeps alive the connections of one selector loop grouped by host. It limits the number of connections
+ * per host, the transfers over the limit wait for a free connection. Every host is served by one loop only,
+ * so the pool is confined to the loop's thread.
+ */
+class ConnectionPool {
+    private final Selector selector;
+    private final int maxConnectionsPerHost;
+    private final long idleTimeoutNanos;
+    private final ConnectionStats stats;
+    private final Map<String, Host> hosts = new HashMap<>();
+
+    ConnectionPool(Selector selector, int maxConnectionsPerHost, long idleTimeoutNanos, ConnectionStats stats) {
+        this.selector = selector;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.stats = stats;
+    }
+
+    void execute(HttpTransfer transfer) {
+        Host host = hosts.computeIfAbsent(transfer.getHostKey(), key -> new Host());
+        IdleConnection idle;
+
+        while ((idle = host.idleConnections.pollLast()) != null) {
+            if (idle.key.isValid() && idle.key.channel().isOpen()) {
+                stats.recordReused();
+                transfer.reuse(idle.key, this);
+                return;
+            }
+
+            host.openCount--;
+        }
+
+        if (maxConnectionsPerHost <= 0 || host.openCount < maxConnectionsPerHost) {
+            host.openCount++;
+            stats.recordOpened();
+            transfer.connect(selector, this);
+        } else {
+            host.waitingTransfers.add(transfer);
+        }
+    }
+
+    /**
+     * Takes the connection back after the transfer is done with it, the connection is closed unless it's reusable.
+     */
+    void release(HttpTransfer transfer, SelectionKey key, boolean reusable) {
+        Host host = hosts.get(transfer.getHostKey());
+
+        if (host == null) {
+            close(key);
+            return;
+        }
+
+        if (reusable && key != null && key.isValid()) {
+            key.interestOps(0);
+            key.attach(null);
+
+            HttpTransfer next = host.waitingTransfers.poll();
+            if (next != null) {
+                stats.recordReused();
+                next.reuse(key, this);
+            } else {
+                host.idleConnections.addLast(new IdleConnection(key, System.nanoTime()));
+            }
+
+            return;
+        }
+
+        close(key);
+        host.openCount--;
+
+        HttpTransfer next = host.waitingTransfers.poll();
+        if (next != null) {
+            execute(next);
+        }
+    }
+
+    /**
+     * Replaces the stale kept alive connection of the transfer with a new one.
+     */
+    void reconnect(HttpTransfer transfer, SelectionKey key) {
+        close(key);
+        stats.recordOpened();
+        transfer.connect(selector, this);
+    }
+
+    void evictIdleConnections(long nowNanos) {
+        Iterator<Host> hostIterator = hosts.values().iterator();
+
+        while (hostIterator.hasNext()) {
+            Host host = hostIterator.next();
+            Iterator<IdleConnection> connections = host.idleConnections.iterator();
+
+            while (connections.hasNext()) {
+                IdleConnection connection = connections.next();
+
+                if (nowNanos - connection.idleSinceNanos > idleTimeoutNanos || !connection.key.isValid()) {
+                    close(connection.key);
+                    connections.remove();
+                    host.openCount--;
+                }
+            }
+
+            if (host.openCount == 0 && host.waitingTransfers.isEmpty()) {
+                hostIterator.remove();
+            }
+        }
+    }
+
+    void close() {
+        for (Host host : hosts.values()) {
+            host.idleConnections.forEach(connection -> close(connection.key));
+            host.waitingTransfers.forEach(transfer -> transfer.fail(new IOException("The download engine is closed")));
+        }
+
+        hosts.clear();
+    }
+
+    private static void close(SelectionKey key) {
+        if (key == null) {
+            return;
+        }
+
+        key.cancel();
+
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static class Host {
+        final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+        final Queue<HttpTransfer> waitingTransfers = new ArrayDeque<>();
+        int openCount;
+    }
+
+    private static class IdleConnection {
+        final SelectionKey key;
+        final long idleSinceNanos;
+
+        IdleConnection(SelectionKey key, long idleSinceNanos) {
+            this.key = key;
+            this.idleSinceNanos = idleSinceNanos;
+        }
+    }
+}
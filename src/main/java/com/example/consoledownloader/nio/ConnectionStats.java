@@ -0,0 +1,45 @@
+package com.example.consoledownloader.nio;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConnectionStats {
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder openedCount = new LongAdder();
+    private final LongAdder reusedCount = new LongAdder();
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getOpenedCount() {
+        return openedCount.sum();
+    }
+
+    public long getReusedCount() {
+        return reusedCount.sum();
+    }
+
+    /**
+     * @return the share of requests which were sent over a kept alive connection, from 0 to 1
+     */
+    public double getReuseRate() {
+        long requests = getRequestCount();
+        return requests == 0 ? 0.0 : (double) getReusedCount() / requests;
+    }
+
+    void recordOpened() {
+        requestCount.increment();
+        openedCount.increment();
+    }
+
+    void recordReused() {
+        requestCount.increment();
+        reusedCount.increment();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Connections: %d opened, %d reused of %d requests (%.0f%%)",
+            getOpenedCount(), getReusedCount(), getRequestCount(), getReuseRate() * 100);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.consoledownloader.nio;
+
+import java.io.IOException;
+
+class HttpRedirectException extends IOException {
+    private final String location;
+
+    HttpRedirectException(String link, String location) {
+        super(String.format("%s is redirected to %s", link, location));
+        this.location = location;
+    }
+
+    String getLocation() {
+        return location;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.consoledownloader.nio;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+class HttpResponseHead {
+    private static final byte[] HEAD_END = {'\r', '\n', '\r', '\n'};
+
+    private final boolean http10;
+    private final int statusCode;
+    private final Map<String, String> headers;
+
+    private HttpResponseHead(boolean http10, int statusCode, Map<String, String> headers) {
+        this.http10 = http10;
+        this.statusCode = statusCode;
+        this.headers = headers;
+    }
+
+    /**
+     * @return the length of the head including the empty line or -1 if the head isn't complete yet
+     */
+    static int findEnd(byte[] data, int length) {
+        for (int i = 0; i + HEAD_END.length <= length; i++) {
+            if (data[i] == HEAD_END[0] && data[i + 1] == HEAD_END[1]
+                && data[i + 2] == HEAD_END[2] && data[i + 3] == HEAD_END[3]) {
+                return i + HEAD_END.length;
+            }
+        }
+
+        return -1;
+    }
+
+    static HttpResponseHead parse(byte[] data, int length) throws IOException {
+        String[] lines = new String(data, 0, length, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] statusParts = lines[0].split(" ", 3);
+
+        if (statusParts.length < 2 || !statusParts[0].startsWith("HTTP/1.")) {
+            throw new IOException(String.format("Invalid HTTP status line: %s", lines[0]));
+        }
+
+        int statusCode;
+        try {
+            statusCode = Integer.parseInt(statusParts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException(String.format("Invalid HTTP status line: %s", lines[0]), e);
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+
+            if (colon > 0) {
+                String name = lines[i].substring(0, colon).trim().toLowerCase();
+                String value = lines[i].substring(colon + 1).trim();
+                headers.merge(name, value, (first, second) -> first + ", " + second);
+            }
+        }
+
+        return new HttpResponseHead("HTTP/1.0".equals(statusParts[0]), statusCode, headers);
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    long getContentLength() throws IOException {
+        String value = getHeader("Content-Length");
+
+        try {
+            return value == null ? -1L : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException(String.format("Invalid Content-Length: %s", value), e);
+        }
+    }
+
+    boolean isChunked() {
+        String value = getHeader("Transfer-Encoding");
+        return value != null && value.toLowerCase().contains("chunked");
+    }
+
+    boolean isRedirect() {
+        return statusCode >= 300 && statusCode < 400 && statusCode != 304 && getHeader("Location") != null;
+    }
+
+    boolean isInformational() {
+        return statusCode >= 100 && statusCode < 200;
+    }
+
+    /**
+     * @return true if the connection can carry the next request after the body of this response
+     */
+    boolean isKeepAlive() throws IOException {
+        String connection = getHeader("Connection");
+        String value = connection == null ? "" : connection.toLowerCase();
+        boolean persistent = http10 ? value.contains("keep-alive") : !value.contains("close");
+
+        return persistent && (isChunked() || getContentLength() >= 0);
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.consoledownloader.nio;
+
+import com.example.consoledownloader.downloader.HttpStatusException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+
+/**
+ * The state of one HTTP request whose response body is written to a file. All methods except the constructor
+ * are called from the thread of the selector loop. The connection is leased from the {@link ConnectionPool}
+ * and returned to it when the response ends.
+ */
+class HttpTransfer {
+    private static final int INITIAL_HEAD_SIZE = 1024;
+    private static final int MAX_HEAD_SIZE = 64 * 1024;
+
+    private enum State { CONNECTING, SENDING, RECEIVING_HEAD, RECEIVING_BODY }
+
+    private final String link;
+    private final String hostKey;
+    private final InetSocketAddress address;
+    private final ByteBuffer request;
+    private final Path path;
+    private final LongConsumer progressConsumer;
+    private final CompletableFuture<Long> future = new CompletableFuture<>();
+    private State state = State.CONNECTING;
+    private ConnectionPool pool;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private FileChannel file;
+    private byte[] head = new byte[INITIAL_HEAD_SIZE];
+    private int headLength;
+    private BodyDecoder decoder;
+    private boolean keepAlive;
+    private boolean reused;
+    private boolean retried;
+    private long lastActivityNanos;
+
+    HttpTransfer(String link, String hostKey, InetSocketAddress address, ByteBuffer request, Path path,
+                 LongConsumer progressConsumer) {
+        this.link = link;
+        this.hostKey = hostKey;
+        this.address = address;
+        this.request = request;
+        this.path = path;
+        this.progressConsumer = progressConsumer;
+    }
+
+    CompletableFuture<Long> getFuture() {
+        return future;
+    }
+
+    String getHostKey() {
+        return hostKey;
+    }
+
+    void connect(Selector selector, ConnectionPool pool) {
+        this.pool = pool;
+        lastActivityNanos = System.nanoTime();
+        reused = false;
+        key = null;
+
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            key = channel.register(selector, 0, this);
+
+            if (channel.connect(address)) {
+                state = State.SENDING;
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Sends the request over the idle kept alive connection.
+     */
+    void reuse(SelectionKey key, ConnectionPool pool) {
+        this.pool = pool;
+        this.key = key;
+        lastActivityNanos = System.nanoTime();
+        reused = true;
+        channel = (SocketChannel) key.channel();
+        state = State.SENDING;
+        key.attach(this);
+        key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    void handle(ByteBuffer readBuffer) {
+        lastActivityNanos = System.nanoTime();
+
+        try {
+            if (key.isConnectable()) {
+                channel.finishConnect();
+                state = State.SENDING;
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (key.isWritable()) {
+                channel.write(request);
+
+                if (!request.hasRemaining()) {
+                    state = State.RECEIVING_HEAD;
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                read(readBuffer);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    boolean isIdleFor(long nowNanos, long timeoutNanos) {
+        return nowNanos - lastActivityNanos > timeoutNanos;
+    }
+
+    void fail(IOException e) {
+        if (future.isDone()) {
+            return;
+        }
+
+        if (isStaleConnection()) {
+            retryOnNewConnection();
+            return;
+        }
+
+        closeQuietly();
+        future.completeExceptionally(e);
+    }
+
+    /**
+     * The server may close a kept alive connection at any moment while it's idle, so the request is sent again
+     * over a new connection if nothing has been received over the old one.
+     */
+    private boolean isStaleConnection() {
+        return reused && !retried && headLength == 0 && decoder == null;
+    }
+
+    private void retryOnNewConnection() {
+        retried = true;
+        request.rewind();
+        state = State.CONNECTING;
+        pool.reconnect(this, key);
+    }
+
+    private void read(ByteBuffer readBuffer) throws IOException {
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+
+        if (read < 0) {
+            finishOnEof();
+            return;
+        }
+
+        readBuffer.flip();
+
+        if (state == State.RECEIVING_HEAD) {
+            appendToHead(readBuffer);
+            readHead();
+        } else {
+            decode(readBuffer);
+        }
+    }
+
+    private void appendToHead(ByteBuffer data) {
+        int length = data.remaining();
+
+        if (headLength + length > head.length) {
+            head = Arrays.copyOf(head, Math.max(head.length * 2, headLength + length));
+        }
+
+        data.get(head, headLength, length);
+        headLength += length;
+    }
+
+    private void readHead() throws IOException {
+        int headEnd;
+
+        while ((headEnd = HttpResponseHead.findEnd(head, headLength)) >= 0) {
+            HttpResponseHead responseHead = HttpResponseHead.parse(head, headEnd);
+            ByteBuffer rest = ByteBuffer.wrap(head, headEnd, headLength - headEnd);
+
+            if (responseHead.isInformational()) {
+                System.arraycopy(head, headEnd, head, 0, headLength - headEnd);
+                headLength -= headEnd;
+                continue;
+            }
+
+            startBody(responseHead);
+            decode(rest);
+
+            return;
+        }
+
+        if (headLength > MAX_HEAD_SIZE) {
+            throw new IOException(String.format("%s: the response head is too large", link));
+        }
+    }
+
+    private void startBody(HttpResponseHead responseHead) throws IOException {
+        if (responseHead.isRedirect()) {
+            String location = new URL(new URL(link), responseHead.getHeader("Location")).toString();
+            throw new HttpRedirectException(link, location);
+        }
+
+        if (responseHead.getStatusCode() != 200) {
+            throw new HttpStatusException(link, responseHead.getStatusCode(),
+                HttpStatusException.parseRetryAfter(responseHead.getHeader("Retry-After")));
+        }
+
+        decoder = BodyDecoder.forHead(responseHead);
+        keepAlive = responseHead.isKeepAlive();
+        // The file may be a hard link of an earlier run, it's replaced rather than overwritten
+        Files.deleteIfExists(path);
+        file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        state = State.RECEIVING_BODY;
+    }
+
+    private void decode(ByteBuffer data) throws IOException {
+        long byteCountBefore = decoder.getByteCount();
+        boolean complete = decoder.decode(data, file);
+        long written = decoder.getByteCount() - byteCountBefore;
+
+        if (written > 0) {
+            progressConsumer.accept(written);
+        }
+
+        if (complete) {
+            finish();
+        }
+    }
+
+    private void finishOnEof() throws IOException {
+        if (state == State.RECEIVING_BODY && decoder.isCompleteOnEof()) {
+            finish();
+        } else {
+            throw new IOException(String.format("%s: the connection was closed before the response ended", link));
+        }
+    }
+
+    private void finish() throws IOException {
+        file.close();
+        releaseConnection(keepAlive);
+        future.complete(decoder.getByteCount());
+    }
+
+    private void releaseConnection(boolean reusable) {
+        if (pool != null) {
+            pool.release(this, key, reusable);
+        } else if (key != null) {
+            key.cancel();
+        }
+
+        key = null;
+        channel = null;
+    }
+
+    private void closeQuietly() {
+        releaseConnection(false);
+
+        try {
+            if (file != null) {
+                file.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
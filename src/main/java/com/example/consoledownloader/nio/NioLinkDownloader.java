@@ -0,0 +1,161 @@
+package com.example.consoledownloader.nio;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.downloader.AsyncLinkDownloader;
+import com.example.consoledownloader.downloader.DefaultLinkDownloader;
+import com.example.consoledownloader.downloader.LinkTimings;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Downloads plain HTTP links with non-blocking sockets, so a few selector threads serve thousands of transfers.
+ * Other links and the range requests are served by the blocking {@link DefaultLinkDownloader}.
+ * The connections are kept alive and reused by the next transfers to the same host. All transfers to a host
+ * go through the same selector loop, so the loop alone enforces the limit of connections per host.
+ */
+public class NioLinkDownloader extends DefaultLinkDownloader implements AsyncLinkDownloader, Closeable {
+    private static final String HTTP_PROTOCOL = "http";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long KEEP_ALIVE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int MAX_REDIRECTS = 5;
+
+    public static final int DEFAULT_LOOP_COUNT = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private final SelectorLoop[] loops;
+    private final ConnectionStats stats = new ConnectionStats();
+
+    public NioLinkDownloader() throws IOException {
+        this(DEFAULT_LOOP_COUNT, Options.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
+
+    public NioLinkDownloader(int loopCount, int maxConnectionsPerHost) throws IOException {
+        this.loops = new SelectorLoop[loopCount];
+
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new SelectorLoop("nio-downloader-" + i, BUFFER_SIZE, IDLE_TIMEOUT_NANOS,
+                maxConnectionsPerHost, KEEP_ALIVE_TIMEOUT_NANOS, stats);
+        }
+    }
+
+    public ConnectionStats getConnectionStats() {
+        return stats;
+    }
+
+    @Override
+    public boolean isAsyncSupported(String link) {
+        try {
+            return HTTP_PROTOCOL.equalsIgnoreCase(new URL(link).getProtocol());
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The address is resolved here rather than in the selector loop, so the dns phase is measured, the others
+     * aren't.
+     */
+    @Override
+    public CompletableFuture<Long> downloadTo(String link, Path path, LongConsumer progressConsumer,
+                                              LinkTimings.Builder timings) {
+        return downloadTo(link, path, progressConsumer, timings, 0);
+    }
+
+    private CompletableFuture<Long> downloadTo(String link, Path path, LongConsumer progressConsumer,
+                                               LinkTimings.Builder timings, int redirectCount) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+
+        start(link, path, progressConsumer, timings).whenComplete((byteCount, e) -> {
+            if (e == null) {
+                result.complete(byteCount);
+            } else if (e instanceof HttpRedirectException && redirectCount < MAX_REDIRECTS) {
+                String location = ((HttpRedirectException) e).getLocation();
+
+                CompletableFuture
+                    .supplyAsync(() -> downloadTo(location, path, progressConsumer, timings, redirectCount + 1))
+                    .thenCompose(redirected -> redirected)
+                    .whenComplete((redirectedByteCount, redirectError) -> {
+                        if (redirectError == null) {
+                            result.complete(redirectedByteCount);
+                        } else {
+                            result.completeExceptionally(redirectError.getCause() != null
+                                ? redirectError.getCause()
+                                : redirectError);
+                        }
+                    });
+            } else {
+                result.completeExceptionally(e);
+            }
+        });
+
+        return result;
+    }
+
+    private CompletableFuture<Long> start(String link, Path path, LongConsumer progressConsumer,
+                                          LinkTimings.Builder timings) {
+        try {
+            URL url = new URL(link);
+            if (!HTTP_PROTOCOL.equalsIgnoreCase(url.getProtocol())) {
+                throw new IOException(String.format("%s: only plain HTTP links are downloaded without blocking",
+                    link));
+            }
+
+            int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+            long dnsStartNanos = System.nanoTime();
+            InetSocketAddress address = new InetSocketAddress(url.getHost(), port);
+            timings.dns(System.nanoTime() - dnsStartNanos);
+            if (address.isUnresolved()) {
+                throw new UnknownHostException(url.getHost());
+            }
+
+            String hostKey = url.getHost().toLowerCase() + ":" + port;
+            HttpTransfer transfer = new HttpTransfer(link, hostKey, address, makeRequest(url, port), path,
+                progressConsumer);
+            loops[Math.floorMod(hostKey.hashCode(), loops.length)].execute(transfer);
+
+            return transfer.getFuture();
+        } catch (IOException e) {
+            CompletableFuture<Long> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+
+            return failed;
+        }
+    }
+
+    private static ByteBuffer makeRequest(URL url, int port) {
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+        String host = port == url.getDefaultPort() ? url.getHost() : url.getHost() + ":" + port;
+        String request = "GET " + target + " HTTP/1.1\r\n"
+            + "Host: " + host + "\r\n"
+            + "User-Agent: console-downloader\r\n"
+            + "Accept: */*\r\n"
+            + "Connection: keep-alive\r\n"
+            + "\r\n";
+
+        return ByteBuffer.wrap(request.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (SelectorLoop loop : loops) {
+                loop.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the download engine");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.consoledownloader.nio;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread which drives many transfers through one selector. The transfers share one direct read buffer,
+ * because the loop handles them one at a time. The idle kept alive connections stay registered with the selector
+ * without interest and attachment.
+ */
+class SelectorLoop implements Runnable {
+    private static final long SELECT_TIMEOUT_MILLIS = 500;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(SELECT_TIMEOUT_MILLIS);
+
+    private final Selector selector;
+    private final ByteBuffer readBuffer;
+    private final long idleTimeoutNanos;
+    private final ConnectionPool pool;
+    private final Queue<HttpTransfer> newTransfers = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private long lastSweepNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    SelectorLoop(String name, int bufferSize, long idleTimeoutNanos, int maxConnectionsPerHost,
+                 long keepAliveTimeoutNanos, ConnectionStats stats) throws IOException {
+        this.selector = Selector.open();
+        this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.pool = new ConnectionPool(selector, maxConnectionsPerHost, keepAliveTimeoutNanos, stats);
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void execute(HttpTransfer transfer) {
+        newTransfers.add(transfer);
+
+        if (closed) {
+            failNewTransfers();
+        } else {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                break;
+            }
+
+            startNewTransfers();
+            handleSelectedKeys();
+            expireIdleTransfers();
+        }
+
+        pool.close();
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            HttpTransfer transfer = (HttpTransfer) key.attachment();
+
+            if (transfer != null) {
+                transfer.fail(new IOException("The download engine is closed"));
+            }
+        }
+        failNewTransfers();
+
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    void close() throws InterruptedException {
+        closed = true;
+        selector.wakeup();
+        thread.join();
+    }
+
+    private void startNewTransfers() {
+        HttpTransfer transfer;
+
+        while ((transfer = newTransfers.poll()) != null) {
+            pool.execute(transfer);
+        }
+    }
+
+    private void handleSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            HttpTransfer transfer = (HttpTransfer) key.attachment();
+
+            if (key.isValid() && transfer != null) {
+                transfer.handle(readBuffer);
+            }
+        }
+    }
+
+    /**
+     * Scans all the keys, so it runs at most once per select timeout rather than after every event.
+     */
+    private void expireIdleTransfers() {
+        long now = System.nanoTime();
+        if (now - lastSweepNanos < SWEEP_INTERVAL_NANOS) {
+            return;
+        }
+        lastSweepNanos = now;
+
+        // A failed transfer may hand its connection slot to a waiting one, which registers a new channel
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            HttpTransfer transfer = (HttpTransfer) key.attachment();
+
+            if (key.isValid() && transfer != null && transfer.isIdleFor(now, idleTimeoutNanos)) {
+                transfer.fail(new SocketTimeoutException("Read timed out"));
+            }
+        }
+
+        pool.evictIdleConnections(now);
+    }
+
+    private void failNewTransfers() {
+        HttpTransfer transfer;
+
+        while ((transfer = newTransfers.poll()) != null) {
+            transfer.fail(new IOException("The download engine is closed"));
+        }
+    }
+}
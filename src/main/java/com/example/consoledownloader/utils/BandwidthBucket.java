@@ -0,0 +1,51 @@
+package com.example.consoledownloader.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free bandwidth limit shared by many streams. The streams charge the bytes after they are read, so a short
+ * read costs only what it has actually transferred. Each charge reserves the next slot of time and the caller waits
+ * until its slot ends, so the streams take turns in the order of their charges. The bucket lets through
+ * {@link #BURST_BYTES} without waiting.
+ */
+public class BandwidthBucket {
+    public static final long BURST_BYTES = 1024;
+
+    private final long bytesPerSecond;
+    private final double nanosPerByte;
+    private final long burstNanos;
+    private final AtomicLong nextFreeNanos;
+
+    public BandwidthBucket(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException(String.format("The bandwidth must be positive: %d", bytesPerSecond));
+        }
+
+        this.bytesPerSecond = bytesPerSecond;
+        this.nanosPerByte = (double) TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        this.burstNanos = (long) (BURST_BYTES * nanosPerByte);
+        this.nextFreeNanos = new AtomicLong(System.nanoTime());
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return the number of nanoseconds to wait before the next read
+     */
+    public long charge(long byteCount) {
+        long cost = (long) Math.ceil(byteCount * nanosPerByte);
+
+        while (true) {
+            long now = System.nanoTime();
+            long nextFree = nextFreeNanos.get();
+            long reservedUntil = (nextFree - now > 0 ? nextFree : now) + cost;
+
+            if (nextFreeNanos.compareAndSet(nextFree, reservedUntil)) {
+                return Math.max(reservedUntil - now - burstNanos, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.consoledownloader.utils;
+
+import java.util.Locale;
+
+/**
+ * Formats a number of bytes with the units of the size options: a kilobyte is 1024 bytes.
+ */
+public class ByteSizeFormatter {
+    private static final String[] UNITS = { "KB", "MB", "GB", "TB" };
+
+    public String format(long byteCount) {
+        if (byteCount < 1024) {
+            return byteCount + " B";
+        }
+
+        double value = byteCount;
+        int unit = -1;
+        while (value >= 1024 && unit < UNITS.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+
+        return String.format(Locale.ROOT, "%.1f %s", value, UNITS[unit]);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.consoledownloader.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+public class ProgressInputStream extends FilterInputStream {
+    private final LongConsumer progressConsumer;
+
+    public ProgressInputStream(InputStream in, LongConsumer progressConsumer) {
+        super(in);
+        this.progressConsumer = progressConsumer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            progressConsumer.accept(1);
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            progressConsumer.accept(read);
+        }
+
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            progressConsumer.accept(skipped);
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
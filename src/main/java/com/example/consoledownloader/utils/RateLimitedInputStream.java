@@ -1,23 +1,45 @@
 package com.example.consoledownloader.utils;
 
-import com.google.common.util.concurrent.RateLimiter;
-
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
 
+/**
+ * Charges every read to all the buckets, e.g. the global, the host's and the file's ones, and waits for the slowest.
+ * A read is never larger than the quantum, so the streams which share a bucket get equal turns.
+ */
 public class RateLimitedInputStream extends InputStream{
+    private static final int QUANTUM = 16 * 1024;
+
     private final InputStream in;
-    private final RateLimiter rateLimiter;
+    private final List<BandwidthBucket> buckets;
+    private final LongConsumer waitConsumer;
+
+    public RateLimitedInputStream(InputStream in, List<BandwidthBucket> buckets) {
+        this(in, buckets, nanos -> { });
+    }
 
-    public RateLimitedInputStream(InputStream in, RateLimiter rateLimiter) {
+    /**
+     * @param waitConsumer gets the nanoseconds which every read has waited for the buckets
+     */
+    public RateLimitedInputStream(InputStream in, List<BandwidthBucket> buckets, LongConsumer waitConsumer) {
         this.in = in;
-        this.rateLimiter = rateLimiter;
+        this.buckets = buckets;
+        this.waitConsumer = waitConsumer;
     }
 
     @Override
     public int read() throws IOException {
-        this.rateLimiter.acquire();
-        return this.in.read();
+        int b = this.in.read();
+
+        if (b >= 0) {
+            charge(1);
+        }
+
+        return b;
     }
 
     @Override
@@ -27,11 +49,13 @@ public class RateLimitedInputStream extends InputStream{
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        double rate = this.rateLimiter.getRate();
-        int permits = rate < len ? (int) rate : len;
-        this.rateLimiter.acquire(permits);
+        int read = this.in.read(b, off, Math.min(len, QUANTUM));
+
+        if (read > 0) {
+            charge(read);
+        }
 
-        return this.in.read(b, off, len);
+        return read;
     }
 
     @Override
@@ -63,4 +87,28 @@ public class RateLimitedInputStream extends InputStream{
     public boolean markSupported() {
         return this.in.markSupported();
     }
+
+    private void charge(int byteCount) throws InterruptedIOException {
+        long wait = 0;
+
+        for (BandwidthBucket bucket : buckets) {
+            wait = Math.max(wait, bucket.charge(byteCount));
+        }
+
+        if (wait > 0) {
+            waitConsumer.accept(wait);
+        }
+
+        // Thread.sleep rounds the waits up to milliseconds, it would cap the high limits
+        long deadline = System.nanoTime() + wait;
+        long remaining;
+
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while waiting for the speed limit");
+            }
+        }
+    }
 }
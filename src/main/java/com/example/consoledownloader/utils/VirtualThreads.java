@@ -0,0 +1,58 @@
+package com.example.consoledownloader.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The virtual threads of Java 21 for the code which is compiled for Java 8, the executor is looked up
+ * by reflection.
+ */
+public final class VirtualThreads {
+    private static final Method NEW_EXECUTOR = findNewExecutor();
+
+    private VirtualThreads() {
+    }
+
+    private static Method findNewExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean isSupported() {
+        if (NEW_EXECUTOR == null) {
+            return false;
+        }
+
+        try {
+            newExecutor().shutdown();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the executor which starts a new virtual thread for every task
+     * @throws IllegalStateException if the JVM has no virtual threads or they are a disabled preview feature
+     */
+    public static ExecutorService newExecutor() {
+        if (NEW_EXECUTOR == null) {
+            throw new IllegalStateException(String.format(
+                "virtual threads need Java 21 or later, the JVM is %s", System.getProperty("java.version")));
+        }
+
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(String.format("virtual threads aren't available: %s",
+                e.getCause().getMessage()), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("virtual threads aren't accessible", e);
+        }
+    }
+}
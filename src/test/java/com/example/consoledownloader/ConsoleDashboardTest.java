@@ -0,0 +1,121 @@
+package com.example.consoledownloader;
+
+import com.example.consoledownloader.downloader.DownloadListener;
+import com.example.consoledownloader.downloader.DownloaderLogRecord;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsoleDashboardTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private AtomicLong clock;
+    private ByteArrayOutputStream output;
+    private ConsoleDashboard dashboard;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new AtomicLong(SECOND);
+        output = new ByteArrayOutputStream();
+        dashboard = new ConsoleDashboard(new PrintStream(output, true),
+            out -> new ConsoleDownloadListener(out, true), true, clock::get);
+    }
+
+    @Test
+    public void countsAndFastestTransfersAreShown() throws Exception {
+        dashboard.onQueued("http://a", "a.bin");
+        dashboard.onQueued("http://b", "b.bin");
+        dashboard.onQueued("http://c", "c.bin");
+        dashboard.onStart("http://a", "a.bin");
+        dashboard.onStart("http://b", "b.bin");
+        dashboard.onProgress("http://a", 1000);
+        dashboard.onProgress("http://b", 3000);
+
+        List<String> lines = dashboard.render(clock.addAndGet(SECOND));
+
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(0)).contains("3.9 KB | 2 active, 1 queued, 0 done, 0 failed | ETA --");
+        assertThat(lines.get(1)).startsWith("  b.bin");
+        assertThat(lines.get(2)).startsWith("  a.bin");
+    }
+
+    @Test
+    public void finishedTransfersAreCountedAndGiveEta() throws Exception {
+        dashboard.onQueued("http://a", "a.bin");
+        dashboard.onQueued("http://b", "b.bin");
+        dashboard.onQueued("http://c", "c.bin");
+        dashboard.onStart("http://a", "a.bin");
+        dashboard.onProgress("http://a", 1000);
+        dashboard.onSuccess("http://a", 1000, record(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS));
+        dashboard.onStart("http://b", "b.bin");
+        dashboard.onFailure("http://b", record(DownloaderLogRecord.Type.DOWNLOAD_FAIL));
+
+        List<String> lines = dashboard.render(clock.addAndGet(SECOND));
+
+        assertThat(lines).hasSize(1);
+        assertThat(lines.get(0)).contains("0 active, 1 queued, 1 done, 1 failed").doesNotContain("ETA --");
+    }
+
+    @Test
+    public void transferWithoutProgressIsStalled() throws Exception {
+        dashboard.onQueued("http://a", "a.bin");
+        dashboard.onStart("http://a", "a.bin");
+        dashboard.onProgress("http://a", 1000);
+        dashboard.render(clock.addAndGet(SECOND));
+
+        List<String> lines = dashboard.render(clock.addAndGet(6 * SECOND));
+
+        assertThat(lines.get(1)).contains("stalled for 6s");
+    }
+
+    @Test
+    public void dashboardIsErasedBeforeLogRecordAndRedrawn() throws Exception {
+        dashboard.onQueued("http://a", "a.bin");
+        dashboard.onStart("http://a", "a.bin");
+        dashboard.refresh();
+        String drawn = output.toString();
+        dashboard.onSuccess("http://a", 1000, record(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS));
+
+        assertThat(output.toString()).isEqualTo(drawn + "\033[2F\033[JOK a.bin" + System.lineSeparator() + drawn);
+    }
+
+    @Test
+    public void dashboardIsNotErasedWhenListenerPrintsNothing() throws Exception {
+        ConsoleDashboard dashboard = new ConsoleDashboard(new PrintStream(output, true),
+            out -> new ConsoleDownloadListener(out, false), true, clock::get);
+        dashboard.onQueued("http://a", "a.bin");
+        dashboard.onStart("http://a", "a.bin");
+        dashboard.refresh();
+        String drawn = output.toString();
+        dashboard.onSuccess("http://a", 1000, record(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS));
+
+        assertThat(output.toString()).isEqualTo(drawn);
+    }
+
+    @Test
+    public void listenerGetsEvents() throws Exception {
+        AtomicLong progress = new AtomicLong();
+        ConsoleDashboard dashboard = new ConsoleDashboard(new PrintStream(output, true), out -> new DownloadListener() {
+            @Override
+            public void onProgress(String link, long byteCount) {
+                progress.addAndGet(byteCount);
+            }
+        }, false, clock::get);
+
+        dashboard.onProgress("http://a", 1000);
+
+        assertThat(progress.get()).isEqualTo(1000);
+    }
+
+    private static DownloaderLogRecord record(DownloaderLogRecord.Type type) {
+        return DownloaderLogRecord.create(type, "a.bin");
+    }
+}
@@ -60,6 +60,189 @@ public class ArgsParserJCommanderTest {
         assertThat(options.getLimit()).isEqualTo(10 * 1024 * 1024);
     }
 
+    @Test
+    public void parseHostAndFileSpeedLimits() throws Exception {
+        Options options = parser.parse(split("--host-speed-limit 512k --file-speed-limit 1m -f links"));
+        assertThat(options.getHostLimit()).isEqualTo(512 * 1024);
+        assertThat(options.getFileLimit()).isEqualTo(1024 * 1024);
+        assertThat(options.isSpeedLimited()).isTrue();
+    }
+
+    @Test
+    public void parseSegmentSize() throws Exception {
+        Options options = parser.parse(split("-s 8m -f links"));
+        assertThat(options.getSegmentSize()).isEqualTo(8 * 1024 * 1024);
+    }
+
+    @Test
+    public void parseEngine() throws Exception {
+        assertThat(parser.parse(split("-f links")).getEngine()).isEqualTo(Options.Engine.DEFAULT);
+        assertThat(new ArgsParserJCommander().parse(split("-e nio -f links")).getEngine())
+            .isEqualTo(Options.Engine.NIO);
+    }
+
+    @Test
+    public void parseDuplicateMode() throws Exception {
+        assertThat(parser.parse(split("-f links")).getDuplicateMode()).isEqualTo(Options.DuplicateMode.COPY);
+        assertThat(new ArgsParserJCommander().parse(split("--duplicates tee -f links")).getDuplicateMode())
+            .isEqualTo(Options.DuplicateMode.TEE);
+    }
+
+    @Test
+    public void parseAdaptive() throws Exception {
+        Options options = parser.parse(split("-a -f links"));
+        assertThat(options.isAdaptive()).isTrue();
+        assertThat(options.getThreadNumber()).isEqualTo(Options.DEFAULT_ADAPTIVE_THREAD_NUMBER);
+
+        assertThat(new ArgsParserJCommander().parse(split("--adaptive -n 8 -f links")).getThreadNumber())
+            .isEqualTo(8);
+        assertThat(new ArgsParserJCommander().parse(split("-f links")).isAdaptive()).isFalse();
+    }
+
+    @Test
+    public void parseThreadKind() throws Exception {
+        assertThat(parser.parse(split("-f links")).getThreadKind()).isEqualTo(Options.ThreadKind.PLATFORM);
+        assertThat(new ArgsParserJCommander().parse(split("--threads virtual -n 10000 -f links")).getThreadKind())
+            .isEqualTo(Options.ThreadKind.VIRTUAL);
+    }
+
+    @Test(expected = ArgsParseException.class)
+    public void parseWrongThreadKind() throws Exception {
+        parser.parse(split("-t green -f links"));
+    }
+
+    @Test
+    public void parseRetries() throws Exception {
+        Options options = parser.parse(split("--retries 5 --retry-delay 100 -f links"));
+        assertThat(options.getRetryCount()).isEqualTo(5);
+        assertThat(options.getRetryDelay()).isEqualTo(100L);
+
+        Options defaults = new ArgsParserJCommander().parse(split("-f links"));
+        assertThat(defaults.getRetryCount()).isEqualTo(0);
+        assertThat(defaults.getRetryDelay()).isEqualTo(Options.DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    @Test
+    public void parseCache() throws Exception {
+        Options options = parser.parse(split("--cache-dir cache --cache-size 2g -f links"));
+        assertThat(options.getCacheDir()).isEqualTo("cache");
+        assertThat(options.getCacheSize()).isEqualTo(2L * 1024 * 1024 * 1024);
+
+        Options defaults = new ArgsParserJCommander().parse(split("-f links"));
+        assertThat(defaults.getCacheDir()).isEmpty();
+        assertThat(defaults.getCacheSize()).isEqualTo(Options.DEFAULT_CACHE_SIZE);
+    }
+
+    @Test
+    public void parseDedupContent() throws Exception {
+        Options options = parser.parse(split("--dedup-content --manifest SHA256SUMS -f links"));
+        assertThat(options.isDedupContent()).isTrue();
+        assertThat(options.getManifest()).isEqualTo("SHA256SUMS");
+
+        Options defaults = new ArgsParserJCommander().parse(split("-f links"));
+        assertThat(defaults.isDedupContent()).isFalse();
+        assertThat(defaults.getManifest()).isEmpty();
+    }
+
+    @Test
+    public void parseBufferSize() throws Exception {
+        Options options = parser.parse(split("--buffer-size 1m --preallocate -f links"));
+        assertThat(options.getBufferSize()).isEqualTo(1024 * 1024);
+        assertThat(options.isPreallocate()).isTrue();
+
+        Options defaults = new ArgsParserJCommander().parse(split("-f links"));
+        assertThat(defaults.getBufferSize()).isEqualTo(Options.DEFAULT_BUFFER_SIZE);
+        assertThat(defaults.isPreallocate()).isFalse();
+    }
+
+    @Test
+    public void parseProgress() throws Exception {
+        assertThat(parser.parse(split("-p -f links")).isProgress()).isTrue();
+        assertThat(new ArgsParserJCommander().parse(split("-f links")).isProgress()).isFalse();
+    }
+
+    @Test
+    public void parseSlowest() throws Exception {
+        assertThat(parser.parse(split("--slowest 10 -f links")).getSlowest()).isEqualTo(10);
+        assertThat(new ArgsParserJCommander().parse(split("-f links")).getSlowest()).isEqualTo(0);
+    }
+
+    @Test
+    public void parseLargestFirst() throws Exception {
+        assertThat(parser.parse(split("--largest-first -f links")).isLargestFirst()).isTrue();
+        assertThat(new ArgsParserJCommander().parse(split("-f links")).isLargestFirst()).isFalse();
+    }
+
+    @Test
+    public void parseMaxMemory() throws Exception {
+        assertThat(parser.parse(split("--max-memory 48m -f links")).getMaxMemory()).isEqualTo(48L * 1024 * 1024);
+        assertThat(new ArgsParserJCommander().parse(split("-f links")).getMaxMemory()).isEqualTo(0);
+    }
+
+    @Test
+    public void parseShard() throws Exception {
+        Options.Shard shard = parser.parse(split("--shard 2/4 -f links")).getShard();
+        assertThat(shard.getIndex()).isEqualTo(1);
+        assertThat(shard.getCount()).isEqualTo(4);
+        assertThat(new ArgsParserJCommander().parse(split("-f links")).getShard().isAll()).isTrue();
+    }
+
+    @Test(expected = ArgsParseException.class)
+    public void parseWrongShard() throws Exception {
+        parser.parse(split("--shard 5/4 -f links"));
+    }
+
+    @Test
+    public void parseCluster() throws Exception {
+        Options coordinator = parser.parse(split("--coordinator 7070 --batches 64 -f links"));
+        assertThat(coordinator.getCoordinatorPort()).isEqualTo(7070);
+        assertThat(coordinator.getBatchCount()).isEqualTo(64);
+
+        Options worker = new ArgsParserJCommander().parse(split("--worker localhost:7070 -o output"));
+        assertThat(worker.getWorker()).isEqualTo("localhost:7070");
+        assertThat(worker.getBatchCount()).isEqualTo(Options.DEFAULT_BATCH_COUNT);
+    }
+
+    @Test(expected = ArgsParseException.class)
+    public void parseWithoutLinkFileOrWorker() throws Exception {
+        parser.parse(split("-o output"));
+    }
+
+    @Test
+    public void parseMetrics() throws Exception {
+        Options options = parser.parse(split("--metrics-file run.json --metrics-format json --metrics-interval 60 "
+            + "-f links"));
+        assertThat(options.getMetricsFile()).isEqualTo("run.json");
+        assertThat(options.getMetricsFormat()).isEqualTo(Options.MetricsFormat.JSON);
+        assertThat(options.getMetricsInterval()).isEqualTo(60);
+
+        Options defaults = new ArgsParserJCommander().parse(split("-f links"));
+        assertThat(defaults.getMetricsFile()).isEmpty();
+        assertThat(defaults.getMetricsFormat()).isEqualTo(Options.MetricsFormat.PROMETHEUS);
+        assertThat(defaults.getMetricsInterval()).isEqualTo(Options.DEFAULT_METRICS_INTERVAL_SECONDS);
+    }
+
+    @Test(expected = ArgsParseException.class)
+    public void parseWrongMetricsFormat() throws Exception {
+        parser.parse(split("--metrics-format xml -f links"));
+    }
+
+    @Test
+    public void parseCompressed() throws Exception {
+        assertThat(parser.parse(split("--compressed -f links")).isCompressed()).isTrue();
+        assertThat(new ArgsParserJCommander().parse(split("-f links")).isCompressed()).isFalse();
+    }
+
+    @Test(expected = ArgsParseException.class)
+    public void parseTooLargeBufferSize() throws Exception {
+        parser.parse(split("--buffer-size 1g -f links"));
+    }
+
+    @Test(expected = ArgsParseException.class)
+    public void parseWrongEngine() throws Exception {
+        parser.parse(split("-e netty -f links"));
+    }
+
     @Test(expected = ArgsParseException.class)
     public void parseWrongLimit() throws Exception {
         parser.parse(split("-n 4 -l xxx -o output -f links"));
@@ -0,0 +1,179 @@
+package com.example.consoledownloader.cluster;
+
+import com.example.consoledownloader.ConsoleDownloader;
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.downloader.DefaultLinkDownloader;
+import com.example.consoledownloader.downloader.DownloadListener;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClusterDownloadTest {
+
+    private static final int FILE_COUNT = 24;
+    private static final int CONTENT_SIZE = 16 * 1024;
+    private static final int TIMEOUT = 60 * 1000;
+
+    private LoopbackHttpServer server;
+    private Path rootDirPath;
+    private Path downloadDirPath;
+    private Path linksFilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        LoopbackHttpServer.Builder builder = new LoopbackHttpServer.Builder();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            builder.file("/file" + i, CONTENT_SIZE);
+        }
+        server = builder.start();
+
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+        downloadDirPath = rootDirPath.resolve("download");
+        linksFilePath = rootDirPath.resolve("links");
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            lines.add(server.url("/file" + i) + " file" + i + ".bin");
+            lines.add(server.url("/file" + i) + " file" + i + "_copy.bin");
+        }
+        Files.write(linksFilePath, lines);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void workerProcessesDownloadAllBatches() throws Exception {
+        try (Coordinator coordinator = Coordinator.start(linksFilePath, 8, 0, message -> { })) {
+            List<Process> workers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                workers.add(startWorkerProcess(coordinator.getPort()));
+            }
+
+            BatchResult result = coordinator.awaitCompletion();
+
+            for (Process worker : workers) {
+                assertThat(worker.waitFor(TIMEOUT, TimeUnit.MILLISECONDS)).isTrue();
+                assertThat(worker.exitValue()).isEqualTo(0);
+            }
+            assertThat(result.getSucceededCount()).isEqualTo(2 * FILE_COUNT);
+            assertThat(result.getFailedCount()).isEqualTo(0);
+            assertThat(result.getByteCount()).isEqualTo((long) FILE_COUNT * CONTENT_SIZE);
+        }
+
+        for (int i = 0; i < FILE_COUNT; i++) {
+            assertThat(Files.size(downloadDirPath.resolve("file" + i + ".bin"))).isEqualTo(CONTENT_SIZE);
+            assertThat(Files.size(downloadDirPath.resolve("file" + i + "_copy.bin"))).isEqualTo(CONTENT_SIZE);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void batchOfGoneWorkerIsServedAgain() throws Exception {
+        try (Coordinator coordinator = Coordinator.start(linksFilePath, 4, 0, message -> { })) {
+            try (Socket socket = new Socket("localhost", coordinator.getPort());
+                 BufferedReader in = Protocol.reader(socket);
+                 BufferedWriter out = Protocol.writer(socket)) {
+
+                Protocol.writeLine(out, Protocol.NEXT);
+                out.flush();
+                assertThat(in.readLine()).startsWith(Protocol.BATCH + " ");
+            }
+
+            BatchResult workerResult = new Worker(new DefaultLinkDownloader(), DownloadListener.NONE)
+                .run("localhost:" + coordinator.getPort(), new Options.Builder("")
+                    .outputDir(downloadDirPath.toString())
+                    .threads(2)
+                    .build());
+
+            assertThat(workerResult.getSucceededCount()).isEqualTo(2 * FILE_COUNT);
+            assertThat(coordinator.awaitCompletion().getSucceededCount()).isEqualTo(2 * FILE_COUNT);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void largeShardsAreServedInSmallerBatches() throws Exception {
+        try (Coordinator coordinator = Coordinator.start(linksFilePath, 2, 8, 0, message -> { })) {
+            assertThat(coordinator.getBatchCount()).isGreaterThanOrEqualTo(2 * FILE_COUNT / 8);
+
+            BatchResult workerResult = new Worker(new DefaultLinkDownloader(), DownloadListener.NONE)
+                .run("localhost:" + coordinator.getPort(), new Options.Builder("")
+                    .outputDir(downloadDirPath.toString())
+                    .threads(2)
+                    .build());
+
+            assertThat(workerResult.getSucceededCount()).isEqualTo(2 * FILE_COUNT);
+            assertThat(workerResult.getByteCount()).isEqualTo((long) FILE_COUNT * CONTENT_SIZE);
+        }
+
+        for (int i = 0; i < FILE_COUNT; i++) {
+            assertThat(Files.size(downloadDirPath.resolve("file" + i + "_copy.bin"))).isEqualTo(CONTENT_SIZE);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void workerKeepsMetricsOfAllBatches() throws Exception {
+        Path metricsFilePath = rootDirPath.resolve("metrics.prom");
+
+        try (Coordinator coordinator = Coordinator.start(linksFilePath, 4, 0, message -> { })) {
+            Worker worker = new Worker(new DefaultLinkDownloader(), DownloadListener.NONE);
+            BatchResult workerResult = worker.run("localhost:" + coordinator.getPort(), new Options.Builder("")
+                .outputDir(downloadDirPath.toString())
+                .threads(2)
+                .slowest(2 * FILE_COUNT)
+                .metricsFile(metricsFilePath.toString())
+                .build());
+
+            assertThat(workerResult.getSucceededCount()).isEqualTo(2 * FILE_COUNT);
+            assertThat(worker.getDownloadResult().getByteCount()).isEqualTo(workerResult.getByteCount());
+            assertThat(worker.getDownloadResult().getSlowest()).hasSize(
+                (int) (workerResult.getByteCount() / CONTENT_SIZE));
+            assertThat(new String(Files.readAllBytes(metricsFilePath), StandardCharsets.UTF_8))
+                .contains("consoledownloader_written_bytes_total " + workerResult.getByteCount() + "\n");
+        }
+    }
+
+    private Process startWorkerProcess(int port) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        return new ProcessBuilder(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+            ConsoleDownloader.class.getName(), "--worker", "localhost:" + port, "-o", downloadDirPath.toString(),
+            "-n", "2"))
+            .redirectErrorStream(true)
+            .redirectOutput(new File(rootDirPath.toFile(), "worker-" + System.nanoTime() + ".log"))
+            .start();
+    }
+}
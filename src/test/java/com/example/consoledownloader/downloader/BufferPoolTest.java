@@ -0,0 +1,119 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BufferPoolTest {
+
+    private static final int BUFFER_SIZE = 1000;
+    private static final int CONTENT_SIZE = 10 * BUFFER_SIZE + 17;
+
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        path = Files.createTempFile("consoledowloader", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void copyToChannelCountsBytes() throws Exception {
+        BufferPool buffers = new BufferPool(BUFFER_SIZE, 1);
+        byte[] content = LoopbackHttpServer.content(CONTENT_SIZE);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            assertThat(buffers.copy(new TrickleInputStream(content), channel)).isEqualTo(CONTENT_SIZE);
+        }
+
+        assertThat(Files.readAllBytes(path)).isEqualTo(content);
+    }
+
+    @Test
+    public void copyToStreamCountsBytes() throws Exception {
+        BufferPool buffers = new BufferPool(BUFFER_SIZE, 1);
+        byte[] content = LoopbackHttpServer.content(CONTENT_SIZE);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        assertThat(buffers.copy(new TrickleInputStream(content), output)).isEqualTo(CONTENT_SIZE);
+        assertThat(output.toByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    public void releasedBufferIsReused() throws Exception {
+        BufferPool buffers = new BufferPool(BUFFER_SIZE, 1);
+
+        for (int i = 0; i < 10; i++) {
+            buffers.copy(new ByteArrayInputStream(new byte[CONTENT_SIZE]), new ByteArrayOutputStream());
+        }
+
+        assertThat(buffers.getAllocatedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void idleBuffersAreBounded() throws Exception {
+        BufferPool buffers = new BufferPool(BUFFER_SIZE, 1);
+        ByteBuffer first = buffers.acquire();
+        ByteBuffer second = buffers.acquire();
+
+        buffers.release(first);
+        buffers.release(second);
+
+        assertThat(buffers.acquire()).isSameAs(first);
+        assertThat(buffers.acquire()).isNotSameAs(second);
+        assertThat(buffers.getAllocatedCount()).isEqualTo(3);
+    }
+
+    @Test(timeout = 5000)
+    public void acquiredBuffersAreBounded() throws Exception {
+        BufferPool buffers = new BufferPool(BUFFER_SIZE, 1, 1);
+        ByteBuffer first = buffers.acquire();
+        CompletableFuture<ByteBuffer> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return buffers.acquire();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        assertThat(second.isDone()).isFalse();
+
+        buffers.release(first);
+        assertThat(second.get()).isSameAs(first);
+    }
+
+    /**
+     * Returns fewer bytes than asked, as a socket does.
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+        TrickleInputStream(byte[] content) {
+            super(new ByteArrayInputStream(content));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 333));
+        }
+    }
+}
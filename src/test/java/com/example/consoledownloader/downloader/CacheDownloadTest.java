@@ -0,0 +1,167 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CacheDownloadTest {
+
+    private static final int CONTENT_SIZE = 64 * 1024;
+    private static final int TIMEOUT = 10 * 1000;
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private AtomicInteger bodyCount;
+    private Path rootDirPath;
+    private Path downloadDirPath;
+    private Path cacheDirPath;
+    private Path linksFilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        bodyCount = new AtomicInteger();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/validated", exchange -> {
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            send(exchange, CONTENT_SIZE);
+        });
+        server.createContext("/unvalidated", exchange -> send(exchange, CONTENT_SIZE));
+        server.createContext("/other", exchange -> send(exchange, CONTENT_SIZE + 1));
+        server.start();
+
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+        downloadDirPath = rootDirPath.resolve("download");
+        cacheDirPath = rootDirPath.resolve("cache");
+        linksFilePath = rootDirPath.resolve("links");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void notModifiedFileIsMadeFromCache() throws Exception {
+        Downloader.Result first = download(Function.identity(), "/validated target.bin");
+        Files.delete(downloadDirPath.resolve("target.bin"));
+        Downloader.Result second = download(Function.identity(), "/validated target.bin");
+
+        assertThat(first.getCacheMissCount()).isEqualTo(1);
+        assertThat(second.getCacheHitCount()).isEqualTo(1);
+        assertThat(second.getByteCount()).isEqualTo(0);
+        assertThat(second.getLog().get(0).getMessage()).contains("from the cache");
+        assertThat(bodyCount.get()).isEqualTo(1);
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("target.bin")))
+            .isEqualTo(LoopbackHttpServer.content(CONTENT_SIZE));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void sameContentIsHitByHash() throws Exception {
+        download(Function.identity(), "/unvalidated target.bin");
+        Downloader.Result second = download(Function.identity(), "/unvalidated target.bin");
+
+        assertThat(second.getCacheHitCount()).isEqualTo(1);
+        assertThat(second.getCacheMissCount()).isEqualTo(0);
+        assertThat(bodyCount.get()).isEqualTo(2);
+        assertThat(listObjects()).hasSize(1);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void leastRecentlyUsedContentIsEvicted() throws Exception {
+        download(builder -> builder.cacheSize(CONTENT_SIZE + 10), "/unvalidated first.bin");
+        download(builder -> builder.cacheSize(CONTENT_SIZE + 10), "/other second.bin");
+        Downloader.Result result = download(builder -> builder.cacheSize(CONTENT_SIZE + 10),
+            "/unvalidated first.bin");
+
+        assertThat(result.getCacheMissCount()).isEqualTo(1);
+        assertThat(listObjects()).hasSize(1);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void cachedFileIsLinkedInLinkMode() throws Exception {
+        download(builder -> builder.duplicateMode(Options.DuplicateMode.LINK), "/validated target.bin");
+        download(builder -> builder.duplicateMode(Options.DuplicateMode.LINK), "/validated target.bin");
+
+        Path target = downloadDirPath.resolve("target.bin");
+        Path object = listObjects().get(0);
+        assertThat(Files.isSameFile(target, object)).isTrue();
+
+        download(builder -> builder.duplicateMode(Options.DuplicateMode.LINK), "/other target.bin");
+
+        assertThat(Files.size(target)).isEqualTo(CONTENT_SIZE + 1);
+        assertThat(Files.readAllBytes(object)).isEqualTo(LoopbackHttpServer.content(CONTENT_SIZE));
+    }
+
+    private List<Path> listObjects() throws IOException {
+        try (Stream<Path> objects = Files.list(cacheDirPath.resolve("objects"))) {
+            return objects.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Downloader.Result download(Function<Options.Builder, Options.Builder> customizer,
+                                       String... lines) throws IOException {
+        String prefix = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+        Files.write(linksFilePath, () -> Arrays.stream(lines).<CharSequence>map(line -> prefix + line).iterator());
+
+        Options options = customizer.apply(new Options.Builder(linksFilePath.toString())
+            .outputDir(downloadDirPath.toString())
+            .cacheDir(cacheDirPath.toString()))
+            .build();
+        Downloader.Result result = new Downloader(new DefaultLinkDownloader()).download(options);
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsOnly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+
+        return result;
+    }
+
+    private void send(HttpExchange exchange, int size) throws IOException {
+        bodyCount.incrementAndGet();
+        byte[] body = LoopbackHttpServer.content(size);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
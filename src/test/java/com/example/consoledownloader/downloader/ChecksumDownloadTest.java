@@ -0,0 +1,121 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import com.google.common.hash.Hashing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChecksumDownloadTest {
+
+    private static final int CONTENT_SIZE = 64 * 1024;
+    private static final int TIMEOUT = 10 * 1000;
+
+    private LoopbackHttpServer server;
+    private Path rootDirPath;
+    private Path downloadDirPath;
+    private Path linksFilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LoopbackHttpServer.Builder()
+            .file("/file", CONTENT_SIZE)
+            .start();
+
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+        downloadDirPath = rootDirPath.resolve("download");
+        linksFilePath = rootDirPath.resolve("links");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadWithMatchingChecksumSucceeds() throws Exception {
+        Downloader.Result result = download(new Options.Builder(linksFilePath.toString()),
+            server.url("/file") + " target.bin sha256:" + hashOf(CONTENT_SIZE).toUpperCase());
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsExactly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadWithOtherChecksumIsReportedAsMismatch() throws Exception {
+        Downloader.Result result = download(new Options.Builder(linksFilePath.toString()).segmentSize(16 * 1024),
+            server.url("/file") + " target.bin sha256:" + hashOf(CONTENT_SIZE - 1),
+            server.url("/file") + " copy.bin");
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsExactly(DownloaderLogRecord.Type.CHECKSUM_MISMATCH);
+        assertThat(result.getLog().get(0).getMessage()).contains(hashOf(CONTENT_SIZE));
+        assertThat(Files.exists(downloadDirPath.resolve("copy.bin"))).isFalse();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void lineWithUnknownChecksumIsRejected() throws Exception {
+        Downloader.Result result = download(new Options.Builder(linksFilePath.toString()),
+            server.url("/file") + " first.bin md5:d41d8cd98f00b204e9800998ecf8427e",
+            server.url("/file?n=2") + " second.bin");
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsExactly(DownloaderLogRecord.Type.SYSTEM_ERROR, DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+        assertThat(result.getLog().get(0).getMessage()).contains("unknown checksum");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void linksWithSameChecksumAreTransferredOnce() throws Exception {
+        String checksum = " sha256:" + hashOf(CONTENT_SIZE);
+
+        Downloader.Result result = download(new Options.Builder(linksFilePath.toString()).dedupContent(true),
+            server.url("/file?mirror=1") + " first.bin" + checksum,
+            server.url("/file?mirror=2") + " second.bin" + checksum);
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsOnly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS)
+            .hasSize(2);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    private Downloader.Result download(Options.Builder builder, String... lines) throws IOException {
+        Files.write(linksFilePath, Arrays.asList(lines));
+
+        return new Downloader(new DefaultLinkDownloader()).download(builder
+            .outputDir(downloadDirPath.toString())
+            .threads(4)
+            .build());
+    }
+
+    private static String hashOf(int size) {
+        return Hashing.sha256().hashBytes(LoopbackHttpServer.content(size)).toString();
+    }
+}
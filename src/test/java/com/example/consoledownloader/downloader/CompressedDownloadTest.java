@@ -0,0 +1,170 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompressedDownloadTest {
+
+    private static final int TIMEOUT = 10 * 1000;
+    private static final byte[] CONTENT = makeContent();
+
+    private HttpServer server;
+    private volatile String acceptEncoding;
+    private Path rootDirPath;
+    private Path downloadDirPath;
+    private Path linksFilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/gzip", exchange -> send(exchange, "gzip", gzip(CONTENT), false));
+        server.createContext("/deflate", exchange -> send(exchange, "deflate", deflate(CONTENT, false), false));
+        server.createContext("/raw-deflate", exchange -> send(exchange, "deflate", deflate(CONTENT, true), false));
+        server.createContext("/labelled", exchange -> send(exchange, "gzip", gzip(CONTENT), true));
+        server.start();
+
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+        downloadDirPath = rootDirPath.resolve("download");
+        linksFilePath = rootDirPath.resolve("links");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void gzipBodyIsDecodedAndWireBytesAreCounted() throws Exception {
+        Downloader.Result result = download(true, "/gzip file.csv");
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsExactly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+        assertThat(acceptEncoding).contains("gzip");
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("file.csv"))).isEqualTo(CONTENT);
+        assertThat(result.getByteCount()).isEqualTo(CONTENT.length);
+        assertThat(result.getWireByteCount()).isEqualTo(gzip(CONTENT).length).isLessThan(CONTENT.length);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void zlibAndRawDeflateBodiesAreDecoded() throws Exception {
+        Downloader.Result result = download(true, "/deflate zlib.csv", "/raw-deflate raw.csv");
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsOnly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("zlib.csv"))).isEqualTo(CONTENT);
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("raw.csv"))).isEqualTo(CONTENT);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void encodingIsNotAskedByDefault() throws Exception {
+        Downloader.Result result = download(false, "/gzip file.csv");
+
+        assertThat(acceptEncoding).isNull();
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("file.csv"))).isEqualTo(CONTENT);
+        assertThat(result.getWireByteCount()).isEqualTo(result.getByteCount()).isEqualTo(CONTENT.length);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void unaskedEncodingIsSavedAsIs() throws Exception {
+        download(false, "/labelled file.csv.gz");
+
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("file.csv.gz"))).isEqualTo(gzip(CONTENT));
+    }
+
+    private Downloader.Result download(boolean compressed, String... lines) throws IOException {
+        String prefix = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+        Files.write(linksFilePath, () -> Arrays.stream(lines).<CharSequence>map(line -> prefix + line).iterator());
+
+        return new Downloader(new DefaultLinkDownloader()).download(new Options.Builder(linksFilePath.toString())
+            .outputDir(downloadDirPath.toString())
+            .threads(2)
+            .compressed(compressed)
+            .build());
+    }
+
+    /**
+     * Sends the encoded body if the client accepts the encoding, a labelled body is always sent encoded.
+     */
+    private void send(HttpExchange exchange, String encoding, byte[] encodedBody, boolean labelled)
+        throws IOException {
+        acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean encoded = labelled || acceptEncoding != null && acceptEncoding.contains(encoding);
+        byte[] body = encoded ? encodedBody : CONTENT;
+
+        if (encoded) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private static byte[] makeContent() {
+        StringBuilder content = new StringBuilder("id,name,size\n");
+        for (int i = 0; i < 10000; i++) {
+            content.append(i).append(",file").append(i % 97).append(".csv,").append(i * 31 % 1000).append('\n');
+        }
+
+        return content.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream gzipOutput = new GZIPOutputStream(output)) {
+            gzipOutput.write(content);
+        }
+
+        return output.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] content, boolean raw) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (OutputStream deflateOutput = new DeflaterOutputStream(output, deflater)) {
+            deflateOutput.write(content);
+        } finally {
+            deflater.end();
+        }
+
+        return output.toByteArray();
+    }
+}
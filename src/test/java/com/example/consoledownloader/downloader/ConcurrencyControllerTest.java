@@ -0,0 +1,97 @@
+package com.example.consoledownloader.downloader;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrencyControllerTest {
+
+    @Test
+    public void limitDoublesWhileThroughputGrows() {
+        ConcurrencyController controller = ConcurrencyController.manual(100, 0);
+
+        controller.adjust(100, 0, true);
+        controller.adjust(200, 0, true);
+        controller.adjust(400, 0, true);
+
+        assertThat(controller.getLimit()).isEqualTo(16);
+    }
+
+    @Test
+    public void limitStepsBackWhenThroughputStopsGrowing() {
+        ConcurrencyController controller = ConcurrencyController.manual(100, 0);
+
+        controller.adjust(100, 0, true);
+        controller.adjust(200, 0, true);
+        controller.adjust(202, 0, true);
+        assertThat(controller.getLimit()).isEqualTo(4);
+
+        for (int i = 0; i < ConcurrencyController.HOLD_TICKS; i++) {
+            controller.adjust(202, 0, true);
+        }
+        assertThat(controller.getLimit()).isEqualTo(4);
+
+        controller.adjust(202, 0, true);
+        assertThat(controller.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    public void limitIsCutOnErrors() {
+        ConcurrencyController controller = ConcurrencyController.manual(100, 0);
+        controller.adjust(100, 0, true);
+        controller.adjust(200, 0, true);
+        controller.adjust(400, 0, true);
+
+        controller.adjust(400, 0.5, true);
+
+        assertThat(controller.getLimit()).isEqualTo(12);
+    }
+
+    @Test
+    public void limitIsNotRaisedAboveCeilingOrSpeedLimit() {
+        ConcurrencyController ceilingController = ConcurrencyController.manual(3, 0);
+        ConcurrencyController speedController = ConcurrencyController.manual(100, 1000);
+
+        for (int i = 0; i < 5; i++) {
+            ceilingController.adjust(100 * (i + 1), 0, true);
+            speedController.adjust(960, 0, true);
+        }
+
+        assertThat(ceilingController.getLimit()).isEqualTo(3);
+        assertThat(speedController.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    public void limitIsNotRaisedWhenTransfersDoNotUseIt() {
+        ConcurrencyController controller = ConcurrencyController.manual(100, 0);
+
+        controller.adjust(100, 0, false);
+        controller.adjust(200, 0, false);
+
+        assertThat(controller.getLimit()).isEqualTo(2);
+    }
+
+    @Test(timeout = 5000)
+    public void acquireBlocksUntilTransferIsReleased() throws Exception {
+        ConcurrencyController controller = ConcurrencyController.manual(100, 0);
+        controller.acquire();
+        controller.acquire();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                controller.acquire();
+                acquired.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        thread.start();
+
+        assertThat(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse();
+        controller.release();
+        assertThat(acquired.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+}
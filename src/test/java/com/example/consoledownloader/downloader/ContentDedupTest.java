@@ -0,0 +1,163 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContentDedupTest {
+
+    private static final int CONTENT_SIZE = 64 * 1024;
+    private static final int TIMEOUT = 10 * 1000;
+
+    private HttpServer server;
+    private AtomicInteger bodyCount;
+    private Path rootDirPath;
+    private Path downloadDirPath;
+    private Path linksFilePath;
+    private Path manifestPath;
+
+    @Before
+    public void setUp() throws Exception {
+        bodyCount = new AtomicInteger();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/mirror", exchange -> send(exchange, CONTENT_SIZE));
+        server.createContext("/other", exchange -> send(exchange, CONTENT_SIZE + 1));
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+        downloadDirPath = rootDirPath.resolve("download");
+        linksFilePath = rootDirPath.resolve("links");
+        manifestPath = rootDirPath.resolve("manifest");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void sameContentOfDifferentLinksIsLinked() throws Exception {
+        Downloader.Result result = download(1, "/mirror?a first.bin", "/mirror?b second.bin", "/other third.bin");
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsOnly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+        assertThat(result.getLog().get(1).getMessage()).contains("the same content as");
+        assertThat(Files.isSameFile(downloadDirPath.resolve("first.bin"), downloadDirPath.resolve("second.bin")))
+            .isTrue();
+        assertThat(Files.isSameFile(downloadDirPath.resolve("first.bin"), downloadDirPath.resolve("third.bin")))
+            .isFalse();
+        assertThat(bodyCount.get()).isEqualTo(3);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void knownContentIsTransferredOnce() throws Exception {
+        writeManifest(hashOf(CONTENT_SIZE) + "  first.bin", hashOf(CONTENT_SIZE) + " *second.bin");
+
+        Downloader.Result result = download(4, "/mirror?a first.bin", "/mirror?b second.bin");
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsOnly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS)
+            .hasSize(2);
+        assertThat(result.getByteCount()).isEqualTo(CONTENT_SIZE);
+        assertThat(bodyCount.get()).isEqualTo(1);
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("second.bin")))
+            .isEqualTo(LoopbackHttpServer.content(CONTENT_SIZE));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void knownContentIsDownloadedAgainWhenFirstDownloadFails() throws Exception {
+        writeManifest(hashOf(CONTENT_SIZE) + "  first.bin", hashOf(CONTENT_SIZE) + "  second.bin");
+
+        Downloader.Result result = download(4, "/missing first.bin", "/mirror second.bin");
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsExactlyInAnyOrder(DownloaderLogRecord.Type.DOWNLOAD_FAIL,
+                DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("second.bin")))
+            .isEqualTo(LoopbackHttpServer.content(CONTENT_SIZE));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void knownContentIsDownloadedAgainWhenFirstContentDiffers() throws Exception {
+        writeManifest(hashOf(CONTENT_SIZE) + "  first.bin", hashOf(CONTENT_SIZE) + "  second.bin");
+
+        download(4, "/other first.bin", "/mirror second.bin");
+
+        assertThat(bodyCount.get()).isEqualTo(2);
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("second.bin")))
+            .isEqualTo(LoopbackHttpServer.content(CONTENT_SIZE));
+    }
+
+    private Downloader.Result download(int threads, String... lines) throws IOException {
+        String prefix = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+        Files.write(linksFilePath, () -> Arrays.stream(lines).<CharSequence>map(line -> prefix + line).iterator());
+
+        Options.Builder builder = new Options.Builder(linksFilePath.toString())
+            .outputDir(downloadDirPath.toString())
+            .threads(threads)
+            .dedupContent(true);
+        if (Files.exists(manifestPath)) {
+            builder.manifest(manifestPath.toString());
+        }
+
+        return new Downloader(new DefaultLinkDownloader()).download(builder.build());
+    }
+
+    private void writeManifest(String... lines) throws IOException {
+        Files.write(manifestPath, Arrays.asList(lines));
+    }
+
+    private static String hashOf(int size) {
+        return Hashing.sha256().hashBytes(LoopbackHttpServer.content(size)).toString();
+    }
+
+    private void send(HttpExchange exchange, int size) throws IOException {
+        bodyCount.incrementAndGet();
+        byte[] body = LoopbackHttpServer.content(size);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
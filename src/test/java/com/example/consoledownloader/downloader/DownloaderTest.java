@@ -1,7 +1,11 @@
 package com.example.consoledownloader.downloader;
 
 import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.nio.NioLinkDownloader;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import com.example.consoledownloader.utils.VirtualThreads;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -11,6 +15,11 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -95,6 +104,174 @@ public class DownloaderTest {
         assertSuccessfulDownload(links, 2);
     }
 
+    @Test
+    public void downloadAllLinksWithAdaptiveConcurrency() throws Exception {
+        assertSuccessfulDownload(links, makeDefaultOptions().adaptive(true).threads(4));
+    }
+
+    @Test
+    public void downloadAllLinksWithVirtualThreads() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+
+        assertSuccessfulDownload(links, makeDefaultOptions().threadKind(Options.ThreadKind.VIRTUAL).threads(100));
+    }
+
+    @Test
+    public void downloadWithVirtualThreadsFailsOnOldJvm() throws Exception {
+        Assume.assumeFalse(VirtualThreads.isSupported());
+        writeLinksToFile(links);
+
+        Options options = makeDefaultOptions().threadKind(Options.ThreadKind.VIRTUAL).build();
+        Downloader.Result downloadResult = downloader.download(options);
+
+        assertThat(downloadResult.getByteCount()).isEqualTo(0L);
+        assertLog(downloadResult.getLog(), Collections.singletonMap(DownloaderLogRecord.Type.SYSTEM_ERROR, 1));
+    }
+
+    @Test
+    public void downloadAllLinksWithHardLinksForDuplicates() throws Exception {
+        assertSuccessfulDownload(links, makeDefaultOptions().threads(2).duplicateMode(Options.DuplicateMode.LINK));
+
+        assertThat(Files.isSameFile(downloadDirPath.resolve("file3.txt"), downloadDirPath.resolve("file3_copy2.txt")))
+            .isTrue();
+    }
+
+    @Test
+    public void downloadAllLinksWithSmallBuffersAndPreallocation() throws Exception {
+        assertSuccessfulDownload(links, makeDefaultOptions().threads(2).bufferSize(7).preallocate(true));
+    }
+
+    @Test
+    public void downloadAllLinksLargestFirst() throws Exception {
+        assertSuccessfulDownload(links, makeDefaultOptions().threads(2).largestFirst(true));
+    }
+
+    @Test
+    public void downloadAllLinksWithBoundedMemory() throws Exception {
+        writeLinksToFile(links);
+
+        Downloader.Result downloadResult = downloader.download(makeDefaultOptions()
+            .threads(4)
+            .maxMemory(1024 * 1024)
+            .build());
+
+        assertThat(downloadResult.getByteCount()).isEqualTo(calcUniqueLinksSize(links));
+        assertDownloadedFilesExist(links);
+        assertThat(downloadResult.getLog()).isEmpty();
+    }
+
+    @Test
+    public void downloadAllLinksWithTeeForDuplicates() throws Exception {
+        assertSuccessfulDownload(links, makeDefaultOptions().threads(1).duplicateMode(Options.DuplicateMode.TEE));
+    }
+
+    @Test
+    public void downloadRepeatedLinkAfterItsDownloadHasFinished() throws Exception {
+        List<LinkDescription> links = new ArrayList<>();
+        links.add(new LinkDescription("first.txt", sources.get(0)));
+        for (int i = 0; i < 10; i++) {
+            links.add(new LinkDescription(String.format("other%d.txt", i), sources.get(1 + i % 2)));
+        }
+        links.add(new LinkDescription("first_copy.txt", sources.get(0)));
+
+        assertSuccessfulDownload(links, 1);
+    }
+
+    @Test
+    public void downloadWhenLineHasNoDestination() throws Exception {
+        LinkDescription linkDescription = links.get(0);
+        Files.write(linksFilePath, Arrays.asList(sources.get(1).link, linkDescription.makeLinkString()));
+
+        Options options = makeDefaultOptions().build();
+        Downloader.Result downloadResult = downloader.download(options);
+
+        Map<DownloaderLogRecord.Type, Integer> expectedRecordTypes = new HashMap<>();
+        expectedRecordTypes.put(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS, 1);
+        expectedRecordTypes.put(DownloaderLogRecord.Type.SYSTEM_ERROR, 1);
+        assertLog(downloadResult.getLog(), expectedRecordTypes);
+        assertDownloadedFilesExist(Collections.singletonList(linkDescription));
+    }
+
+    @Test
+    public void shardsSplitLinksAndKeepDuplicatesTogether() throws Exception {
+        final int shardCount = 3;
+        writeLinksToFile(links);
+
+        long byteCount = 0;
+        for (int i = 0; i < shardCount; i++) {
+            byteCount += downloader.download(makeDefaultOptions()
+                .outputDir(downloadDirPath.resolve("shard" + i).toString())
+                .shard(new Options.Shard(i, shardCount))
+                .build()).getByteCount();
+        }
+
+        assertThat(byteCount).isEqualTo(sources.stream().mapToLong(Source::calcSize).sum());
+        for (LinkDescription linkDescription : links) {
+            long shardsWithFile = 0;
+            for (int i = 0; i < shardCount; i++) {
+                Path shardDirPath = downloadDirPath.resolve("shard" + i);
+                if (Files.exists(shardDirPath.resolve(linkDescription.fileName))) {
+                    shardsWithFile++;
+                    assertThat(links.stream().filter(other -> other.src == linkDescription.src))
+                        .allMatch(other -> Files.exists(shardDirPath.resolve(other.fileName)));
+                }
+            }
+            assertThat(shardsWithFile).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void slowestDownloadsAreKeptWithTimings() throws Exception {
+        writeLinksToFile(links);
+
+        Downloader.Result downloadResult = downloader.download(makeDefaultOptions().threads(2).slowest(2).build());
+
+        List<DownloaderLogRecord> slowest = downloadResult.getSlowest();
+        assertThat(slowest).hasSize(2);
+        assertThat(slowest).allMatch(logRecord -> logRecord.getType() == DownloaderLogRecord.Type.DOWNLOAD_SUCCESS
+            && logRecord.getTimings().isKnown()
+            && logRecord.getTimings().getTransferNanos() != LinkTimings.UNKNOWN
+            && logRecord.getTimings().getDnsNanos() == LinkTimings.UNKNOWN);
+        assertThat(slowest.get(0).getTimings().getTotalNanos())
+            .isGreaterThanOrEqualTo(slowest.get(1).getTimings().getTotalNanos());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void slowestDownloadsOfNioEngineAreKept() throws Exception {
+        try (LoopbackHttpServer server = new LoopbackHttpServer.Builder().file("/file", 1024).start();
+             NioLinkDownloader linkDownloader = new NioLinkDownloader()) {
+
+            Files.write(linksFilePath, Collections.singletonList(server.url("/file") + " file.bin"));
+
+            Downloader.Result downloadResult = new Downloader(linkDownloader).download(makeDefaultOptions()
+                .engine(Options.Engine.NIO)
+                .slowest(1)
+                .build());
+
+            List<DownloaderLogRecord> slowest = downloadResult.getSlowest();
+            assertThat(slowest).hasSize(1);
+            assertThat(slowest.get(0).getType()).isEqualTo(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+            assertThat(slowest.get(0).getMessage()).startsWith("file.bin");
+            assertThat(slowest.get(0).getTimings().isKnown()).isTrue();
+            assertThat(slowest.get(0).getTimings().getDnsNanos()).isNotEqualTo(LinkTimings.UNKNOWN);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void blockingDownloadsOfAsyncEngineTakeAllThreads() throws Exception {
+        int threadNumber = Runtime.getRuntime().availableProcessors() + 1;
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < threadNumber; i++) {
+            lines.add("https://host" + i + "/file file" + i + ".txt");
+        }
+        Files.write(linksFilePath, lines);
+
+        Downloader.Result downloadResult = new Downloader(new BlockingAsyncLinkDownloader(threadNumber))
+            .download(makeDefaultOptions().threads(threadNumber).build());
+
+        assertThat(downloadResult.getByteCount()).isEqualTo(threadNumber);
+    }
+
     @Test
     public void downloadOneLinkWhenTargetFileAlreadyExists() throws Exception {
         LinkDescription linkDescription = links.get(0);
@@ -119,11 +296,70 @@ public class DownloaderTest {
         assertSuccessDownloadWithSpeedLimit(limit, byteCount, expectedSeconds);
     }
 
+    @Test(timeout = TIMEOUT)
+    public void downloadWithPerFileSpeedLimitRunsFilesInParallel() throws Exception {
+        final int limit = 1024 * 1024;
+        List<Source> sources = Arrays.asList(
+            new Source("src1.txt", new byte[limit * 2]),
+            new Source("src2.txt", new byte[limit * 2])
+        );
+        List<LinkDescription> links = Arrays.asList(
+            new LinkDescription("target1.txt", sources.get(0)),
+            new LinkDescription("target2.txt", sources.get(1))
+        );
+        writeLinksToFile(links);
+
+        Downloader downloader = new Downloader(link -> getFileContentByLink(sources, link));
+        Options options = makeDefaultOptions()
+            .threads(2)
+            .fileLimit(limit)
+            .build();
+
+        Instant startTime = Instant.now();
+        Downloader.Result downloadResult = downloader.download(options);
+        Duration duration = Duration.between(startTime, Instant.now());
+        assertThat(duration.getSeconds()).isBetween(1L, 2L);
+
+        assertSuccessfulDownloadResult(links, downloadResult);
+    }
+
     @Test(timeout = TIMEOUT)
     public void downloadWithTooSmallSpeedLimitShouldWork() throws Exception {
         assertSuccessDownloadWithSpeedLimit(1, 10, 0);
     }
 
+    @Test
+    public void downloadReportsEventsToListenerWithoutRetainingLog() throws Exception {
+        writeLinksToFile(links);
+
+        List<DownloaderLogRecord> records = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong progressByteCount = new AtomicLong();
+        DownloadListener listener = new DownloadListener() {
+            @Override
+            public void onProgress(String link, long byteCount) {
+                progressByteCount.addAndGet(byteCount);
+            }
+
+            @Override
+            public void onSuccess(String link, long byteCount, DownloaderLogRecord logRecord) {
+                records.add(logRecord);
+            }
+
+            @Override
+            public void onCopy(String link, DownloaderLogRecord logRecord) {
+                records.add(logRecord);
+            }
+        };
+
+        Downloader downloader = new Downloader(link -> getFileContentByLink(sources, link), listener, false);
+        Downloader.Result downloadResult = downloader.download(makeDefaultOptions().threads(2).build());
+
+        assertThat(downloadResult.getLog()).isEmpty();
+        assertThat(downloadResult.getByteCount()).isEqualTo(calcUniqueLinksSize(links));
+        assertThat(progressByteCount.get()).isEqualTo(calcUniqueLinksSize(links));
+        assertLog(records, Collections.singletonMap(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS, links.size()));
+    }
+
     @Test
     public void downloadWhenThereIsNoLinkFile() throws Exception {
         assertFailedDownloadWithOneError(DownloaderLogRecord.Type.SYSTEM_ERROR);
@@ -144,10 +380,13 @@ public class DownloaderTest {
     }
 
     private void assertSuccessfulDownload(List<LinkDescription> links, int threadCount) throws Exception {
+        assertSuccessfulDownload(links, makeDefaultOptions().threads(threadCount));
+    }
+
+    private void assertSuccessfulDownload(List<LinkDescription> links, Options.Builder options) throws Exception {
         writeLinksToFile(links);
 
-        Options options = makeDefaultOptions().threads(threadCount).build();
-        Downloader.Result downloadResult = downloader.download(options);
+        Downloader.Result downloadResult = downloader.download(options.build());
 
         assertSuccessfulDownloadResult(links, downloadResult);
     }
@@ -302,4 +541,41 @@ public class DownloaderTest {
             .map(src -> new ByteArrayInputStream(src.content))
             .orElseThrow(() -> new IOException("The link %s cannot be downloaded: there's no such source"));
     }
+
+    /**
+     * Serves no link asynchronously, and a download ends only when all the downloads run at once.
+     */
+    private static class BlockingAsyncLinkDownloader implements AsyncLinkDownloader {
+        private final CountDownLatch started;
+
+        BlockingAsyncLinkDownloader(int downloadCount) {
+            this.started = new CountDownLatch(downloadCount);
+        }
+
+        @Override
+        public boolean isAsyncSupported(String link) {
+            return false;
+        }
+
+        @Override
+        public CompletableFuture<Long> downloadTo(String link, Path path, LongConsumer progressConsumer,
+                                                  LinkTimings.Builder timings) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputStream download(String link) throws IOException {
+            started.countDown();
+            try {
+                if (!started.await(TIMEOUT / 2, TimeUnit.MILLISECONDS)) {
+                    throw new IOException(String.format("%s: the other downloads haven't started", link));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+
+            return new ByteArrayInputStream(new byte[1]);
+        }
+    }
 }
@@ -0,0 +1,144 @@
+package com.example.consoledownloader.downloader;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HostSchedulerTest {
+
+    private static final int TIMEOUT = 5000;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void hostsTakeTurns() throws Exception {
+        HostScheduler scheduler = new HostScheduler(executor, 1, 100, 8, ConcurrencyController.unlimited());
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch gate = new CountDownLatch(1);
+
+        scheduler.submit(HostScheduler.LOCAL_HOST, () -> await(gate));
+        for (String task : new String[] { "a1", "a2", "a3", "b1", "b2" }) {
+            scheduler.submit(task.substring(0, 1), () -> order.add(task));
+        }
+        gate.countDown();
+        scheduler.awaitCompletion();
+
+        assertThat(order).containsExactly("a1", "b1", "a2", "b2", "a3");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void largestTasksStartFirst() throws Exception {
+        HostScheduler scheduler = new HostScheduler(executor, 1, 100, 8, ConcurrencyController.unlimited(), true);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch gate = new CountDownLatch(1);
+
+        scheduler.submit(HostScheduler.LOCAL_HOST, () -> await(gate));
+        scheduler.submit("a", 10, () -> order.add("a10"));
+        scheduler.submit("c", HostScheduler.UNKNOWN_SIZE, () -> order.add("c?"));
+        scheduler.submit("a", 300, () -> order.add("a300"));
+        scheduler.submit("b", 200, () -> order.add("b200"));
+        scheduler.submit("b", CompletableFuture.completedFuture(20L), () -> order.add("b20"));
+        gate.countDown();
+        scheduler.awaitCompletion();
+
+        assertThat(order).containsExactly("a300", "b200", "b20", "a10", "c?");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void tasksOfHostAreLimited() throws Exception {
+        HostScheduler scheduler = new HostScheduler(executor, 4, 100, 2, ConcurrencyController.unlimited());
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch otherHostDone = new CountDownLatch(1);
+
+        for (int i = 0; i < 6; i++) {
+            scheduler.submit("a", () -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                await(otherHostDone);
+                active.decrementAndGet();
+            });
+        }
+        scheduler.submit("b", otherHostDone::countDown);
+        scheduler.awaitCompletion();
+
+        assertThat(maxActive.get()).isEqualTo(2);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void pausedHostGetsNoTasks() throws Exception {
+        HostScheduler scheduler = new HostScheduler(executor, 4, 100, 2, ConcurrencyController.unlimited());
+        CountDownLatch started = new CountDownLatch(1);
+
+        scheduler.pause("a", 300);
+        scheduler.submit("a", started::countDown);
+
+        assertThat(started.await(150, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        scheduler.awaitCompletion();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadsTakePermitsOfController() throws Exception {
+        ConcurrencyController controller = ConcurrencyController.manual(1, 0);
+        HostScheduler scheduler = new HostScheduler(executor, 8, 100, 8, controller);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+
+        for (int i = 0; i < 6; i++) {
+            scheduler.submit("host" + i, () -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                sleep(10);
+                active.decrementAndGet();
+            });
+        }
+        scheduler.awaitCompletion();
+
+        assertThat(maxActive.get()).isEqualTo(1);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void localTasksDoNotWaitForPermitsOfController() throws Exception {
+        HostScheduler scheduler = new HostScheduler(executor, 8, 100, 8, ConcurrencyController.manual(1, 0));
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch copied = new CountDownLatch(1);
+
+        scheduler.submit("a", () -> await(gate));
+        scheduler.submit("b", () -> { });
+        scheduler.submit(HostScheduler.LOCAL_HOST, copied::countDown);
+
+        assertThat(copied.await(1, TimeUnit.SECONDS)).isTrue();
+        gate.countDown();
+        scheduler.awaitCompletion();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
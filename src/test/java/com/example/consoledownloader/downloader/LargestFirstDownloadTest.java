@@ -0,0 +1,122 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LargestFirstDownloadTest {
+
+    private static final int FIRST_SIZE = 64 * 1024;
+    private static final int[] SIZES = { 16 * 1024, 128 * 1024, 8 * 1024, 64 * 1024, 32 * 1024 };
+    private static final int BANDWIDTH = 256 * 1024;
+    private static final int TIMEOUT = 20 * 1000;
+
+    private LoopbackHttpServer server;
+    private Path rootDirPath;
+    private Path downloadDirPath;
+    private Path linksFilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        LoopbackHttpServer.Builder builder = new LoopbackHttpServer.Builder()
+            .file("/first", FIRST_SIZE)
+            .bandwidth(BANDWIDTH);
+        for (int size : SIZES) {
+            builder.file("/file" + size, size);
+        }
+        server = builder.start();
+
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+        downloadDirPath = rootDirPath.resolve("download");
+        linksFilePath = rootDirPath.resolve("links");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void declaredSizesOrderQueuedDownloads() throws Exception {
+        List<String> started = download(true);
+
+        assertStartedLargestFirst(started);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void probedSizesOrderQueuedDownloads() throws Exception {
+        List<String> started = download(false);
+
+        assertStartedLargestFirst(started);
+    }
+
+    /**
+     * The first download starts at once, the others are queued while it's slowly transferred. The first one
+     * whose size is probed starts first.
+     */
+    private List<String> download(boolean sizesDeclared) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(server.url("/first") + " first.bin" + (sizesDeclared ? " size:" + FIRST_SIZE : ""));
+        for (int size : SIZES) {
+            lines.add(server.url("/file" + size) + " file" + size + ".bin" + (sizesDeclared ? " size:" + size : ""));
+        }
+        Files.write(linksFilePath, lines);
+
+        List<String> started = new CopyOnWriteArrayList<>();
+        Downloader.Result result = new Downloader(new DefaultLinkDownloader(), new DownloadListener() {
+            @Override
+            public void onStart(String link, String dest) {
+                started.add(dest);
+            }
+        }, true).download(new Options.Builder(linksFilePath.toString())
+            .outputDir(downloadDirPath.toString())
+            .threads(1)
+            .largestFirst(true)
+            .build());
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsOnly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS)
+            .hasSize(SIZES.length + 1);
+
+        return started;
+    }
+
+    private static void assertStartedLargestFirst(List<String> started) {
+        assertThat(started).hasSize(SIZES.length + 1);
+
+        List<Integer> queuedSizes = new ArrayList<>();
+        for (String dest : started.subList(1, started.size())) {
+            queuedSizes.add(dest.equals("first.bin") ? FIRST_SIZE : Integer.parseInt(dest.replaceAll("\\D", "")));
+        }
+        assertThat(queuedSizes).isSortedAccordingTo(Comparator.reverseOrder());
+    }
+}
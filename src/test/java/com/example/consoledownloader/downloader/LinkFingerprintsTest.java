@@ -0,0 +1,39 @@
+package com.example.consoledownloader.downloader;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LinkFingerprintsTest {
+
+    private static final int COUNT = 1_500_000;
+
+    @Test
+    public void heapMapKeepsValuesWhileGrowing() throws Exception {
+        assertKeepsValues(new LinkFingerprints());
+    }
+
+    @Test
+    public void mappedMapKeepsValuesWhileGrowing() throws Exception {
+        assertKeepsValues(LinkFingerprints.mapped());
+    }
+
+    private static void assertKeepsValues(LinkFingerprints fingerprints) throws Exception {
+        for (long i = 0; i < COUNT; i++) {
+            fingerprints.put(fingerprintOf(i), i);
+        }
+        fingerprints.replace(fingerprintOf(7), -7L);
+        fingerprints.replace(fingerprintOf(COUNT), 1L);
+
+        assertThat(fingerprints.size()).isEqualTo(COUNT);
+        assertThat(fingerprints.get(fingerprintOf(7))).isEqualTo(-7L);
+        assertThat(fingerprints.get(fingerprintOf(COUNT))).isEqualTo(LinkFingerprints.ABSENT);
+        for (long i = 8; i < COUNT; i++) {
+            assertThat(fingerprints.get(fingerprintOf(i))).isEqualTo(i);
+        }
+    }
+
+    private static long fingerprintOf(long i) {
+        return i * 0x9E3779B97F4A7C15L;
+    }
+}
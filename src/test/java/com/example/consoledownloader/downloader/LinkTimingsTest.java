@@ -0,0 +1,26 @@
+package com.example.consoledownloader.downloader;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LinkTimingsTest {
+
+    @Test
+    public void timingsAreFormattedInMillisecondsAndSeconds() throws Exception {
+        LinkTimings timings = new LinkTimings.Builder()
+            .connect(15_000_000L)
+            .serverWait(120_400_000L)
+            .transfer(2_400_000_000L)
+            .total(2_600_000_000L)
+            .build();
+
+        assertThat(timings.format()).isEqualTo("connect 15 ms, wait 120 ms, transfer 2.4 s, total 2.6 s");
+    }
+
+    @Test
+    public void unknownTimingsAreNotKnown() throws Exception {
+        assertThat(LinkTimings.unknown().isKnown()).isFalse();
+        assertThat(LinkTimings.unknown().format()).isEmpty();
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsExportTest {
+
+    private static final int CONTENT_SIZE = 64 * 1024;
+    private static final int TIMEOUT = 10 * 1000;
+
+    private LoopbackHttpServer server;
+    private Path rootDirPath;
+    private Path downloadDirPath;
+    private Path linksFilePath;
+    private Path metricsFilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LoopbackHttpServer.Builder()
+            .file("/first", CONTENT_SIZE)
+            .file("/second", 2 * CONTENT_SIZE)
+            .start();
+
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+        downloadDirPath = rootDirPath.resolve("download");
+        linksFilePath = rootDirPath.resolve("links");
+        metricsFilePath = rootDirPath.resolve("downloader.prom");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void prometheusFileIsWrittenAtEndOfRun() throws Exception {
+        String metrics = download(new Options.Builder(linksFilePath.toString()),
+            server.url("/first") + " first.bin",
+            server.url("/second") + " second.bin",
+            server.url("/second") + " copy.bin",
+            server.url("/missing") + " missing.bin");
+
+        assertThat(metrics)
+            .contains("# TYPE consoledownloader_downloads_total counter\n")
+            .contains("consoledownloader_downloads_total{result=\"success\"} 2\n")
+            .contains("consoledownloader_downloads_total{result=\"failure\"} 1\n")
+            .contains("consoledownloader_copies_total{result=\"success\"} 1\n")
+            .contains("consoledownloader_errors_total{class=\"permanent\"} 1\n")
+            .contains("consoledownloader_written_bytes_total " + 3 * CONTENT_SIZE + "\n")
+            .contains("consoledownloader_received_bytes_total " + 3 * CONTENT_SIZE + "\n")
+            .contains("consoledownloader_queued_links 0\n")
+            .contains("consoledownloader_active_downloads 0\n")
+            .contains("consoledownloader_download_seconds_count 3\n")
+            .contains("consoledownloader_time_to_first_byte_seconds_bucket{le=\"+Inf\"} 2\n")
+            .contains("consoledownloader_throughput_bytes_per_second_count 2\n");
+        assertThat(Files.exists(metricsFilePath.resolveSibling("downloader.prom.tmp"))).isFalse();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void jsonSummaryIsWritten() throws Exception {
+        String metrics = download(new Options.Builder(linksFilePath.toString())
+                .metricsFormat(Options.MetricsFormat.JSON),
+            server.url("/first") + " first.bin");
+
+        assertThat(metrics)
+            .startsWith("{\n")
+            .contains("\"written_bytes_total\": " + CONTENT_SIZE + ",\n")
+            .contains("\"downloads_total\": {\"success\": 1, \"failure\": 0, \"checksum_mismatch\": 0},\n")
+            .contains("\"download_seconds\": {\"count\": 1, ");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void speedLimitWaitsAreCounted() throws Exception {
+        String metrics = download(new Options.Builder(linksFilePath.toString()).limit(CONTENT_SIZE),
+            server.url("/second") + " second.bin");
+
+        Matcher matcher = Pattern.compile("(?m)^consoledownloader_rate_limit_wait_seconds_total (\\S+)$")
+            .matcher(metrics);
+        assertThat(matcher.find()).isTrue();
+        assertThat(Double.parseDouble(matcher.group(1))).isGreaterThan(0.5);
+    }
+
+    @Test
+    public void histogramsTakeTimesFromStartOfLink() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        DownloadMetrics metrics = new DownloadMetrics(true, clock::get);
+
+        metrics.queued("http://a");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        metrics.started("http://a");
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        metrics.received("http://a", 1024);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(800));
+        metrics.received("http://a", 1024);
+        metrics.succeeded("http://a", 2048);
+
+        assertThat(metrics.formatPrometheus())
+            .contains("consoledownloader_time_to_first_byte_seconds_bucket{le=\"0.1\"} 0\n")
+            .contains("consoledownloader_time_to_first_byte_seconds_bucket{le=\"0.25\"} 1\n")
+            .contains("consoledownloader_download_seconds_bucket{le=\"0.5\"} 0\n")
+            .contains("consoledownloader_download_seconds_bucket{le=\"1\"} 1\n")
+            .contains("consoledownloader_download_seconds_sum 1\n")
+            .contains("consoledownloader_throughput_bytes_per_second_bucket{le=\"16384\"} 1\n")
+            .contains("consoledownloader_run_seconds 11\n");
+    }
+
+    private String download(Options.Builder builder, String... lines) throws IOException {
+        Files.write(linksFilePath, Arrays.asList(lines));
+
+        new Downloader(new DefaultLinkDownloader()).download(builder
+            .outputDir(downloadDirPath.toString())
+            .threads(2)
+            .metricsFile(metricsFilePath.toString())
+            .build());
+
+        return new String(Files.readAllBytes(metricsFilePath), StandardCharsets.UTF_8);
+    }
+}
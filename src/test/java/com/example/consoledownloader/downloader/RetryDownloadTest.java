@@ -0,0 +1,240 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.nio.NioLinkDownloader;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryDownloadTest {
+
+    private static final int CONTENT_SIZE = 512 * 1024;
+    private static final int TIMEOUT = 10 * 1000;
+
+    private HttpServer server;
+    private AtomicInteger requestCount;
+    private Path rootDirPath;
+    private Path downloadDirPath;
+    private Path linksFilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        requestCount = new AtomicInteger();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/unavailable-twice", exchange -> {
+            int code = requestCount.incrementAndGet() <= 2 ? 503 : 200;
+            byte[] body = LoopbackHttpServer.content(code == 200 ? CONTENT_SIZE : 0);
+            exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.createContext("/retry-after", exchange -> {
+            if (requestCount.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = LoopbackHttpServer.content(CONTENT_SIZE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.createContext("/unavailable", exchange -> {
+            requestCount.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            requestCount.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+        downloadDirPath = rootDirPath.resolve("download");
+        linksFilePath = rootDirPath.resolve("links");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadRetriesUnavailableServer() throws Exception {
+        Downloader.Result result = download(makeLink("/unavailable-twice"), makeOptions(3),
+            new DefaultLinkDownloader());
+
+        assertSucceeded(result);
+        assertThat(result.getLog().get(0).getMessage()).endsWith("(retries: 2)");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadWaitsForRetryAfter() throws Exception {
+        long startNanos = System.nanoTime();
+        Downloader.Result result = download(makeLink("/retry-after"), makeOptions(1), new DefaultLinkDownloader());
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        assertSucceeded(result);
+        assertThat(elapsedMillis).isGreaterThanOrEqualTo(1000L);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadStopsAfterRetryLimit() throws Exception {
+        Downloader.Result result = download(makeLink("/unavailable"), makeOptions(2), new DefaultLinkDownloader());
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsExactly(DownloaderLogRecord.Type.DOWNLOAD_FAIL);
+        assertThat(result.getLog().get(0).getMessage()).contains("503").endsWith("(retries: 2)");
+        assertThat(requestCount.get()).isEqualTo(3);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadDoesNotRetryMissingFile() throws Exception {
+        Downloader.Result result = download(makeLink("/missing"), makeOptions(3), new DefaultLinkDownloader());
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsExactly(DownloaderLogRecord.Type.DOWNLOAD_FAIL);
+        assertThat(requestCount.get()).isEqualTo(1);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadResumesFromLastByteAfterResets() throws Exception {
+        try (LoopbackHttpServer loopbackServer = new LoopbackHttpServer.Builder()
+            .file("/file", CONTENT_SIZE)
+            .resetProbability(0.8)
+            .seed(3)
+            .start()) {
+
+            Downloader.Result result = download(loopbackServer.url("/file"), makeOptions(10),
+                new DefaultLinkDownloader());
+
+            assertSucceeded(result);
+            assertThat(loopbackServer.getResetCount()).isGreaterThan(0);
+            assertThat(loopbackServer.getRangeRequestCount()).isEqualTo(loopbackServer.getResetCount());
+            assertThat(loopbackServer.getSentByteCount()).isLessThan(2L * CONTENT_SIZE);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadStartsAgainWhenResumeGetsWholeContent() throws Exception {
+        try (LoopbackHttpServer loopbackServer = new LoopbackHttpServer.Builder()
+            .file("/file", CONTENT_SIZE)
+            .resetProbability(0.5)
+            .rangeIgnored(true)
+            .seed(4851)
+            .start()) {
+
+            Downloader.Result result = download(loopbackServer.url("/file"), makeOptions(10),
+                new DefaultLinkDownloader());
+
+            assertSucceeded(result);
+            // The cut download, its ignored resumption and the download from the beginning
+            assertThat(loopbackServer.getResetCount()).isEqualTo(1);
+            assertThat(loopbackServer.getRequestCount()).isEqualTo(3);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadSegmentsResumeAfterResets() throws Exception {
+        try (LoopbackHttpServer loopbackServer = new LoopbackHttpServer.Builder()
+            .file("/file", CONTENT_SIZE)
+            .resetProbability(0.3)
+            .seed(5)
+            .start()) {
+
+            Options options = new Options.Builder(linksFilePath.toString())
+                .outputDir(downloadDirPath.toString())
+                .threads(4)
+                .segmentSize(CONTENT_SIZE / 8)
+                .retryCount(10)
+                .retryDelay(1)
+                .build();
+            Downloader.Result result = download(loopbackServer.url("/file"), options, new DefaultLinkDownloader());
+
+            assertSucceeded(result);
+            assertThat(loopbackServer.getResetCount()).isGreaterThan(0);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void asyncDownloadRetriesUnavailableServer() throws Exception {
+        Options options = new Options.Builder(linksFilePath.toString())
+            .outputDir(downloadDirPath.toString())
+            .engine(Options.Engine.NIO)
+            .retryCount(3)
+            .retryDelay(1)
+            .build();
+
+        try (NioLinkDownloader linkDownloader = new NioLinkDownloader()) {
+            Downloader.Result result = download(makeLink("/unavailable-twice"), options, linkDownloader);
+
+            assertSucceeded(result);
+            assertThat(result.getLog().get(0).getMessage()).endsWith("(retries: 2)");
+        }
+    }
+
+    private Options makeOptions(int retryCount) {
+        return new Options.Builder(linksFilePath.toString())
+            .outputDir(downloadDirPath.toString())
+            .retryCount(retryCount)
+            .retryDelay(1)
+            .build();
+    }
+
+    private Downloader.Result download(String link, Options options,
+                                       LinkDownloader linkDownloader) throws IOException {
+        Files.write(linksFilePath, Collections.singletonList(link + " target.bin"));
+
+        return new Downloader(linkDownloader).download(options);
+    }
+
+    private void assertSucceeded(Downloader.Result result) throws IOException {
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsExactly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+        assertThat(result.getByteCount()).isEqualTo(CONTENT_SIZE);
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("target.bin")))
+            .isEqualTo(LoopbackHttpServer.content(CONTENT_SIZE));
+    }
+
+    private String makeLink(String path) {
+        return String.format("http://127.0.0.1:%d%s", server.getAddress().getPort(), path);
+    }
+}
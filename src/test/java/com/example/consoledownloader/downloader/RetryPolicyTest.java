@@ -0,0 +1,100 @@
+package com.example.consoledownloader.downloader;
+
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.file.AccessDeniedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void classifyFailures() {
+        assertThat(RetryPolicy.classify(new HttpStatusException("link", 503)))
+            .isEqualTo(RetryPolicy.ErrorClass.THROTTLED);
+        assertThat(RetryPolicy.classify(new HttpStatusException("link", 429)))
+            .isEqualTo(RetryPolicy.ErrorClass.THROTTLED);
+        assertThat(RetryPolicy.classify(new HttpStatusException("link", 502))).isEqualTo(RetryPolicy.ErrorClass.SERVER);
+        assertThat(RetryPolicy.classify(new HttpStatusException("link", 404)))
+            .isEqualTo(RetryPolicy.ErrorClass.PERMANENT);
+        assertThat(RetryPolicy.classify(new SocketException("reset"))).isEqualTo(RetryPolicy.ErrorClass.NETWORK);
+        assertThat(RetryPolicy.classify(new SocketTimeoutException())).isEqualTo(RetryPolicy.ErrorClass.NETWORK);
+        assertThat(RetryPolicy.classify(new InterruptedIOException())).isEqualTo(RetryPolicy.ErrorClass.PERMANENT);
+        assertThat(RetryPolicy.classify(new UnknownHostException())).isEqualTo(RetryPolicy.ErrorClass.PERMANENT);
+        assertThat(RetryPolicy.classify(new FileNotFoundException())).isEqualTo(RetryPolicy.ErrorClass.PERMANENT);
+        assertThat(RetryPolicy.classify(new AccessDeniedException("file")))
+            .isEqualTo(RetryPolicy.ErrorClass.PERMANENT);
+    }
+
+    @Test
+    public void retriesOfLinkAreLimited() {
+        RetryPolicy policy = new RetryPolicy(2, 1, new RetryBudget(0.2, 10, 100), e -> { });
+        AtomicInteger retries = new AtomicInteger();
+        IOException e = new SocketException("reset");
+
+        assertThat(policy.allowRetry(e, retries)).isTrue();
+        assertThat(policy.allowRetry(e, retries)).isTrue();
+        assertThat(policy.allowRetry(e, retries)).isFalse();
+        assertThat(retries.get()).isEqualTo(2);
+        assertThat(policy.allowRetry(new HttpStatusException("link", 404), new AtomicInteger())).isFalse();
+    }
+
+    @Test
+    public void retriesOfRunAreLimitedByBudget() {
+        RetryPolicy policy = new RetryPolicy(100, 1, new RetryBudget(0.5, 2, 100), e -> { });
+        IOException e = new SocketException("reset");
+
+        assertThat(policy.allowRetry(e, new AtomicInteger())).isTrue();
+        assertThat(policy.allowRetry(e, new AtomicInteger())).isTrue();
+        assertThat(policy.allowRetry(e, new AtomicInteger())).isFalse();
+
+        policy.recordDownload();
+        assertThat(policy.allowRetry(e, new AtomicInteger())).isFalse();
+        policy.recordDownload();
+        assertThat(policy.allowRetry(e, new AtomicInteger())).isTrue();
+    }
+
+    @Test
+    public void retryAfterIsMinimumDelayAndIsReported() {
+        List<HttpStatusException> throttles = new ArrayList<>();
+        RetryPolicy policy = new RetryPolicy(3, 1, new RetryBudget(0.2, 10, 100), throttles::add);
+        HttpStatusException e = new HttpStatusException("link", 503, 2000);
+
+        assertThat(policy.allowRetry(e, new AtomicInteger())).isTrue();
+        assertThat(throttles).containsExactly(e);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(policy.getDelayNanos(e, 1))).isEqualTo(2000L);
+    }
+
+    @Test
+    public void parseRetryAfter() {
+        assertThat(HttpStatusException.parseRetryAfter("120")).isEqualTo(120_000L);
+        assertThat(HttpStatusException.parseRetryAfter("Thu, 01 Jan 2015 00:00:00 GMT")).isEqualTo(0L);
+        assertThat(HttpStatusException.parseRetryAfter("soon")).isEqualTo(HttpStatusException.NO_RETRY_AFTER);
+        assertThat(HttpStatusException.parseRetryAfter(null)).isEqualTo(HttpStatusException.NO_RETRY_AFTER);
+    }
+
+    @Test
+    public void delayGrowsExponentiallyWithJitter() {
+        RetryPolicy policy = new RetryPolicy(100, 100, new RetryBudget(0.2, 10, 100), e -> { });
+        IOException e = new SocketException("reset");
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(TimeUnit.NANOSECONDS.toMillis(policy.getDelayNanos(e, 1))).isBetween(50L, 100L);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(policy.getDelayNanos(e, 3))).isBetween(200L, 400L);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(policy.getDelayNanos(new HttpStatusException("link", 503), 1)))
+                .isBetween(200L, 400L);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(policy.getDelayNanos(e, 40)))
+                .isBetween(RetryPolicy.MAX_DELAY_MILLIS / 2L, (long) RetryPolicy.MAX_DELAY_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.consoledownloader.downloader;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SegmentedDownloadTest {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d+)-(\\d+)$");
+    private static final int CONTENT_SIZE = 100 * 1024 + 17;
+    private static final int SEGMENT_SIZE = 16 * 1024;
+    private static final int TIMEOUT = 10 * 1000;
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private byte[] content;
+    private AtomicInteger rangeRequestCount;
+    private Path rootDirPath;
+    private Path downloadDirPath;
+    private Path linksFilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[CONTENT_SIZE];
+        new Random(42).nextBytes(content);
+        rangeRequestCount = new AtomicInteger();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ranged", exchange -> serve(exchange, true));
+        server.createContext("/plain", exchange -> serve(exchange, false));
+        server.start();
+
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+        downloadDirPath = rootDirPath.resolve("download");
+        linksFilePath = rootDirPath.resolve("links");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadInSegmentsWhenRangesAreSupported() throws Exception {
+        Downloader.Result result = download("/ranged");
+
+        assertDownloaded(result);
+        assertThat(rangeRequestCount.get()).isEqualTo((CONTENT_SIZE + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadInSegmentsReplacesHardLinkedTarget() throws Exception {
+        Path other = rootDirPath.resolve("other.bin");
+        Files.write(other, new byte[] { 1, 2, 3 });
+        Files.createDirectories(downloadDirPath);
+        Files.createLink(downloadDirPath.resolve("target.bin"), other);
+
+        assertDownloaded(download("/ranged"));
+        assertThat(Files.readAllBytes(other)).containsExactly(1, 2, 3);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void resumableDownloadReplacesHardLinkedTarget() throws Exception {
+        Path other = rootDirPath.resolve("other.bin");
+        Files.write(other, new byte[] { 1, 2, 3 });
+        Files.createDirectories(downloadDirPath);
+        Files.createLink(downloadDirPath.resolve("target.bin"), other);
+
+        assertDownloaded(download("/ranged", builder -> builder.resume(true)));
+        assertThat(Files.readAllBytes(other)).containsExactly(1, 2, 3);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadAsSingleStreamWhenRangesAreNotSupported() throws Exception {
+        Downloader.Result result = download("/plain");
+
+        assertDownloaded(result);
+        assertThat(rangeRequestCount.get()).isEqualTo(0);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadInSegmentsOvercomesBandwidthOfOneConnection() throws Exception {
+        int size = 1024 * 1024;
+
+        try (LoopbackHttpServer loopbackServer = new LoopbackHttpServer.Builder()
+            .file("/file", size)
+            .bandwidth(size / 2)
+            .latency(20)
+            .start()) {
+
+            Files.write(linksFilePath, Collections.singletonList(loopbackServer.url("/file") + " target.bin"));
+            Options options = new Options.Builder(linksFilePath.toString())
+                .outputDir(downloadDirPath.toString())
+                .threads(4)
+                .segmentSize(size / 4)
+                .build();
+
+            long startNanos = System.nanoTime();
+            Downloader.Result result = new Downloader(new DefaultLinkDownloader()).download(options);
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+            assertThat(result.getLog())
+                .extracting(DownloaderLogRecord::getType)
+                .containsExactly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+            assertThat(Files.readAllBytes(downloadDirPath.resolve("target.bin")))
+                .isEqualTo(LoopbackHttpServer.content(size));
+            assertThat(loopbackServer.getRangeRequestCount()).isEqualTo(4);
+            // A single connection needs two seconds
+            assertThat(elapsedMillis).isLessThan(1500L);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void resumeDownloadsOnlyMissingRanges() throws Exception {
+        int completed = 40 * 1024;
+        Path target = preparePartialFile(completed, ETAG);
+
+        Downloader.Result result = download("/ranged", builder -> builder.segmentSize(0).resume(true));
+
+        assertDownloaded(result, CONTENT_SIZE - completed);
+        assertThat(rangeRequestCount.get()).isEqualTo(1);
+        assertThat(result.getLog().get(0).getMessage()).contains("resumed after " + completed);
+        assertThat(Files.exists(DownloadJournal.pathFor(target))).isFalse();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void resumeIsRefusedWhenValidatorsHaveChanged() throws Exception {
+        preparePartialFile(40 * 1024, "\"v0\"");
+
+        Downloader.Result result = download("/ranged", builder -> builder.resume(true));
+
+        assertDownloaded(result, CONTENT_SIZE);
+        assertThat(result.getLog().get(0).getMessage()).contains("has changed");
+    }
+
+    private Path preparePartialFile(int completed, String etag) throws IOException {
+        Files.createDirectories(downloadDirPath);
+        Path target = downloadDirPath.resolve("target.bin");
+        byte[] partialContent = Arrays.copyOf(Arrays.copyOf(content, completed), CONTENT_SIZE);
+        Files.write(target, partialContent);
+
+        LinkInfo info = new LinkInfo.Builder()
+            .contentLength(CONTENT_SIZE)
+            .rangeSupported(true)
+            .etag(etag)
+            .build();
+        try (DownloadJournal journal = DownloadJournal.open(target, info)) {
+            journal.markCompleted(0, completed - 1);
+        }
+
+        return target;
+    }
+
+    private Downloader.Result download(String path) throws IOException {
+        return download(path, Function.identity());
+    }
+
+    private Downloader.Result download(String path,
+                                       Function<Options.Builder, Options.Builder> customizer) throws IOException {
+        String link = String.format("http://127.0.0.1:%d%s", server.getAddress().getPort(), path);
+        Files.write(linksFilePath, Collections.singletonList(link + " target.bin"));
+
+        Options options = customizer.apply(new Options.Builder(linksFilePath.toString())
+            .outputDir(downloadDirPath.toString())
+            .threads(4)
+            .segmentSize(SEGMENT_SIZE))
+            .build();
+
+        return new Downloader(new DefaultLinkDownloader()).download(options);
+    }
+
+    private void assertDownloaded(Downloader.Result result) throws IOException {
+        assertDownloaded(result, CONTENT_SIZE);
+    }
+
+    private void assertDownloaded(Downloader.Result result, long expectedByteCount) throws IOException {
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsExactly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS);
+        assertThat(result.getByteCount()).isEqualTo(expectedByteCount);
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("target.bin"))).isEqualTo(content);
+    }
+
+    private void serve(HttpExchange exchange, boolean rangeSupported) throws IOException {
+        if (rangeSupported) {
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().add("ETag", ETAG);
+        }
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        Matcher matcher = range == null ? null : RANGE_PATTERN.matcher(range);
+        boolean isRangeRequest = rangeSupported && matcher != null && matcher.matches();
+
+        int start = isRangeRequest ? Integer.parseInt(matcher.group(1)) : 0;
+        int end = isRangeRequest ? Integer.parseInt(matcher.group(2)) : content.length - 1;
+        int length = end - start + 1;
+
+        if (isRangeRequest) {
+            rangeRequestCount.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Range",
+                String.format("bytes %d-%d/%d", start, end, content.length));
+        }
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+
+            return;
+        }
+
+        exchange.sendResponseHeaders(isRangeRequest ? 206 : 200, length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(content, start, length);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.consoledownloader.nio;
+
+import com.example.consoledownloader.argsparser.Options;
+import com.example.consoledownloader.downloader.Downloader;
+import com.example.consoledownloader.downloader.DownloaderLogRecord;
+import com.example.consoledownloader.testing.LoopbackHttpServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class NioLinkDownloaderTest {
+
+    private static final int CONTENT_SIZE = 300 * 1024 + 5;
+    private static final int TIMEOUT = 10 * 1000;
+    private static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    private HttpServer server;
+    private NioLinkDownloader linkDownloader;
+    private byte[] content;
+    private Path rootDirPath;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[CONTENT_SIZE];
+        new Random(7).nextBytes(content);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/fixed", exchange -> send(exchange, 200, content.length));
+        server.createContext("/chunked", exchange -> send(exchange, 200, 0));
+        server.createContext("/missing", exchange -> send(exchange, 404, -1));
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/fixed");
+            send(exchange, 302, -1);
+        });
+        server.start();
+
+        linkDownloader = new NioLinkDownloader(2, MAX_CONNECTIONS_PER_HOST);
+        rootDirPath = Files.createTempDirectory("consoledowloader");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        linkDownloader.close();
+        server.stop(0);
+
+        Files.walkFileTree(rootDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadWithContentLength() throws Exception {
+        assertDownloaded("/fixed");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadChunked() throws Exception {
+        assertDownloaded("/chunked");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadFollowsRedirect() throws Exception {
+        assertDownloaded("/redirect");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadReplacesHardLinkedTarget() throws Exception {
+        Path other = rootDirPath.resolve("other.bin");
+        Files.write(other, new byte[] { 1, 2, 3 });
+        Files.createLink(rootDirPath.resolve("target.bin"), other);
+
+        assertDownloaded("/fixed");
+        assertThat(Files.readAllBytes(other)).containsExactly(1, 2, 3);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadFailsOnErrorStatus() throws Exception {
+        Path path = rootDirPath.resolve("missing.bin");
+
+        try {
+            linkDownloader.downloadTo(makeLink("/missing"), path, byteCount -> { }).get();
+            fail("The download should fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IOException.class).hasMessageContaining("404");
+        }
+
+        assertThat(Files.exists(path)).isFalse();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadManyLinksConcurrently() throws Exception {
+        int linkCount = 200;
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < linkCount; i++) {
+            lines.add(String.format("%s?n=%d file%d.bin", makeLink(i % 2 == 0 ? "/fixed" : "/chunked"), i, i));
+        }
+        Path linksFilePath = rootDirPath.resolve("links");
+        Files.write(linksFilePath, lines);
+        Path downloadDirPath = rootDirPath.resolve("download");
+
+        Options options = new Options.Builder(linksFilePath.toString())
+            .outputDir(downloadDirPath.toString())
+            .threads(100)
+            .engine(Options.Engine.NIO)
+            .build();
+        Downloader.Result result = new Downloader(linkDownloader).download(options);
+
+        assertThat(result.getLog())
+            .extracting(DownloaderLogRecord::getType)
+            .containsOnly(DownloaderLogRecord.Type.DOWNLOAD_SUCCESS)
+            .hasSize(linkCount);
+        assertThat(result.getByteCount()).isEqualTo((long) linkCount * CONTENT_SIZE);
+        assertThat(Files.readAllBytes(downloadDirPath.resolve("file1.bin"))).isEqualTo(content);
+
+        ConnectionStats stats = linkDownloader.getConnectionStats();
+        assertThat(stats.getRequestCount()).isEqualTo(linkCount);
+        assertThat(stats.getOpenedCount()).isLessThanOrEqualTo(MAX_CONNECTIONS_PER_HOST);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadReusesKeptAliveConnection() throws Exception {
+        assertDownloaded("/fixed");
+        assertDownloaded("/chunked");
+        assertDownloaded("/fixed");
+
+        ConnectionStats stats = linkDownloader.getConnectionStats();
+        assertThat(stats.getOpenedCount()).isEqualTo(1);
+        assertThat(stats.getReusedCount()).isEqualTo(2);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadKeepsConnectionsToHostWithinLimit() throws Exception {
+        int linkCount = 40;
+
+        try (LoopbackHttpServer loopbackServer = new LoopbackHttpServer.Builder()
+            .file("/file", CONTENT_SIZE)
+            .latency(5)
+            .start()) {
+
+            List<CompletableFuture<Long>> downloads = new ArrayList<>();
+            for (int i = 0; i < linkCount; i++) {
+                downloads.add(linkDownloader.downloadTo(loopbackServer.url("/file?n=" + i),
+                    rootDirPath.resolve("file" + i), byteCount -> { }));
+            }
+            CompletableFuture.allOf(downloads.toArray(new CompletableFuture<?>[0]))
+                .get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+            assertThat(loopbackServer.getRequestCount()).isEqualTo(linkCount);
+            assertThat(loopbackServer.getConnectionCount()).isLessThanOrEqualTo(MAX_CONNECTIONS_PER_HOST);
+            assertThat(Files.readAllBytes(rootDirPath.resolve("file7")))
+                .isEqualTo(LoopbackHttpServer.content(CONTENT_SIZE));
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadDoesNotReuseConnectionClosedByServer() throws Exception {
+        server.createContext("/close", exchange -> {
+            exchange.getResponseHeaders().add("Connection", "close");
+            send(exchange, 200, content.length);
+        });
+
+        assertDownloaded("/close");
+        assertDownloaded("/fixed");
+
+        assertThat(linkDownloader.getConnectionStats().getOpenedCount()).isEqualTo(2);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void downloadRetriesOverNewConnectionWhenIdleConnectionIsDropped() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+            Thread thread = new Thread(() -> serveOneRequestPerConnection(serverSocket));
+            thread.setDaemon(true);
+            thread.start();
+
+            String link = String.format("http://127.0.0.1:%d/file", serverSocket.getLocalPort());
+            for (int i = 0; i < 2; i++) {
+                Path target = rootDirPath.resolve("target" + i + ".bin");
+                linkDownloader.downloadTo(link, target, byteCount -> { }).get(TIMEOUT, TimeUnit.MILLISECONDS);
+                assertThat(Files.readAllBytes(target)).isEqualTo(content);
+            }
+        }
+
+        ConnectionStats stats = linkDownloader.getConnectionStats();
+        assertThat(stats.getOpenedCount()).isEqualTo(2);
+        assertThat(stats.getReusedCount()).isEqualTo(1);
+    }
+
+    private void serveOneRequestPerConnection(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            try (Socket socket = serverSocket.accept()) {
+                InputStream input = socket.getInputStream();
+                int matched = 0;
+                while (matched < 4) {
+                    int b = input.read();
+                    if (b < 0) {
+                        break;
+                    }
+                    matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+                }
+
+                OutputStream output = socket.getOutputStream();
+                output.write(String.format("HTTP/1.1 200 OK\r\nContent-Length: %d\r\n\r\n", content.length)
+                    .getBytes(StandardCharsets.ISO_8859_1));
+                output.write(content);
+                output.flush();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void assertDownloaded(String path) throws Exception {
+        Path target = rootDirPath.resolve("target.bin");
+        AtomicLong progress = new AtomicLong();
+
+        long byteCount = linkDownloader.downloadTo(makeLink(path), target, progress::addAndGet)
+            .get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertThat(byteCount).isEqualTo(CONTENT_SIZE);
+        assertThat(progress.get()).isEqualTo(CONTENT_SIZE);
+        assertThat(Files.readAllBytes(target)).isEqualTo(content);
+    }
+
+    private String makeLink(String path) {
+        return String.format("http://127.0.0.1:%d%s", server.getAddress().getPort(), path);
+    }
+
+    private void send(HttpExchange exchange, int code, long length) throws IOException {
+        exchange.sendResponseHeaders(code, length);
+
+        if (length >= 0) {
+            try (OutputStream output = exchange.getResponseBody()) {
+                for (int offset = 0; offset < content.length; offset += 10000) {
+                    output.write(content, offset, Math.min(10000, content.length - offset));
+                }
+            }
+        }
+
+        exchange.close();
+    }
+}
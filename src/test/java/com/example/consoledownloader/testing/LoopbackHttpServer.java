@@ -0,0 +1,450 @@
+package com.example.consoledownloader.testing;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An HTTP/1.1 server on the loopback interface which serves synthetic files of any size. The content is computed
+ * from the position, so the files take no memory and any downloaded range can be verified with {@link #contentAt}.
+ * Every connection can be slowed down by the latency, the bandwidth and the slow start, and the responses can be
+ * cut by resets. The random decisions are seeded, so a test run is reproducible.
+ */
+public class LoopbackHttpServer implements Closeable {
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+    private static final int CHUNK_SIZE = 4 * 1024;
+    private static final int MAX_HEAD_SIZE = 16 * 1024;
+    private static final String ETAG = "\"loopback-1\"";
+    private static final String LAST_MODIFIED = "Thu, 01 Jan 2015 00:00:00 GMT";
+
+    private final Map<String, Long> files;
+    private final long bandwidth;
+    private final long latencyMillis;
+    private final long slowStartMillis;
+    private final double resetProbability;
+    private final boolean rangeSupported;
+    private final boolean rangeIgnored;
+    private final boolean keepAlive;
+    private final Random random;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "loopback-http-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong rangeRequestCount = new AtomicLong();
+    private final AtomicLong resetCount = new AtomicLong();
+    private final AtomicLong sentByteCount = new AtomicLong();
+
+    private LoopbackHttpServer(Builder builder) throws IOException {
+        this.files = new HashMap<>(builder.files);
+        this.bandwidth = builder.bandwidth;
+        this.latencyMillis = builder.latencyMillis;
+        this.slowStartMillis = builder.slowStartMillis;
+        this.resetProbability = builder.resetProbability;
+        this.rangeSupported = builder.rangeSupported;
+        this.rangeIgnored = builder.rangeIgnored;
+        this.keepAlive = builder.keepAlive;
+        this.random = new Random(builder.seed);
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+
+        executor.execute(this::accept);
+    }
+
+    /**
+     * @return the byte at the position of every served file
+     */
+    public static byte contentAt(long position) {
+        long mixed = position * 0x9E3779B97F4A7C15L;
+        return (byte) (mixed >>> 56 ^ position);
+    }
+
+    public static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = contentAt(i);
+        }
+
+        return content;
+    }
+
+    public String url(String path) {
+        return String.format("http://127.0.0.1:%d%s", getPort(), path);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getRangeRequestCount() {
+        return rangeRequestCount.get();
+    }
+
+    public long getResetCount() {
+        return resetCount.get();
+    }
+
+    public long getSentByteCount() {
+        return sentByteCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionCount.incrementAndGet();
+                sockets.add(socket);
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        long connectedNanos = System.nanoTime();
+
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+            Map<String, String> request;
+
+            while ((request = readRequest(input)) != null) {
+                requestCount.incrementAndGet();
+                sleepMillis(latencyMillis);
+
+                boolean close = !respond(request, socket, output, connectedNanos);
+                if (close) {
+                    break;
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return the request line under the key "" and the headers with lower case names, {@code null} at the end
+     */
+    private static Map<String, String> readRequest(InputStream input) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int matched = 0;
+
+        while (matched < 4) {
+            int b = input.read();
+            if (b < 0) {
+                return null;
+            }
+            if (head.size() > MAX_HEAD_SIZE) {
+                throw new IOException("The request head is too large");
+            }
+
+            head.write(b);
+            matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+
+        String[] lines = new String(head.toByteArray(), StandardCharsets.ISO_8859_1).split("\r\n");
+        Map<String, String> request = new HashMap<>();
+        request.put("", lines[0]);
+
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                request.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                    lines[i].substring(colon + 1).trim());
+            }
+        }
+
+        return request;
+    }
+
+    /**
+     * @return whether the connection stays open
+     */
+    private boolean respond(Map<String, String> request, Socket socket, OutputStream output,
+                            long connectedNanos) throws IOException {
+        String[] requestLine = request.get("").split(" ");
+        String method = requestLine[0];
+        String path = requestLine.length > 1 ? requestLine[1] : "/";
+        int query = path.indexOf('?');
+        Long size = files.get(query >= 0 ? path.substring(0, query) : path);
+        boolean open = keepAlive && !"close".equalsIgnoreCase(request.get("connection"));
+
+        if (size == null) {
+            writeHead(output, "404 Not Found", 0, open, "");
+            return open;
+        }
+
+        long start = 0;
+        long end = size - 1;
+        String status = "200 OK";
+        String extraHeaders = rangeSupported
+            ? "Accept-Ranges: bytes\r\nETag: " + ETAG + "\r\nLast-Modified: " + LAST_MODIFIED + "\r\n"
+            : "";
+
+        String ifRange = request.get("if-range");
+        Matcher range = request.containsKey("range") ? RANGE_PATTERN.matcher(request.get("range")) : null;
+        if (rangeSupported && !rangeIgnored && range != null && range.matches() && (ifRange == null || ETAG.equals(ifRange)
+            || LAST_MODIFIED.equals(ifRange))) {
+
+            rangeRequestCount.incrementAndGet();
+
+            if (range.group(1).isEmpty()) {
+                start = Math.max(0, size - Long.parseLong(range.group(2)));
+            } else {
+                start = Long.parseLong(range.group(1));
+                end = range.group(2).isEmpty() ? size - 1 : Math.min(Long.parseLong(range.group(2)), size - 1);
+            }
+
+            if (start > end) {
+                writeHead(output, "416 Range Not Satisfiable", 0, open, "Content-Range: bytes */" + size + "\r\n");
+                return open;
+            }
+
+            status = "206 Partial Content";
+            extraHeaders += String.format("Content-Range: bytes %d-%d/%d\r\n", start, end, size);
+        }
+
+        writeHead(output, status, end - start + 1, open, extraHeaders);
+        if ("HEAD".equals(method)) {
+            return open;
+        }
+
+        long resetAt = nextResetPosition(end - start + 1);
+        writeBody(socket, output, start, end, resetAt, connectedNanos);
+
+        return open;
+    }
+
+    private long nextResetPosition(long length) {
+        synchronized (random) {
+            return random.nextDouble() < resetProbability ? (long) (random.nextDouble() * length) : -1;
+        }
+    }
+
+    private void writeHead(OutputStream output, String status, long contentLength, boolean open,
+                           String extraHeaders) throws IOException {
+        String head = "HTTP/1.1 " + status + "\r\n"
+            + "Content-Length: " + contentLength + "\r\n"
+            + extraHeaders
+            + (open ? "" : "Connection: close\r\n")
+            + "\r\n";
+        output.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        output.flush();
+    }
+
+    private void writeBody(Socket socket, OutputStream output, long start, long end, long resetAt,
+                           long connectedNanos) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        long bodyStartNanos = System.nanoTime();
+        long sent = 0;
+        long length = end - start + 1;
+
+        while (sent < length) {
+            int chunkLength = (int) Math.min(chunk.length, length - sent);
+            if (resetAt >= 0 && sent + chunkLength > resetAt) {
+                chunkLength = (int) (resetAt - sent);
+            }
+
+            for (int i = 0; i < chunkLength; i++) {
+                chunk[i] = contentAt(start + sent + i);
+            }
+            output.write(chunk, 0, chunkLength);
+            sent += chunkLength;
+            sentByteCount.addAndGet(chunkLength);
+
+            if (resetAt >= 0 && sent == resetAt) {
+                output.flush();
+                reset(socket);
+                throw new SocketException("The connection was reset on purpose");
+            }
+
+            pace(sent, bodyStartNanos, connectedNanos);
+        }
+
+        output.flush();
+    }
+
+    /**
+     * Sleeps until the bytes sent so far fit the bandwidth. During the slow start the bandwidth grows
+     * linearly from zero, counting from the moment the connection was accepted.
+     */
+    private void pace(long sent, long bodyStartNanos, long connectedNanos) throws InterruptedIOException {
+        if (bandwidth <= 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - bodyStartNanos) / 1e9;
+        double allowed = bandwidth * elapsedSeconds;
+
+        if (slowStartMillis > 0) {
+            double connectionSeconds = (now - connectedNanos) / 1e9;
+            double rampSeconds = slowStartMillis / 1e3;
+            if (connectionSeconds < rampSeconds) {
+                allowed = Math.min(allowed, bandwidth * connectionSeconds * connectionSeconds / (2 * rampSeconds));
+            }
+        }
+
+        if (sent > allowed) {
+            double deficitSeconds = (sent - allowed) / bandwidth;
+            long deadline = now + (long) (deficitSeconds * 1e9);
+            long remaining;
+
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private void reset(Socket socket) throws IOException {
+        resetCount.incrementAndGet();
+        socket.setSoLinger(true, 0);
+        socket.close();
+    }
+
+    private static void sleepMillis(long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public static class Builder {
+        private final Map<String, Long> files = new HashMap<>();
+        private long bandwidth;
+        private long latencyMillis;
+        private long slowStartMillis;
+        private double resetProbability;
+        private boolean rangeSupported = true;
+        private boolean rangeIgnored;
+        private boolean keepAlive = true;
+        private long seed = 42;
+
+        public Builder file(String path, long size) {
+            this.files.put(path, size);
+            return this;
+        }
+
+        /**
+         * @param bandwidth the bytes per second of every connection, 0 means unlimited
+         */
+        public Builder bandwidth(long bandwidth) {
+            this.bandwidth = bandwidth;
+            return this;
+        }
+
+        /**
+         * @param latencyMillis the delay before every response
+         */
+        public Builder latency(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+            return this;
+        }
+
+        /**
+         * @param slowStartMillis how long the bandwidth of a new connection grows to the full one
+         */
+        public Builder slowStart(long slowStartMillis) {
+            this.slowStartMillis = slowStartMillis;
+            return this;
+        }
+
+        /**
+         * @param resetProbability the probability that a response is cut by a reset at a random position
+         */
+        public Builder resetProbability(double resetProbability) {
+            this.resetProbability = resetProbability;
+            return this;
+        }
+
+        public Builder rangeSupported(boolean rangeSupported) {
+            this.rangeSupported = rangeSupported;
+            return this;
+        }
+
+        /**
+         * @param rangeIgnored whether the range requests get the whole file, as if it had changed since
+         *                     the validator of the range, the ranges are still advertised
+         */
+        public Builder rangeIgnored(boolean rangeIgnored) {
+            this.rangeIgnored = rangeIgnored;
+            return this;
+        }
+
+        public Builder keepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public LoopbackHttpServer start() throws IOException {
+            return new LoopbackHttpServer(this);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.consoledownloader.testing;
+
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class LoopbackHttpServerTest {
+
+    private static final int CONTENT_SIZE = 256 * 1024 + 3;
+    private static final int TIMEOUT = 10 * 1000;
+
+    private LoopbackHttpServer server;
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void serveWholeFile() throws Exception {
+        server = new LoopbackHttpServer.Builder().file("/file", CONTENT_SIZE).start();
+
+        HttpURLConnection connection = open("/file", null);
+
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(connection.getHeaderField("Accept-Ranges")).isEqualTo("bytes");
+        assertThat(readAll(connection)).isEqualTo(LoopbackHttpServer.content(CONTENT_SIZE));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void serveRange() throws Exception {
+        server = new LoopbackHttpServer.Builder().file("/file", CONTENT_SIZE).start();
+
+        HttpURLConnection connection = open("/file", "bytes=1000-1999");
+
+        assertThat(connection.getResponseCode()).isEqualTo(206);
+        assertThat(connection.getHeaderField("Content-Range")).isEqualTo("bytes 1000-1999/" + CONTENT_SIZE);
+        assertThat(readAll(connection))
+            .isEqualTo(Arrays.copyOfRange(LoopbackHttpServer.content(CONTENT_SIZE), 1000, 2000));
+        assertThat(server.getRangeRequestCount()).isEqualTo(1);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void limitBandwidthOfConnection() throws Exception {
+        server = new LoopbackHttpServer.Builder().file("/file", CONTENT_SIZE).bandwidth(CONTENT_SIZE * 2).start();
+
+        long startNanos = System.nanoTime();
+        readAll(open("/file", null));
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        assertThat(elapsedMillis).isBetween(400L, 2000L);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void resetConnectionInTheMiddleOfBody() throws Exception {
+        server = new LoopbackHttpServer.Builder().file("/file", CONTENT_SIZE).resetProbability(1.0).start();
+
+        try {
+            readAll(open("/file", null));
+            fail("The response should be cut");
+        } catch (IOException e) {
+            assertThat(server.getResetCount()).isEqualTo(1);
+        }
+    }
+
+    private HttpURLConnection open(String path, String range) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.url(path)).openConnection();
+        if (range != null) {
+            connection.setRequestProperty("Range", range);
+        }
+
+        return connection;
+    }
+
+    private static byte[] readAll(HttpURLConnection connection) throws IOException {
+        try (InputStream input = connection.getInputStream()) {
+            return ByteStreams.toByteArray(input);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.consoledownloader.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ByteSizeFormatterTest {
+
+    private ByteSizeFormatter sizeFormatter;
+
+    @Before
+    public void setUp() throws Exception {
+        sizeFormatter = new ByteSizeFormatter();
+    }
+
+    @Test
+    public void from1000Bytes() throws Exception {
+        assertThat(sizeFormatter.format(1000)).isEqualTo("1000 B");
+    }
+
+    @Test
+    public void from1536Bytes() throws Exception {
+        assertThat(sizeFormatter.format(1536)).isEqualTo("1.5 KB");
+    }
+
+    @Test
+    public void from3Gigabytes() throws Exception {
+        assertThat(sizeFormatter.format(3L * 1024 * 1024 * 1024)).isEqualTo("3.0 GB");
+    }
+}